@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.benchmarks;
+
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketBuilder;
+import nl.pvdberg.pnet.packet.PacketReader;
+import nl.pvdberg.pnet.packet.ReusablePacketBuilder;
+import nl.pvdberg.pnet.packet.ReusablePacketReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of Packets and their contents, without any network involved
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CodecBenchmark
+{
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    private byte[] payload;
+    private Packet packet;
+    private byte[] encoded;
+    private ReusablePacketBuilder reusablePacketBuilder;
+    private ReusablePacketReader reusablePacketReader;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        payload = new byte[payloadSize];
+        new Random(0).nextBytes(payload);
+
+        packet = build();
+        reusablePacketBuilder = new ReusablePacketBuilder(Packet.PacketType.Request);
+        reusablePacketReader = new ReusablePacketReader();
+
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        packet.write(new DataOutputStream(byteArrayOutputStream));
+        encoded = byteArrayOutputStream.toByteArray();
+    }
+
+    @Benchmark
+    public Packet build()
+    {
+        return new PacketBuilder(Packet.PacketType.Request)
+                .withID((short) 1)
+                .withInt(42)
+                .withLong(42L)
+                .withString("benchmark")
+                .withBytes(payload)
+                .build();
+    }
+
+    @Benchmark
+    public Packet buildReusable()
+    {
+        return reusablePacketBuilder.reset()
+                .withID((short) 1)
+                .withInt(42)
+                .withLong(42L)
+                .withString("benchmark")
+                .withBytes(payload)
+                .build();
+    }
+
+    @Benchmark
+    public void read(final Blackhole blackhole) throws IOException
+    {
+        final PacketReader packetReader = new PacketReader(packet);
+        blackhole.consume(packetReader.readInt());
+        blackhole.consume(packetReader.readLong());
+        blackhole.consume(packetReader.readString());
+        blackhole.consume(packetReader.readBytes());
+    }
+
+    @Benchmark
+    public void readReusable(final Blackhole blackhole) throws IOException
+    {
+        reusablePacketReader.reset(packet);
+        blackhole.consume(reusablePacketReader.readInt());
+        blackhole.consume(reusablePacketReader.readLong());
+        blackhole.consume(reusablePacketReader.readString());
+        blackhole.consume(reusablePacketReader.readBytesView());
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException
+    {
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(encoded.length);
+        packet.write(new DataOutputStream(byteArrayOutputStream));
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    @Benchmark
+    public Packet fromStream() throws IOException
+    {
+        return Packet.fromStream(new DataInputStream(new ByteArrayInputStream(encoded)));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.benchmarks;
+
+import nl.pvdberg.pnet.packet.DeflateCompressor;
+import nl.pvdberg.pnet.packet.LZ4Compressor;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketCompressor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compression and decompression of Packets with random (incompressible) and repetitive data,
+ * comparing the GZIP based PacketCompressor with the pooled DeflateCompressor and the LZ4Compressor
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CompressorBenchmark
+{
+    @Param({"256", "16384", "262144"})
+    public int payloadSize;
+
+    @Param({"random", "text"})
+    public String data;
+
+    private Packet packet;
+    private Packet compressed;
+    private final DeflateCompressor deflateCompressor = new DeflateCompressor();
+    private Packet deflated;
+    private final LZ4Compressor lz4Compressor = new LZ4Compressor();
+    private Packet lz4Compressed;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        final byte[] payload = new byte[payloadSize];
+        if (data.equals("random"))
+        {
+            new Random(0).nextBytes(payload);
+        }
+        else
+        {
+            final byte[] text = "{\"id\":12345,\"name\":\"player\",\"position\":[1.0,2.0,3.0]}".getBytes("UTF-8");
+            for (int i = 0; i < payload.length; i++) payload[i] = text[i % text.length];
+        }
+
+        packet = new Packet(Packet.PacketType.Request, (short) 1, payload);
+        compressed = PacketCompressor.compress(packet);
+        deflated = deflateCompressor.compress(packet);
+        lz4Compressed = lz4Compressor.compress(packet);
+    }
+
+    @Benchmark
+    public Packet compress() throws IOException
+    {
+        return PacketCompressor.compress(packet);
+    }
+
+    @Benchmark
+    public Packet decompress() throws IOException
+    {
+        return PacketCompressor.decompress(compressed);
+    }
+
+    @Benchmark
+    public Packet deflateCompress()
+    {
+        return deflateCompressor.compress(packet);
+    }
+
+    @Benchmark
+    public Packet deflateDecompress() throws IOException
+    {
+        return deflateCompressor.decompress(deflated);
+    }
+
+    @Benchmark
+    public Packet lz4Compress()
+    {
+        return lz4Compressor.compress(packet);
+    }
+
+    @Benchmark
+    public Packet lz4Decompress() throws IOException
+    {
+        return lz4Compressor.decompress(lz4Compressed);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.benchmarks;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.event.PacketDistributer;
+import nl.pvdberg.pnet.event.PacketHandler;
+import nl.pvdberg.pnet.packet.Packet;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatching Packets to their handlers, by one or multiple receiving threads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DistributerBenchmark
+{
+    private static final int HANDLERS = 64;
+
+    private PacketDistributer packetDistributer;
+    private Packet[] packets;
+
+    @Setup
+    public void setUp()
+    {
+        packetDistributer = new PacketDistributer();
+        packets = new Packet[HANDLERS];
+
+        for (short i = 0; i < HANDLERS; i++)
+        {
+            packetDistributer.addHandler(i, new PacketHandler()
+            {
+                @Override
+                public void handlePacket(final Packet p, final Client c) throws IOException
+                {
+                    Blackhole.consumeCPU(1);
+                }
+            });
+            packets[i] = new Packet(Packet.PacketType.Request, i, new byte[0]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Index
+    {
+        int value;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void dispatch(final Index index) throws IOException
+    {
+        packetDistributer.onReceive(packets[index.value++ & (HANDLERS - 1)], null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void dispatchConcurrent(final Index index) throws IOException
+    {
+        packetDistributer.onReceive(packets[index.value++ & (HANDLERS - 1)], null);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.benchmarks;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.client.NioClient;
+import nl.pvdberg.pnet.client.util.PlainClient;
+import nl.pvdberg.pnet.client.util.TLSClient;
+import nl.pvdberg.pnet.event.ReceiveListener;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.server.NioServer;
+import nl.pvdberg.pnet.server.Server;
+import nl.pvdberg.pnet.server.util.PlainServer;
+import nl.pvdberg.pnet.server.util.TLSServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end benchmarks over a loopback connection.
+ * Throughput counts Packets until the Server has received them, latency measures a full request / reply round trip.
+ * TLS needs the test key and trust stores, which are located using the pnet.keyStore and pnet.trustStore system properties
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoopbackBenchmark
+{
+    private static final int PORT = 42380;
+    private static final int BATCH = 1000;
+
+    private static final short ONE_WAY_ID = 0;
+    private static final short ECHO_ID = 1;
+
+    private static final char[] password = "password".toCharArray();
+    private static final String storeType = "PKCS12";
+
+    @Param({"plain", "tls", "nio"})
+    public String transport;
+
+    @Param({"0", "1024", "65536"})
+    public int payloadSize;
+
+    private Server server;
+    private Client client;
+
+    private Packet oneWayPacket;
+    private Packet echoPacket;
+
+    private final Semaphore serverReceived = new Semaphore(0);
+    private final Semaphore clientReceived = new Semaphore(0);
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        final byte[] payload = new byte[payloadSize];
+        new Random(0).nextBytes(payload);
+        oneWayPacket = new Packet(Packet.PacketType.Request, ONE_WAY_ID, payload);
+        echoPacket = new Packet(Packet.PacketType.Request, ECHO_ID, payload);
+
+        if (transport.equals("plain"))
+        {
+            server = new PlainServer();
+            client = new PlainClient();
+        }
+        else if (transport.equals("tls"))
+        {
+            server = new TLSServer(readFile(System.getProperty("pnet.keyStore", "../testKeyStore.p12")), password, storeType);
+            client = new TLSClient(readFile(System.getProperty("pnet.trustStore", "../testTrustStore.p12")), password, storeType);
+        }
+        else if (transport.equals("nio"))
+        {
+            server = new NioServer(1);
+            client = new NioClient();
+        }
+        else throw new IllegalArgumentException("Unknown transport: " + transport);
+
+        server.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                if (p.getPacketID() == ECHO_ID)
+                {
+                    c.send(new Packet(Packet.PacketType.Reply, ECHO_ID, p.getData()));
+                    return;
+                }
+                serverReceived.release();
+            }
+        });
+        client.setClientListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                clientReceived.release();
+            }
+        });
+
+        if (!server.start(PORT)) throw new IllegalStateException("Unable to start server");
+        if (!client.connect("localhost", PORT)) throw new IllegalStateException("Unable to connect");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        client.close();
+        server.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public void throughput() throws InterruptedException
+    {
+        for (int i = 0; i < BATCH; i++)
+        {
+            if (!client.send(oneWayPacket)) throw new IllegalStateException("Unable to send");
+        }
+        client.flush();
+        serverReceived.acquire(BATCH);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void roundTrip() throws InterruptedException
+    {
+        if (!client.send(echoPacket)) throw new IllegalStateException("Unable to send");
+        clientReceived.acquire();
+    }
+
+    private static byte[] readFile(final String path) throws IOException
+    {
+        final File file = new File(path);
+        final byte[] data = new byte[(int) file.length()];
+        final FileInputStream fileInputStream = new FileInputStream(file);
+        try
+        {
+            int read = 0;
+            while (read < data.length)
+            {
+                final int count = fileInputStream.read(data, read, data.length - read);
+                if (count < 0) throw new IOException("Unexpected end of file: " + path);
+                read += count;
+            }
+        }
+        finally
+        {
+            fileInputStream.close();
+        }
+        return data;
+    }
+}
@@ -25,8 +25,11 @@
 package nl.pvdberg.pnet.client;
 
 import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.packet.BufferPool;
 import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketFraming;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
@@ -39,6 +42,37 @@ public interface Client
      */
     void setClientListener(final PNetListener clientListener);
 
+    /**
+     * Sets the pool to allocate buffers for received Packets from. When set, received Packets are backed by pooled buffers,
+     * which are released after {@link PNetListener#onReceive(Packet, Client)} returns.
+     * Handlers which keep a received Packet have to {@link Packet#retain() retain} it
+     * @param bufferPool Nullable BufferPool, see {@link nl.pvdberg.pnet.packet.FileBufferPool} to receive large Packets into files
+     */
+    void setBufferPool(final BufferPool bufferPool);
+
+    /**
+     * Sets the preferred format of Packet headers. Connections start in {@link PacketFraming#Legacy} framing,
+     * and switch per direction once the other side turns out to prefer the same framing.
+     * Should be set before connecting, the default is {@link PacketFraming#Legacy}
+     * @param packetFraming PacketFraming
+     */
+    void setPacketFraming(final PacketFraming packetFraming);
+
+    /**
+     * Sets whether the connection is compressed as a whole, instead of per Packet.
+     * Each direction is only compressed when both sides enable it, otherwise the connection stays uncompressed.
+     * Should be set before connecting, disabled by default
+     * @param streamCompression Compress the connection
+     * @throws UnsupportedOperationException when not supported by this Client
+     */
+    void setStreamCompression(final boolean streamCompression);
+
+    /**
+     * Sets the maximum data length of received Packets. When a larger Packet is announced, the connection is closed before any memory is allocated
+     * @param maxDataLength Maximum data length in bytes, {@link Integer#MAX_VALUE} by default
+     */
+    void setMaxDataLength(final int maxDataLength);
+
     /**
      * Connects to given host:port
      * @throws IllegalStateException when Client is not closed
@@ -61,6 +95,24 @@ public interface Client
      */
     boolean send(final Packet packet);
 
+    /**
+     * Sends a region of given file as the data of a Request Packet. The file is not loaded into memory.
+     * A {@link NioClient} transfers the file to the socket without copying it through the heap, other Clients copy it in chunks
+     * @param packetID Packet ID
+     * @param file File to send
+     * @param position Position of the first byte to send
+     * @param length Amount of bytes to send
+     * @return Successful
+     */
+    boolean sendFile(final short packetID, final File file, final long position, final int length);
+
+    /**
+     * Writes all buffered Packets to the socket
+     * @return Successful
+     * @see FlushPolicy
+     */
+    boolean flush();
+
     /**
      * Closes listener thread and socket of this Client
      */
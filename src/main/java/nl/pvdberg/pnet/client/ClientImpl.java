@@ -26,7 +26,10 @@ package nl.pvdberg.pnet.client;
 
 import nl.pvdberg.pnet.event.PNetListener;
 import nl.pvdberg.pnet.factory.SocketFactory;
+import nl.pvdberg.pnet.packet.BufferPool;
+import nl.pvdberg.pnet.packet.Codecs;
 import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketFraming;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,27 +37,93 @@ import java.io.*;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import static nl.pvdberg.pnet.threading.ThreadManager.launchThread;
+import static nl.pvdberg.pnet.threading.ThreadManager.schedule;
 
 public class ClientImpl implements Client
 {
+    public static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Reserved Packet ID of stream compression negotiation Packets. A Request offers to read a compressed stream,
+     * a Reply accepts it: every byte written after the Reply is compressed. Only sides which both enable stream compression switch
+     */
+    public static final short STREAM_COMPRESSION_ID = Short.MIN_VALUE + 4;
+
     private final Logger logger = LoggerFactory.getLogger(ClientImpl.class);
 
     private final SocketFactory sf;
+    private final FlushPolicy flushPolicy;
+    private final ExecutorService executorService;
 
     private Socket socket;
     private DataInputStream dataInputStream;
     private DataOutputStream dataOutputStream;
+    private int bufferedBytes;
+    private volatile boolean flushScheduled;
+    private final Runnable flushTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            synchronized (ClientImpl.this)
+            {
+                flushScheduled = false;
+                if (bufferedBytes > 0 && !flush()) close();
+            }
+        }
+    };
+    private ByteBuffer fileBuffer;
+    private SyncFlushDeflaterOutputStream deflaterOutputStream;
 
     private PNetListener clientListener;
+    private volatile BufferPool bufferPool;
+    private volatile PacketFraming packetFraming;
+    // Framing of the current connection, negotiated per direction. The read framing is only used by the listener thread
+    private PacketFraming readFraming;
+    private PacketFraming writeFraming;
+    private volatile int maxDataLength;
+    private volatile boolean streamCompression;
 
     /**
-     * Creates a new Client
+     * Creates a new Client which writes every Packet immediately
      */
     public ClientImpl(final SocketFactory sf)
+    {
+        this(sf, FlushPolicy.IMMEDIATE);
+    }
+
+    /**
+     * Creates a new Client
+     * @param flushPolicy Policy which determines when sent Packets are written
+     */
+    public ClientImpl(final SocketFactory sf, final FlushPolicy flushPolicy)
+    {
+        this(sf, flushPolicy, null);
+    }
+
+    /**
+     * Creates a new Client
+     * @param flushPolicy Policy which determines when sent Packets are written
+     * @param executorService Nullable ExecutorService which runs the listener thread, see {@link nl.pvdberg.pnet.threading.ThreadManager ThreadManager} when null
+     */
+    public ClientImpl(final SocketFactory sf, final FlushPolicy flushPolicy, final ExecutorService executorService)
     {
         this.sf = sf;
+        this.flushPolicy = flushPolicy;
+        this.executorService = executorService;
+        packetFraming = PacketFraming.Legacy;
+        readFraming = PacketFraming.Legacy;
+        writeFraming = PacketFraming.Legacy;
+        maxDataLength = Integer.MAX_VALUE;
     }
 
     @Override
@@ -63,6 +132,41 @@ public class ClientImpl implements Client
         this.clientListener = clientListener;
     }
 
+    @Override
+    public void setBufferPool(final BufferPool bufferPool)
+    {
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public void setPacketFraming(final PacketFraming packetFraming)
+    {
+        this.packetFraming = packetFraming;
+    }
+
+    @Override
+    public void setMaxDataLength(final int maxDataLength)
+    {
+        if (maxDataLength < 0) throw new IllegalArgumentException("Negative maximum data length");
+        this.maxDataLength = maxDataLength;
+    }
+
+    /**
+     * Compresses the whole connection as a single deflate stream, which is flushed together with the socket.
+     * Unlike compressing Packets individually, redundancy between Packets is exploited and small Packets are compressed as well.
+     * Each direction is switched to compression after connecting, once the other side turns out to enable it as well
+     * (see {@link #STREAM_COMPRESSION_ID}). Requires Java 7 or higher
+     */
+    @Override
+    public void setStreamCompression(final boolean streamCompression)
+    {
+        if (streamCompression && !SyncFlushDeflaterOutputStream.isSupported())
+        {
+            throw new UnsupportedOperationException("Stream compression requires Java 7 or higher");
+        }
+        this.streamCompression = streamCompression;
+    }
+
     @Override
     public synchronized boolean connect(final String host, final int port)
     {
@@ -91,49 +195,106 @@ public class ClientImpl implements Client
 
         this.socket = socket;
         socket.setKeepAlive(false);
+        bufferedBytes = 0;
+
+        // Every connection starts uncompressed and in legacy framing
+        deflaterOutputStream = null;
         dataInputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
         dataOutputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        readFraming = PacketFraming.Legacy;
+        writeFraming = PacketFraming.Legacy;
+        final PacketFraming packetFraming = this.packetFraming;
+        if (packetFraming != PacketFraming.Legacy) send(packetFraming.createNegotiationPacket(Packet.PacketType.Request));
+        if (streamCompression) send(new Packet(Packet.PacketType.Request, STREAM_COMPRESSION_ID, new byte[0]));
+        if (bufferedBytes > 0) flush();
 
         logger.debug("Starting thread");
-        launchThread(new Runnable()
+        final DataInputStream dataInputStream = this.dataInputStream;
+        launchThread(executorService, new Runnable()
         {
             @Override
             public void run()
             {
-                listenerThreadImpl();
+                listenerThreadImpl(socket, dataInputStream);
             }
         });
 
         if (clientListener != null) clientListener.onConnect(this);
     }
 
-    private void listenerThreadImpl()
+    /**
+     * Receives Packets of a single connection. The thread may outlive its connection briefly, so it never touches the streams of a reconnected Client
+     * @param socket Socket of the connection
+     * @param dataInputStream Input of the connection
+     */
+    private void listenerThreadImpl(final Socket socket, final DataInputStream dataInputStream)
     {
+        DataInputStream in = dataInputStream;
+        Inflater inflater = null;
+
         while (true)
         {
             final Packet packet;
 
             try
             {
-                // Block while waiting for a Packet
-                packet = Packet.fromStream(dataInputStream);
+                // Block while waiting for a Packet, encoded Packets are decoded before they are passed on
+                packet = Codecs.decompress(Packet.fromStream(in, bufferPool, readFraming, maxDataLength), maxDataLength);
+
+                if (packet.getPacketID() == STREAM_COMPRESSION_ID)
+                {
+                    try
+                    {
+                        if (packet.isRequest())
+                        {
+                            acceptStreamCompression(socket);
+                        }
+                        else if (inflater == null)
+                        {
+                            // Everything after the Reply is compressed, including data which is already buffered
+                            logger.debug("Reading compressed stream");
+                            inflater = new Inflater(true);
+                            in = new DataInputStream(new BufferedInputStream(
+                                    new InflaterInputStream(in, inflater, SyncFlushDeflaterOutputStream.BUFFER_SIZE)
+                            ));
+                        }
+                    }
+                    finally
+                    {
+                        packet.release();
+                    }
+                    continue;
+                }
+
+                if (packet.getPacketID() == PacketFraming.NEGOTIATION_ID)
+                {
+                    try
+                    {
+                        handleNegotiation(packet);
+                    }
+                    finally
+                    {
+                        packet.release();
+                    }
+                    continue;
+                }
             }
             catch (final SocketException e)
             {
                 // Ignore : socket is closed
-                close();
+                close(socket);
                 break;
             }
             catch (final EOFException e)
             {
                 // Ignore : socket is closed
-                close();
+                close(socket);
                 break;
             }
             catch (final IOException e)
             {
                 logger.error("Error in listener thread: {} :", e.getClass(), e);
-                close();
+                close(socket);
                 break;
             }
 
@@ -155,11 +316,56 @@ public class ClientImpl implements Client
                     logger.error("Exception while handling onReceive: {} :", e.getClass(), e);
                 }
             }
+
+            packet.release();
         }
 
+        if (inflater != null) inflater.end();
         logger.debug("Listener thread stopped");
     }
 
+    /**
+     * Handles a framing negotiation Packet. Called by the listener thread, so the read framing changes in between two Packets
+     * @param packet Packet with ID {@link PacketFraming#NEGOTIATION_ID}
+     * @throws IOException when the Packet is invalid
+     */
+    private void handleNegotiation(final Packet packet) throws IOException
+    {
+        final PacketFraming framing = PacketFraming.negotiate(packet, packetFraming);
+        if (framing == null) return;
+
+        if (packet.isReply())
+        {
+            logger.debug("Reading {} framing", framing);
+            readFraming = framing;
+            return;
+        }
+
+        synchronized (this)
+        {
+            if (!send(framing.createNegotiationPacket(Packet.PacketType.Reply))) return;
+            logger.debug("Writing {} framing", framing);
+            writeFraming = framing;
+            flush();
+        }
+    }
+
+    /**
+     * Accepts the offer of the other side to read a compressed stream, when stream compression is enabled here as well.
+     * Called by the listener thread
+     * @param socket Socket of the connection the offer was received on
+     */
+    private synchronized void acceptStreamCompression(final Socket socket) throws IOException
+    {
+        if (!streamCompression || this.socket != socket || deflaterOutputStream != null) return;
+        if (!send(new Packet(Packet.PacketType.Reply, STREAM_COMPRESSION_ID, new byte[0]))) return;
+        flushBuffer();
+
+        logger.debug("Writing compressed stream");
+        deflaterOutputStream = new SyncFlushDeflaterOutputStream(socket.getOutputStream(), Deflater.DEFAULT_COMPRESSION);
+        dataOutputStream = new DataOutputStream(new BufferedOutputStream(deflaterOutputStream));
+    }
+
     @Override
     public synchronized boolean send(final Packet packet)
     {
@@ -168,8 +374,9 @@ public class ClientImpl implements Client
         try
         {
             logger.debug("Sending packet: {{}}", packet);
-            packet.write(dataOutputStream);
-            dataOutputStream.flush();
+            final PacketFraming packetFraming = writeFraming;
+            packet.write(dataOutputStream, packetFraming);
+            onWritten(packetFraming.getHeaderSize(packet) + packet.getDataLength());
             return true;
         }
         catch (final IOException e)
@@ -179,6 +386,124 @@ public class ClientImpl implements Client
         }
     }
 
+    /**
+     * Sends a region of given file. The file is copied to the socket stream in chunks of {@link #FILE_BUFFER_SIZE} bytes,
+     * use a {@link NioClient} to transfer files without copying them through the heap
+     */
+    @Override
+    public synchronized boolean sendFile(final short packetID, final File file, final long position, final int length)
+    {
+        if (!isConnected()) return false;
+
+        final FileRegion fileRegion;
+        try
+        {
+            fileRegion = FileRegion.open(file, position, length);
+        }
+        catch (final IOException e)
+        {
+            logger.error("Unable to open file: {} :", e.getClass(), e);
+            return false;
+        }
+
+        try
+        {
+            logger.debug("Sending file: {} ({} bytes)", file, length);
+            final PacketFraming packetFraming = writeFraming;
+            packetFraming.writeHeader(Packet.PacketType.Request, packetID, length, dataOutputStream);
+
+            if (fileBuffer == null) fileBuffer = ByteBuffer.allocate(FILE_BUFFER_SIZE);
+            fileRegion.copyTo(dataOutputStream, fileBuffer);
+            onWritten(packetFraming.getHeaderSize(Packet.PacketType.Request, packetID, length) + length);
+            return true;
+        }
+        catch (final IOException e)
+        {
+            // Part of the Packet may have been written, so the connection can not be used anymore
+            logger.error("Error while sending file: {} :", e.getClass(), e);
+            close();
+            return false;
+        }
+        finally
+        {
+            fileRegion.close();
+        }
+    }
+
+    /**
+     * Flushes written data when required by the FlushPolicy
+     * @param bytes Amount of bytes written
+     * @throws IOException when unable to flush
+     */
+    private void onWritten(final int bytes) throws IOException
+    {
+        bufferedBytes += bytes;
+
+        if (bufferedBytes >= flushPolicy.getMaxBufferedBytes())
+        {
+            flushBuffer();
+        }
+        else if (flushPolicy.getMaxDelay() > 0 && !flushScheduled)
+        {
+            scheduleFlush();
+        }
+    }
+
+    @Override
+    public synchronized boolean flush()
+    {
+        if (!isConnected()) return false;
+
+        try
+        {
+            flushBuffer();
+            return true;
+        }
+        catch (final IOException e)
+        {
+            logger.error("Error while flushing: {} :", e.getClass(), e);
+            return false;
+        }
+    }
+
+    private void flushBuffer() throws IOException
+    {
+        bufferedBytes = 0;
+        dataOutputStream.flush();
+    }
+
+    private void scheduleFlush()
+    {
+        flushScheduled = true;
+        schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // Flushing may block on the socket, so it does not run on the shared scheduler thread
+                try
+                {
+                    launchThread(executorService, flushTask);
+                }
+                catch (final RejectedExecutionException e)
+                {
+                    // Buffered data is flushed by the next send or on close
+                    logger.warn("Unable to launch delayed flush: {}", e.getClass());
+                    flushScheduled = false;
+                }
+            }
+        }, flushPolicy.getMaxDelay(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes given connection, unless this Client was reconnected in the meantime
+     * @param socket Socket of the connection
+     */
+    private synchronized void close(final Socket socket)
+    {
+        if (this.socket == socket) close();
+    }
+
     @Override
     public synchronized void close()
     {
@@ -187,6 +512,32 @@ public class ClientImpl implements Client
 
         logger.info("Closing client");
 
+        if (bufferedBytes > 0)
+        {
+            try
+            {
+                flushBuffer();
+            }
+            catch (final IOException e)
+            {
+                // Ignore : buffered Packets are lost when the connection is already broken
+            }
+        }
+
+        if (deflaterOutputStream != null)
+        {
+            try
+            {
+                // Also closes the socket
+                deflaterOutputStream.close();
+            }
+            catch (final IOException e)
+            {
+                // Ignore : the socket is closed below
+            }
+            deflaterOutputStream = null;
+        }
+
         try
         {
             socket.close();
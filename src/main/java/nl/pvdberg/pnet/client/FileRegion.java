@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Region of a file which is sent as the data of a Packet
+ */
+class FileRegion
+{
+    private final FileInputStream fileInputStream;
+    private final FileChannel fileChannel;
+    private final int length;
+    private long position;
+    private long remaining;
+
+    private FileRegion(final FileInputStream fileInputStream, final long position, final int length)
+    {
+        this.fileInputStream = fileInputStream;
+        fileChannel = fileInputStream.getChannel();
+        this.length = length;
+        this.position = position;
+        remaining = length;
+    }
+
+    /**
+     * Opens given region of a file
+     * @param file File to send
+     * @param position Position of the first byte
+     * @param length Amount of bytes
+     * @return FileRegion
+     * @throws IOException when unable to open the file or when the region is outside of the file
+     */
+    static FileRegion open(final File file, final long position, final int length) throws IOException
+    {
+        if (position < 0 || length < 0) throw new IllegalArgumentException("Negative position or length");
+
+        final FileInputStream fileInputStream = new FileInputStream(file);
+        final FileRegion fileRegion = new FileRegion(fileInputStream, position, length);
+        if (position + length > fileRegion.fileChannel.size())
+        {
+            fileRegion.close();
+            throw new IOException("Region exceeds file size");
+        }
+        return fileRegion;
+    }
+
+    /**
+     * Returns length of this region
+     * @return Length in bytes
+     */
+    int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Transfers as much of the remaining region as possible to given channel, without copying it through the heap when supported
+     * @param channel Channel to write to
+     * @return Whether the region is completely transferred
+     * @throws IOException when unable to transfer
+     */
+    boolean transferTo(final WritableByteChannel channel) throws IOException
+    {
+        while (remaining > 0)
+        {
+            final long transferred = fileChannel.transferTo(position, remaining, channel);
+            if (transferred <= 0)
+            {
+                if (position >= fileChannel.size()) throw new IOException("Unexpected end of file");
+                return false;
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+        return true;
+    }
+
+    /**
+     * Copies the remaining region to given stream
+     * @param out OutputStream to write to
+     * @param buffer Heap buffer to copy with
+     * @throws IOException when unable to copy
+     */
+    void copyTo(final OutputStream out, final ByteBuffer buffer) throws IOException
+    {
+        while (remaining > 0)
+        {
+            buffer.clear();
+            if (remaining < buffer.capacity()) buffer.limit((int) remaining);
+
+            final int read = fileChannel.read(buffer, position);
+            if (read < 0) throw new IOException("Unexpected end of file");
+            out.write(buffer.array(), buffer.arrayOffset(), read);
+            position += read;
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Closes the file
+     */
+    void close()
+    {
+        try
+        {
+            fileInputStream.close();
+        }
+        catch (final IOException e)
+        {
+            // Ignore : file was only read
+        }
+    }
+}
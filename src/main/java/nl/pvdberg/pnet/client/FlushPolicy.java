@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client;
+
+/**
+ * Determines when a Client writes sent Packets to its socket.
+ * Batching Packets reduces the amount of system calls and TCP segments at the cost of latency
+ */
+public class FlushPolicy
+{
+    /**
+     * Every Packet is written immediately
+     */
+    public static final FlushPolicy IMMEDIATE = new FlushPolicy(0, 0);
+
+    /**
+     * Packets are only written when {@link Client#flush()} is called or the send buffer is full
+     */
+    public static final FlushPolicy MANUAL = new FlushPolicy(Integer.MAX_VALUE, 0);
+
+    private final int maxBufferedBytes;
+    private final int maxDelay;
+
+    private FlushPolicy(final int maxBufferedBytes, final int maxDelay)
+    {
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Creates a policy which buffers Packets until given amount of bytes is buffered or given time has passed since the first buffered Packet
+     * @param maxBufferedBytes Amount of bytes after which the buffer is flushed
+     * @param maxDelay Maximum time in milliseconds a Packet is buffered, or 0 to disable timed flushing
+     * @return FlushPolicy
+     */
+    public static FlushPolicy batched(final int maxBufferedBytes, final int maxDelay)
+    {
+        if (maxBufferedBytes < 1) throw new IllegalArgumentException("Buffer size must be positive");
+        if (maxDelay < 0) throw new IllegalArgumentException("Delay must not be negative");
+        return new FlushPolicy(maxBufferedBytes, maxDelay);
+    }
+
+    /**
+     * Returns whether every Packet is written immediately
+     * @return Immediate
+     */
+    public boolean isImmediate()
+    {
+        return maxBufferedBytes == 0;
+    }
+
+    /**
+     * Returns amount of bytes after which the buffer is flushed
+     * @return Amount of bytes
+     */
+    public int getMaxBufferedBytes()
+    {
+        return maxBufferedBytes;
+    }
+
+    /**
+     * Returns maximum time a Packet is buffered
+     * @return Time in milliseconds, or 0 when timed flushing is disabled
+     */
+    public int getMaxDelay()
+    {
+        return maxDelay;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (isImmediate()) return "Immediate";
+        return "Batched: [" + maxBufferedBytes + " bytes] [" + maxDelay + " ms]";
+    }
+}
@@ -0,0 +1,914 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client;
+
+import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.packet.BufferPool;
+import nl.pvdberg.pnet.packet.Codecs;
+import nl.pvdberg.pnet.packet.FileBufferPool;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketBuffer;
+import nl.pvdberg.pnet.packet.PacketFraming;
+import nl.pvdberg.pnet.packet.VarInt;
+import nl.pvdberg.pnet.threading.EventLoop;
+import nl.pvdberg.pnet.threading.EventLoopGroup;
+import nl.pvdberg.pnet.threading.SelectHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client which uses a non blocking SocketChannel. All reading is done by an EventLoop, which is shared with other Clients,
+ * so a large amount of Clients does not require a large amount of threads.
+ * Events are fired from within the EventLoop, so event handlers should not block.
+ */
+public class NioClient implements Client, SelectHandler
+{
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+    /**
+     * Payloads up to this size are copied behind the header, larger payloads are written without copying
+     */
+    public static final int COPY_THRESHOLD = 512;
+
+    /**
+     * Maximum amount of buffers written by a single gathering write
+     */
+    public static final int MAX_GATHER = 64;
+
+    private final Logger logger = LoggerFactory.getLogger(NioClient.class);
+
+    private final EventLoopGroup eventLoopGroup;
+
+    private volatile SocketChannel channel;
+    private EventLoop eventLoop;
+    private SelectionKey key;
+
+    private volatile PNetListener clientListener;
+    private volatile BufferPool bufferPool;
+    private volatile PacketFraming packetFraming;
+    private volatile int maxDataLength;
+    private int connectTimeout;
+
+    // Read state, only used by the EventLoop, or while no channel is registered
+    private final ByteBuffer headerBuffer;
+    private Packet.PacketType packetType;
+    private short packetID;
+    private int codecID;
+    private boolean readingData;
+    private byte[] data;
+    private PacketBuffer dataBuffer;
+    private int dataLength;
+    private int dataRead;
+    private PacketFraming readFraming;
+
+    // Write state, guarded by writeQueue. Contains PacketBuffers and FileRegions
+    private final Deque<Object> writeQueue;
+    private final PacketBuffer[] gatherFrames;
+    private final ByteBuffer[] gatherBuffers;
+    private boolean writeInterest;
+    // Changed under writeQueue lock, while framingPending Packets are encoded under that lock as well
+    private volatile PacketFraming writeFraming;
+    private volatile boolean framingPending;
+
+    /**
+     * Creates a new Client which is handled by the default EventLoopGroup
+     * @see EventLoopGroup#getDefault()
+     */
+    public NioClient()
+    {
+        this(EventLoopGroup.getDefault());
+    }
+
+    /**
+     * Creates a new Client which is handled by given EventLoopGroup
+     * @param eventLoopGroup EventLoopGroup to register at
+     */
+    public NioClient(final EventLoopGroup eventLoopGroup)
+    {
+        this.eventLoopGroup = eventLoopGroup;
+
+        headerBuffer = ByteBuffer.allocate(PacketFraming.MAX_HEADER_SIZE);
+        writeQueue = new ArrayDeque<Object>();
+        gatherFrames = new PacketBuffer[MAX_GATHER];
+        gatherBuffers = new ByteBuffer[MAX_GATHER];
+        connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        packetFraming = PacketFraming.Legacy;
+        readFraming = PacketFraming.Legacy;
+        writeFraming = PacketFraming.Legacy;
+        maxDataLength = Integer.MAX_VALUE;
+    }
+
+    @Override
+    public synchronized void setClientListener(final PNetListener clientListener)
+    {
+        this.clientListener = clientListener;
+    }
+
+    /**
+     * Sets the pool to allocate buffers from. When set, received Packets are backed by pooled buffers,
+     * which are released after {@link PNetListener#onReceive(Packet, Client)} returns.
+     * Handlers which keep a received Packet have to {@link Packet#retain() retain} it.
+     * Headers of sent Packets are encoded into pooled buffers as well
+     * @param bufferPool Nullable BufferPool
+     */
+    @Override
+    public void setBufferPool(final BufferPool bufferPool)
+    {
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public void setPacketFraming(final PacketFraming packetFraming)
+    {
+        this.packetFraming = packetFraming;
+    }
+
+    /**
+     * Not supported, as Packets are framed directly into channel buffers
+     */
+    @Override
+    public void setStreamCompression(final boolean streamCompression)
+    {
+        if (streamCompression) throw new UnsupportedOperationException("Stream compression is not supported by NioClient");
+    }
+
+    @Override
+    public void setMaxDataLength(final int maxDataLength)
+    {
+        if (maxDataLength < 0) throw new IllegalArgumentException("Negative maximum data length");
+        this.maxDataLength = maxDataLength;
+    }
+
+    /**
+     * Sets the maximum time to wait for a connection to be established
+     * @param connectTimeout Timeout in milliseconds
+     */
+    public synchronized void setConnectTimeout(final int connectTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+    }
+
+    @Override
+    public synchronized boolean connect(final String host, final int port)
+    {
+        if (isConnected()) throw new IllegalStateException("Client not closed");
+        if (host.isEmpty() || port == -1) throw new IllegalStateException("Host and port are not set");
+
+        logger.info("Connecting to {}:{}", host, port);
+
+        SocketChannel socketChannel = null;
+        try
+        {
+            socketChannel = SocketChannel.open();
+            socketChannel.configureBlocking(false);
+
+            final EventLoop eventLoop = eventLoopGroup.next();
+            if (!socketChannel.connect(new InetSocketAddress(host, port)) && !finishConnect(socketChannel, eventLoop))
+            {
+                logger.error("Unable to connect: timed out after {} ms", connectTimeout);
+                closeQuietly(socketChannel);
+                return false;
+            }
+
+            start(socketChannel, eventLoop);
+            logger.debug("Connected");
+            return true;
+        }
+        catch (final Exception e)
+        {
+            logger.error("Unable to connect: {} :", e.getClass(), e);
+            closeQuietly(socketChannel);
+            return false;
+        }
+    }
+
+    /**
+     * Lets given EventLoop finish a pending connection, while waiting for it to complete
+     * @param socketChannel Connecting channel
+     * @param eventLoop EventLoop to finish connecting with
+     * @return Whether the connection was established before the timeout expired
+     * @throws IOException when unable to connect
+     */
+    private boolean finishConnect(final SocketChannel socketChannel, final EventLoop eventLoop) throws IOException, InterruptedException
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final IOException[] error = new IOException[1];
+
+        final SelectHandler connectHandler = new SelectHandler()
+        {
+            @Override
+            public void onSelect(final SelectionKey key)
+            {
+                try
+                {
+                    if (!socketChannel.finishConnect()) return;
+                    key.interestOps(0);
+                }
+                catch (final IOException e)
+                {
+                    error[0] = e;
+                }
+                latch.countDown();
+            }
+        };
+
+        eventLoop.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    eventLoop.register(socketChannel, SelectionKey.OP_CONNECT, connectHandler);
+                }
+                catch (final ClosedChannelException e)
+                {
+                    error[0] = e;
+                    latch.countDown();
+                }
+            }
+        });
+
+        if (!latch.await(connectTimeout, TimeUnit.MILLISECONDS)) return false;
+        if (error[0] != null) throw error[0];
+        return true;
+    }
+
+    /**
+     * Directly sets socket in Client. The Socket must have an associated SocketChannel
+     * @param socket Socket to be used
+     * @throws IOException when unable to use given Socket
+     * @throws IllegalStateException when Client is not closed
+     */
+    @Override
+    public synchronized void setSocket(final Socket socket) throws IOException
+    {
+        if (isConnected()) throw new IllegalStateException("Client not closed");
+
+        final SocketChannel socketChannel = socket.getChannel();
+        if (socketChannel == null) throw new IOException("Socket has no SocketChannel");
+
+        socketChannel.configureBlocking(false);
+        start(socketChannel, eventLoopGroup.next());
+    }
+
+    private void start(final SocketChannel socketChannel, final EventLoop eventLoop) throws IOException
+    {
+        socketChannel.socket().setKeepAlive(false);
+
+        // Every connection starts in legacy framing
+        final PacketFraming packetFraming = this.packetFraming;
+        synchronized (writeQueue)
+        {
+            releaseWriteQueue();
+            writeInterest = false;
+            writeFraming = PacketFraming.Legacy;
+            framingPending = packetFraming != PacketFraming.Legacy;
+        }
+        resetReadState();
+        readFraming = PacketFraming.Legacy;
+
+        channel = socketChannel;
+        this.eventLoop = eventLoop;
+
+        if (packetFraming != PacketFraming.Legacy) send(packetFraming.createNegotiationPacket(Packet.PacketType.Request));
+        if (clientListener != null) clientListener.onConnect(this);
+
+        logger.debug("Registering at event loop");
+        eventLoop.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    key = eventLoop.register(socketChannel, SelectionKey.OP_READ, NioClient.this);
+                    synchronized (writeQueue)
+                    {
+                        if (writeInterest) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+                }
+                catch (final ClosedChannelException e)
+                {
+                    // Ignore : closed before registration
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onSelect(final SelectionKey key)
+    {
+        if (key.isReadable()) read();
+        if (key.isValid() && key.isWritable()) onWritable();
+    }
+
+    private void read()
+    {
+        final SocketChannel channel = this.channel;
+        final ByteBuffer in = eventLoop.getReadBuffer();
+
+        try
+        {
+            if (channel.read(in) < 0)
+            {
+                // Ignore : socket is closed
+                close();
+                return;
+            }
+        }
+        catch (final ClosedChannelException e)
+        {
+            // Ignore : socket is closed
+            close();
+            return;
+        }
+        catch (final IOException e)
+        {
+            logger.error("Error while reading: {} :", e.getClass(), e);
+            close();
+            return;
+        }
+
+        in.flip();
+
+        try
+        {
+            decode(channel, in);
+        }
+        catch (final IOException e)
+        {
+            logger.error("Invalid data received: {} :", e.getClass(), e);
+            close();
+        }
+    }
+
+    /**
+     * Decodes as many Packets as possible from given buffer. Incomplete Packets are stored until more data arrives
+     * @param channel Channel the data was read from
+     * @param in Received data
+     * @throws IOException when the data is not a valid Packet
+     */
+    private void decode(final SocketChannel channel, final ByteBuffer in) throws IOException
+    {
+        while (in.hasRemaining())
+        {
+            if (!readingData)
+            {
+                final PacketFraming packetFraming = readFraming;
+                final ByteBuffer header;
+                if (headerBuffer.position() == 0 && packetFraming.getHeaderLength(in, in.position(), in.remaining()) > 0)
+                {
+                    // Read directly from input
+                    header = in;
+                }
+                else
+                {
+                    // Header is fragmented, its length is only known once it is complete
+                    do
+                    {
+                        if (!in.hasRemaining()) return;
+                        headerBuffer.put(in.get());
+                    }
+                    while (packetFraming.getHeaderLength(headerBuffer, 0, headerBuffer.position()) < 0);
+
+                    headerBuffer.flip();
+                    header = headerBuffer;
+                }
+
+                readHeader(header, packetFraming);
+                headerBuffer.clear();
+            }
+
+            final int length = Math.min(in.remaining(), dataLength - dataRead);
+            if (dataBuffer == null)
+            {
+                in.get(data, dataRead, length);
+            }
+            else
+            {
+                final int limit = in.limit();
+                in.limit(in.position() + length);
+                dataBuffer.getBuffer().put(in);
+                in.limit(limit);
+            }
+            dataRead += length;
+
+            if (dataRead == dataLength)
+            {
+                Packet packet;
+                if (dataBuffer == null)
+                {
+                    packet = new Packet(packetType, packetID, codecID, data);
+                }
+                else
+                {
+                    dataBuffer.getBuffer().flip();
+                    packet = new Packet(packetType, packetID, codecID, dataBuffer);
+                }
+                // Ownership of the buffer moved to the Packet
+                dataBuffer = null;
+                resetReadState();
+
+                // Encoded Packets are decoded before they are passed on
+                if (codecID != 0) packet = Codecs.decompress(packet, maxDataLength);
+
+                try
+                {
+                    if (packet.getPacketID() == PacketFraming.NEGOTIATION_ID) handleNegotiation(packet);
+                    // Stream compression offers are declined by not replying
+                    else if (packet.getPacketID() != ClientImpl.STREAM_COMPRESSION_ID) fireReceive(packet);
+                }
+                finally
+                {
+                    packet.release();
+                }
+                if (!channel.isOpen()) return;
+            }
+        }
+    }
+
+    /**
+     * Handles a framing negotiation Packet. Called by the EventLoop, so the read framing changes in between two Packets
+     * @param packet Packet with ID {@link PacketFraming#NEGOTIATION_ID}
+     * @throws IOException when the Packet is invalid
+     */
+    private void handleNegotiation(final Packet packet) throws IOException
+    {
+        final PacketFraming framing = PacketFraming.negotiate(packet, packetFraming);
+        if (framing == null) return;
+
+        if (packet.isReply())
+        {
+            logger.debug("Reading {} framing", framing);
+            readFraming = framing;
+            return;
+        }
+
+        synchronized (writeQueue)
+        {
+            if (!send(framing.createNegotiationPacket(Packet.PacketType.Reply))) return;
+            logger.debug("Writing {} framing", framing);
+            writeFraming = framing;
+            framingPending = false;
+        }
+    }
+
+    /**
+     * Drops any partially received Packet, releasing its buffer
+     */
+    private void resetReadState()
+    {
+        if (dataBuffer != null)
+        {
+            dataBuffer.release();
+            dataBuffer = null;
+        }
+        data = null;
+        readingData = false;
+        headerBuffer.clear();
+    }
+
+    private void readHeader(final ByteBuffer header, final PacketFraming packetFraming) throws IOException
+    {
+        if (packetFraming == PacketFraming.Legacy)
+        {
+            // Packet Type and codec ID
+            final int type = header.get() & 0xFF;
+            packetType = PacketFraming.getLegacyPacketType(type);
+            codecID = PacketFraming.getLegacyCodecID(type);
+
+            // Packet ID
+            packetID = header.getShort();
+
+            // Data Length
+            dataLength = header.getInt();
+        }
+        else
+        {
+            // Packet Type and Packet ID
+            final int compactID = VarInt.readVarInt(header);
+            packetType = PacketFraming.getCompactPacketType(compactID);
+            packetID = PacketFraming.getCompactPacketID(compactID);
+            codecID = PacketFraming.getCompactCodecID(compactID);
+
+            // Data Length
+            dataLength = VarInt.readVarInt(header);
+        }
+        if (dataLength < 0) throw new IOException("Invalid data length: " + dataLength);
+        if (dataLength > maxDataLength) throw new IOException("Data length " + dataLength + " exceeds maximum of " + maxDataLength);
+
+        final BufferPool bufferPool = this.bufferPool;
+        if (bufferPool == null) data = new byte[dataLength];
+        else dataBuffer = bufferPool.allocate(dataLength);
+        dataRead = 0;
+        readingData = true;
+    }
+
+    private void fireReceive(final Packet packet)
+    {
+        logger.debug("Received packet: {{}}", packet);
+
+        final PNetListener clientListener = this.clientListener;
+        if (clientListener == null) return;
+
+        try
+        {
+            clientListener.onReceive(packet, this);
+        }
+        catch (final IOException e)
+        {
+            logger.warn("Unable to handle Packet: {} :", e.getClass(), e);
+        }
+        catch (final Exception e)
+        {
+            logger.error("Exception while handling onReceive: {} :", e.getClass(), e);
+        }
+    }
+
+    @Override
+    public boolean send(final Packet packet)
+    {
+        if (!isConnected()) return false;
+
+        logger.debug("Sending packet: {{}}", packet);
+
+        // A framing switch must not happen in between encoding and queueing
+        if (framingPending)
+        {
+            synchronized (writeQueue)
+            {
+                return encodeAndEnqueue(packet);
+            }
+        }
+        return encodeAndEnqueue(packet);
+    }
+
+    private boolean encodeAndEnqueue(final Packet packet)
+    {
+        final boolean copyData = packet.getDataLength() <= COPY_THRESHOLD;
+        final PacketBuffer frame = encode(packet, copyData);
+        PacketBuffer payload = null;
+        if (!copyData)
+        {
+            // Share Packet data, it is written directly after the header
+            payload = packet.getBuffer() == null
+                    ? PacketBuffer.wrap(packet.getData())
+                    : packet.getBuffer().duplicate();
+        }
+
+        if (enqueue(frame, payload)) return true;
+
+        close();
+        return false;
+    }
+
+    /**
+     * Sends a region of given file. The file is transferred directly from the file system to the socket, without copying it through the heap
+     */
+    @Override
+    public boolean sendFile(final short packetID, final File file, final long position, final int length)
+    {
+        if (!isConnected()) return false;
+
+        final FileRegion fileRegion;
+        try
+        {
+            fileRegion = FileRegion.open(file, position, length);
+        }
+        catch (final IOException e)
+        {
+            logger.error("Unable to open file: {} :", e.getClass(), e);
+            return false;
+        }
+
+        logger.debug("Sending file: {} ({} bytes)", file, length);
+
+        // A framing switch must not happen in between encoding and queueing
+        if (framingPending)
+        {
+            synchronized (writeQueue)
+            {
+                return encodeAndEnqueue(packetID, fileRegion, length);
+            }
+        }
+        return encodeAndEnqueue(packetID, fileRegion, length);
+    }
+
+    private boolean encodeAndEnqueue(final short packetID, final FileRegion fileRegion, final int length)
+    {
+        final PacketFraming packetFraming = writeFraming;
+        final PacketBuffer frame = allocateFrame(packetFraming.getHeaderSize(Packet.PacketType.Request, packetID, length));
+        packetFraming.writeHeader(Packet.PacketType.Request, packetID, length, frame.getBuffer());
+        frame.getBuffer().flip();
+
+        if (enqueue(frame, fileRegion)) return true;
+
+        close();
+        return false;
+    }
+
+    /**
+     * Queues a frame and its payload, and writes as much of the queue as possible
+     * @param frame Encoded header
+     * @param payload Nullable PacketBuffer or FileRegion which is written after the header
+     * @return Successful
+     */
+    private boolean enqueue(final PacketBuffer frame, final Object payload)
+    {
+        synchronized (writeQueue)
+        {
+            writeQueue.add(frame);
+            if (payload != null) writeQueue.add(payload);
+
+            // Data is already waiting for the EventLoop
+            if (writeInterest) return true;
+
+            try
+            {
+                if (!flushWriteQueue()) requestWriteInterest();
+                return true;
+            }
+            catch (final IOException e)
+            {
+                logger.error("Error while sending: {} :", e.getClass(), e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Packets are written as soon as the socket accepts them, so there is nothing to flush
+     * @return Whether this Client is connected
+     */
+    @Override
+    public boolean flush()
+    {
+        return isConnected();
+    }
+
+    /**
+     * Encodes the header of given Packet into a buffer which can be queued
+     * @param packet Packet to encode
+     * @param copyData Whether to copy the Packet data behind the header
+     * @return Encoded Packet
+     */
+    private PacketBuffer encode(final Packet packet, final boolean copyData)
+    {
+        final PacketFraming packetFraming = writeFraming;
+        final PacketBuffer frame = allocateFrame(packetFraming.getHeaderSize(packet) + (copyData ? packet.getDataLength() : 0));
+
+        final ByteBuffer buffer = frame.getBuffer();
+        packetFraming.writeHeader(packet, buffer);
+        if (copyData)
+        {
+            if (packet.getBuffer() == null) buffer.put(packet.getData());
+            else packet.getBuffer().copyTo(buffer);
+        }
+        buffer.flip();
+
+        return frame;
+    }
+
+    private PacketBuffer allocateFrame(final int frameLength)
+    {
+        final BufferPool bufferPool = this.bufferPool;
+        if (bufferPool == null) return PacketBuffer.allocate(frameLength, false);
+
+        // Outgoing frames are short lived, never back them by a file
+        if (bufferPool instanceof FileBufferPool && frameLength >= ((FileBufferPool) bufferPool).getThreshold())
+        {
+            return PacketBuffer.allocate(frameLength, bufferPool.isDirect());
+        }
+        return bufferPool.allocate(frameLength);
+    }
+
+    /**
+     * Writes queued data until the queue is empty or the socket buffer is full.
+     * Multiple queued buffers are written at once using a gathering write, queued file regions are transferred directly
+     * @return Whether the queue is empty
+     * @throws IOException when unable to write
+     */
+    private boolean flushWriteQueue() throws IOException
+    {
+        final SocketChannel channel = this.channel;
+
+        while (!writeQueue.isEmpty())
+        {
+            if (writeQueue.peek() instanceof FileRegion)
+            {
+                final FileRegion fileRegion = (FileRegion) writeQueue.peek();
+                if (!fileRegion.transferTo(channel)) return false;
+                writeQueue.poll();
+                fileRegion.close();
+                continue;
+            }
+
+            int count = 0;
+            while (count < MAX_GATHER && writeQueue.peek() instanceof PacketBuffer)
+            {
+                final PacketBuffer frame = (PacketBuffer) writeQueue.poll();
+                gatherFrames[count] = frame;
+                gatherBuffers[count] = frame.getBuffer();
+                count++;
+            }
+
+            int written = 0;
+            try
+            {
+                channel.write(gatherBuffers, 0, count);
+            }
+            finally
+            {
+                // Release written buffers, requeue the rest in order
+                while (written < count && !gatherBuffers[written].hasRemaining())
+                {
+                    gatherFrames[written].release();
+                    written++;
+                }
+                for (int i = count - 1; i >= written; i--)
+                {
+                    writeQueue.addFirst(gatherFrames[i]);
+                }
+                for (int i = 0; i < count; i++)
+                {
+                    gatherFrames[i] = null;
+                    gatherBuffers[i] = null;
+                }
+            }
+
+            // Socket buffer is full
+            if (written < count) return false;
+        }
+
+        return true;
+    }
+
+    private void releaseWriteQueue()
+    {
+        Object entry;
+        while ((entry = writeQueue.poll()) != null)
+        {
+            if (entry instanceof FileRegion) ((FileRegion) entry).close();
+            else ((PacketBuffer) entry).release();
+        }
+    }
+
+    private void requestWriteInterest()
+    {
+        writeInterest = true;
+        eventLoop.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (key != null && key.isValid()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        });
+    }
+
+    private void onWritable()
+    {
+        synchronized (writeQueue)
+        {
+            try
+            {
+                if (!flushWriteQueue()) return;
+                writeInterest = false;
+                key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+            catch (final IOException e)
+            {
+                logger.error("Error while sending queued data: {} :", e.getClass(), e);
+            }
+        }
+
+        close();
+    }
+
+    @Override
+    public void close()
+    {
+        synchronized (this)
+        {
+            if (channel == null) return;
+            if (!channel.isOpen()) return;
+
+            logger.info("Closing client");
+
+            try
+            {
+                channel.close();
+                logger.debug("Channel closed");
+            }
+            catch (final IOException e)
+            {
+                logger.error("Unable to close channel: {} :", e.getClass(), e);
+            }
+
+            synchronized (writeQueue)
+            {
+                releaseWriteQueue();
+            }
+
+            // The read state belongs to the EventLoop, which may still be decoding
+            final SocketChannel closedChannel = channel;
+            final EventLoop eventLoop = this.eventLoop;
+            if (eventLoop == null || eventLoop.inEventLoop())
+            {
+                resetReadState();
+            }
+            else
+            {
+                eventLoop.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        // Already reset when the Client was reconnected in the meantime
+                        if (channel == closedChannel) resetReadState();
+                    }
+                });
+            }
+        }
+
+        // Fire event without holding the lock, the listener may lock on its own (e.g. Server Client lists)
+        final PNetListener clientListener = this.clientListener;
+        if (clientListener != null) clientListener.onDisconnect(this);
+    }
+
+    private void closeQuietly(final SocketChannel socketChannel)
+    {
+        if (socketChannel == null) return;
+        try
+        {
+            socketChannel.close();
+        }
+        catch (final IOException e)
+        {
+            logger.error("Unable to close channel: {} :", e.getClass(), e);
+        }
+    }
+
+    @Override
+    public boolean isConnected()
+    {
+        final SocketChannel channel = this.channel;
+        return channel != null && channel.isOpen() && channel.isConnected();
+    }
+
+    @Override
+    public synchronized InetAddress getInetAddress()
+    {
+        return channel.socket().getInetAddress();
+    }
+
+    @Override
+    public synchronized Socket getSocket()
+    {
+        return channel == null ? null : channel.socket();
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return channel.socket().toString();
+    }
+}
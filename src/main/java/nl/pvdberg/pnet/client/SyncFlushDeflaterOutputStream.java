@@ -0,0 +1,150 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses all written data into a single raw deflate stream. Every {@link #flush()} ends with a sync flush,
+ * so the receiver can decompress everything written so far while the compression history is kept for the next data.
+ * Sync flushing is only available since Java 7, see {@link #isSupported()}
+ */
+class SyncFlushDeflaterOutputStream extends FilterOutputStream
+{
+    public static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final int SYNC_FLUSH = 2;
+    private static final Method deflateMethod = findDeflateMethod();
+
+    private final Deflater deflater;
+    private final byte[] buffer;
+    private boolean closed;
+
+    /**
+     * Creates a new stream
+     * @param out Output
+     * @param level Compression level
+     * @throws UnsupportedOperationException when sync flushing is not supported
+     */
+    SyncFlushDeflaterOutputStream(final OutputStream out, final int level)
+    {
+        super(out);
+        if (!isSupported()) throw new UnsupportedOperationException("Stream compression requires Java 7 or higher");
+
+        deflater = new Deflater(level, true);
+        buffer = new byte[BUFFER_SIZE];
+    }
+
+    private static Method findDeflateMethod()
+    {
+        try
+        {
+            // Java 7+
+            return Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+        }
+        catch (final NoSuchMethodException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether this JVM supports sync flushing
+     * @return Sync flushing supported
+     */
+    static boolean isSupported()
+    {
+        return deflateMethod != null;
+    }
+
+    @Override
+    public void write(final int b) throws IOException
+    {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException
+    {
+        if (closed) throw new IOException("Stream closed");
+        if (len == 0) return;
+
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput())
+        {
+            final int deflated = deflater.deflate(buffer);
+            if (deflated > 0) out.write(buffer, 0, deflated);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        if (closed) throw new IOException("Stream closed");
+
+        int deflated;
+        do
+        {
+            deflated = syncFlush();
+            if (deflated > 0) out.write(buffer, 0, deflated);
+        }
+        while (deflated == buffer.length);
+        out.flush();
+    }
+
+    private int syncFlush() throws IOException
+    {
+        try
+        {
+            return (Integer) deflateMethod.invoke(deflater, buffer, 0, buffer.length, SYNC_FLUSH);
+        }
+        catch (final IllegalAccessException e)
+        {
+            throw new IOException("Unable to flush", e);
+        }
+        catch (final InvocationTargetException e)
+        {
+            throw new IOException("Unable to flush", e.getCause());
+        }
+    }
+
+    /**
+     * Releases the Deflater and closes the underlying stream. Data which is not flushed is lost
+     * @throws IOException when unable to close the underlying stream
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed) return;
+        closed = true;
+        deflater.end();
+        out.close();
+    }
+}
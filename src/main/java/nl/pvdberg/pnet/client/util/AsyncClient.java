@@ -30,29 +30,78 @@ import nl.pvdberg.pnet.packet.Packet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
 
 import static nl.pvdberg.pnet.threading.ThreadManager.launchThread;
 import static nl.pvdberg.pnet.threading.ThreadManager.waitForCompletion;
 
+/**
+ * Client which connects and sends asynchronously. Packets are queued per priority level and sent by a sender thread.
+ * Levels share the connection by weight: a level with twice the weight may send twice as many bytes, so high priority Packets
+ * cut ahead of bulk data without starving it. The amount of queued Packets per level can be bounded
+ */
 public class AsyncClient extends ClientDecorator
 {
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;
+
+    /**
+     * Weights of {@link #PRIORITY_HIGH}, {@link #PRIORITY_NORMAL} and {@link #PRIORITY_LOW}
+     */
+    public static final int[] DEFAULT_WEIGHTS = { 16, 4, 1 };
+
     private final Logger logger = LoggerFactory.getLogger(AsyncClient.class);
 
-    private final LinkedBlockingDeque<AsyncPacket> asyncSenderQueue;
+    private final PrioritySendQueue<AsyncPacket> asyncSenderQueue;
+    private final ExecutorService executorService;
     private Future asyncSenderFuture;
+    private boolean sending;
 
     /**
      * Adds asynchronous functionality to given Client implementation
      * @param client Client implementation
      */
     public AsyncClient(final Client client)
+    {
+        this(client, null);
+    }
+
+    /**
+     * Adds asynchronous functionality to given Client implementation, using the default priority levels without bounds
+     * @param client Client implementation
+     * @param executorService Nullable ExecutorService which runs the connector and sender threads
+     */
+    public AsyncClient(final Client client, final ExecutorService executorService)
+    {
+        this(client, executorService, DEFAULT_WEIGHTS, unbounded(DEFAULT_WEIGHTS.length));
+    }
+
+    /**
+     * Adds asynchronous functionality to given Client implementation
+     * @param client Client implementation
+     * @param executorService Nullable ExecutorService which runs the connector and sender threads
+     * @param weights Weight per priority level, the first level has the highest priority
+     * @param bounds Maximum amount of queued Packets per priority level
+     */
+    public AsyncClient(final Client client, final ExecutorService executorService, final int[] weights, final int[] bounds)
     {
         super(client);
+        this.executorService = executorService;
+
+        asyncSenderQueue = new PrioritySendQueue<AsyncPacket>(weights, bounds);
+    }
 
-        asyncSenderQueue = new LinkedBlockingDeque<AsyncPacket>();
+    private static int[] unbounded(final int levels)
+    {
+        final int[] bounds = new int[levels];
+        Arrays.fill(bounds, Integer.MAX_VALUE);
+        return bounds;
     }
 
     /**
@@ -68,7 +117,7 @@ public class AsyncClient extends ClientDecorator
         }
 
         logger.debug("Starting connector thread");
-        launchThread(new Runnable()
+        launchThread(executorService, new Runnable()
         {
             @Override
             public void run()
@@ -83,75 +132,164 @@ public class AsyncClient extends ClientDecorator
      * Blocks until all packets are sent asynchronously
      * @see Future#get()
      */
-    public synchronized void waitForAsyncCompletion() throws InterruptedException, ExecutionException
+    public void waitForAsyncCompletion() throws InterruptedException, ExecutionException
     {
+        final Future asyncSenderFuture;
+        synchronized (asyncSenderQueue)
+        {
+            asyncSenderFuture = this.asyncSenderFuture;
+        }
         if (asyncSenderFuture != null) waitForCompletion(asyncSenderFuture);
     }
 
     /**
-     * Calls {@link AsyncClient#sendAsync(Packet, AsyncListener, boolean) sendAsync(Packet, AsyncListener, false)}
+     * Calls {@link AsyncClient#sendAsync(Packet, AsyncListener, int) sendAsync(Packet, AsyncListener, PRIORITY_NORMAL)}
+     */
+    public boolean sendAsync(final Packet packet, final AsyncListener asyncListener)
+    {
+        return sendAsync(packet, asyncListener, PRIORITY_NORMAL);
+    }
+
+    /**
+     * Calls {@link AsyncClient#sendAsync(Packet, AsyncListener, int) sendAsync} using {@link #PRIORITY_HIGH} or {@link #PRIORITY_NORMAL}
+     * @param topPriority Whether to send this Packet with high priority
      */
-    public synchronized void sendAsync(final Packet packet, final AsyncListener asyncListener)
+    public boolean sendAsync(final Packet packet, final AsyncListener asyncListener, final boolean topPriority)
     {
-        sendAsync(packet, asyncListener, false);
+        return sendAsync(packet, asyncListener, topPriority ? PRIORITY_HIGH : PRIORITY_NORMAL);
     }
 
     /**
      * @see Client#send(Packet)
      * @param asyncListener Nullable completion listener. Contains boolean : true if successfully sent
-     * @param topPriority Whether to add this Packet at the head of the queue
+     * @param priority Priority level, where 0 is the highest priority
+     * @return False when the queue of this priority level is full or the sender thread could not be launched, the listener is notified as well
      */
-    public synchronized void sendAsync(final Packet packet, final AsyncListener asyncListener, final boolean topPriority)
+    public boolean sendAsync(final Packet packet, final AsyncListener asyncListener, final int priority)
     {
-        logger.debug("Scheduling async Packet, top priority: {}", topPriority);
+        logger.debug("Scheduling async Packet, priority: {}", priority);
 
-        if (topPriority)
+        final AsyncPacket asyncPacket = new AsyncPacket(packet, asyncListener);
+        final List<AsyncPacket> dropped;
+        synchronized (asyncSenderQueue)
         {
-            asyncSenderQueue.addFirst(new AsyncPacket(packet, asyncListener));
-        }
-        else
-        {
-            asyncSenderQueue.addLast(new AsyncPacket(packet, asyncListener));
-        }
+            if (!asyncSenderQueue.offer(asyncPacket, priority, packet.getDataLength()))
+            {
+                logger.debug("Queue of priority {} is full", priority);
+                asyncPacket.onComplete(false);
+                return false;
+            }
 
-        // Start thread if needed
-        if (asyncSenderFuture == null || asyncSenderFuture.isDone())
-        {
-            asyncSenderFuture = launchThread(new Runnable()
+            // Start thread if needed
+            if (sending) return true;
+            sending = true;
+            try
             {
-                @Override
-                public void run()
+                asyncSenderFuture = launchThread(executorService, new Runnable()
                 {
-                    asyncSenderThreadImpl();
-                }
-            });
+                    @Override
+                    public void run()
+                    {
+                        asyncSenderThreadImpl();
+                    }
+                });
+                return true;
+            }
+            catch (final RejectedExecutionException e)
+            {
+                // Nothing would ever send the queued Packets
+                logger.error("Unable to launch sender thread: {} :", e.getClass(), e);
+                sending = false;
+                dropped = asyncSenderQueue.clear();
+            }
         }
+
+        for (final AsyncPacket droppedPacket : dropped)
+        {
+            droppedPacket.onComplete(false);
+        }
+        return false;
     }
 
     private void asyncSenderThreadImpl()
     {
         logger.debug("Async sender thread started");
-        while (!asyncSenderQueue.isEmpty())
+        while (true)
         {
-            try
+            final AsyncPacket asyncPacket;
+            synchronized (asyncSenderQueue)
             {
-                final AsyncPacket asyncPacket = asyncSenderQueue.takeFirst();
-                asyncPacket.onComplete(client.send(asyncPacket.getPacket()));
-            }
-            catch (final InterruptedException e)
-            {
-                asyncSenderQueue.clear();
-                break;
+                asyncPacket = asyncSenderQueue.poll();
+                if (asyncPacket == null)
+                {
+                    sending = false;
+                    break;
+                }
             }
+            asyncPacket.onComplete(client.send(asyncPacket.getPacket()));
         }
+
+        // Write everything that was batched while the queue was drained
+        client.flush();
         logger.debug("Async sender thread stopped");
     }
 
+    /**
+     * Returns the amount of queued Packets of given priority level
+     * @param priority Priority level
+     * @return Amount of queued Packets
+     */
+    public int getQueueDepth(final int priority)
+    {
+        synchronized (asyncSenderQueue)
+        {
+            return asyncSenderQueue.getDepth(priority);
+        }
+    }
+
+    /**
+     * Returns the highest amount of queued Packets of given priority level since this Client was created
+     * @param priority Priority level
+     * @return Highest amount of queued Packets
+     */
+    public int getPeakQueueDepth(final int priority)
+    {
+        synchronized (asyncSenderQueue)
+        {
+            return asyncSenderQueue.getPeakDepth(priority);
+        }
+    }
+
+    /**
+     * Returns the amount of Packets of given priority level which were rejected because the queue was full
+     * @param priority Priority level
+     * @return Amount of rejected Packets
+     */
+    public long getRejectedPackets(final int priority)
+    {
+        synchronized (asyncSenderQueue)
+        {
+            return asyncSenderQueue.getRejected(priority);
+        }
+    }
+
+    /**
+     * Closes the connection. Queued Packets are dropped, their listeners are notified
+     */
     @Override
-    public synchronized void close()
+    public void close()
     {
         client.close();
-        if (asyncSenderFuture != null) asyncSenderFuture.cancel(true);
+
+        final List<AsyncPacket> dropped;
+        synchronized (asyncSenderQueue)
+        {
+            dropped = asyncSenderQueue.clear();
+        }
+        for (final AsyncPacket asyncPacket : dropped)
+        {
+            asyncPacket.onComplete(false);
+        }
     }
 
     private static class AsyncPacket
@@ -26,8 +26,11 @@ package nl.pvdberg.pnet.client.util;
 
 import nl.pvdberg.pnet.client.Client;
 import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.packet.BufferPool;
 import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketFraming;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
@@ -72,6 +75,30 @@ public class ClientDecorator implements Client
         this.clientListener = clientListener;
     }
 
+    @Override
+    public void setPacketFraming(final PacketFraming packetFraming)
+    {
+        client.setPacketFraming(packetFraming);
+    }
+
+    @Override
+    public void setStreamCompression(final boolean streamCompression)
+    {
+        client.setStreamCompression(streamCompression);
+    }
+
+    @Override
+    public void setBufferPool(final BufferPool bufferPool)
+    {
+        client.setBufferPool(bufferPool);
+    }
+
+    @Override
+    public void setMaxDataLength(final int maxDataLength)
+    {
+        client.setMaxDataLength(maxDataLength);
+    }
+
     @Override
     public boolean connect(final String host, final int port)
     {
@@ -90,6 +117,18 @@ public class ClientDecorator implements Client
         return client.send(packet);
     }
 
+    @Override
+    public boolean sendFile(final short packetID, final File file, final long position, final int length)
+    {
+        return client.sendFile(packetID, file, position, length);
+    }
+
+    @Override
+    public boolean flush()
+    {
+        return client.flush();
+    }
+
     @Override
     public void close()
     {
@@ -0,0 +1,403 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client.util;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.packet.Codec;
+import nl.pvdberg.pnet.packet.Codecs;
+import nl.pvdberg.pnet.packet.DictionaryCompressor;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketBuilder;
+import nl.pvdberg.pnet.packet.PacketReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Client which compresses sent Packets with a {@link Codec} chosen per Packet ID.
+ * The codec ID is stored in the header, so the receiver decompresses the Packets automatically.
+ * Packets which do not become smaller are sent uncompressed.
+ * <p>
+ * Compression adapts to the data: Packets below a minimum length are never compressed, and the achieved ratio is sampled per Packet ID.
+ * When a Packet ID turns out to be incompressible, its Packets are sent uncompressed, except for a periodic probe.
+ * The decisions are exposed as {@link CompressionStats}
+ * <p>
+ * Small repetitive Packets can be compressed using shared dictionaries, see {@link #setDictionaryCompressor(DictionaryCompressor)}.
+ * The dictionaries are not transferred: on connect, the checksum of the dictionaries is offered to the other side,
+ * which accepts when it uses the same dictionaries. Until then, the regular codecs are used.
+ * Negotiated dictionaries belong to this connection only, they are not registered at {@link Codecs}
+ */
+public class CompressionClient extends ClientDecorator
+{
+    public static final int DEFAULT_MIN_LENGTH = 256;
+    public static final double DEFAULT_MAX_RATIO = 0.9;
+    public static final int DEFAULT_MIN_SAMPLES = 8;
+    public static final int DEFAULT_PROBE_INTERVAL = 1000;
+    /**
+     * Reserved Packet ID of dictionary negotiation Packets
+     */
+    public static final short DICTIONARY_OFFER_ID = Short.MIN_VALUE;
+
+    private final Logger logger = LoggerFactory.getLogger(CompressionClient.class);
+
+    private final Map<Short, Codec> codecs;
+    private final Map<Short, CompressionStats> stats;
+    private volatile Codec defaultCodec;
+    private volatile int minLength;
+    private volatile double maxRatio;
+    private volatile int minSamples;
+    private volatile int probeInterval;
+    private volatile DictionaryCompressor dictionaryCompressor;
+    private volatile DictionaryCompressor negotiatedCompressor;
+    private volatile DictionaryCompressor acceptedCompressor;
+    private volatile int maxDataLength;
+
+    /**
+     * Adds compression to given Client implementation. Only Packets with an assigned codec are compressed
+     * @param client Client implementation
+     */
+    public CompressionClient(final Client client)
+    {
+        this(client, null);
+    }
+
+    /**
+     * Adds compression to given Client implementation
+     * @param client Client implementation
+     * @param defaultCodec Nullable codec for Packet IDs without an assigned codec
+     */
+    public CompressionClient(final Client client, final Codec defaultCodec)
+    {
+        super(client);
+        this.defaultCodec = defaultCodec;
+
+        codecs = new HashMap<Short, Codec>();
+        stats = new HashMap<Short, CompressionStats>();
+        minLength = DEFAULT_MIN_LENGTH;
+        maxRatio = DEFAULT_MAX_RATIO;
+        minSamples = DEFAULT_MIN_SAMPLES;
+        probeInterval = DEFAULT_PROBE_INTERVAL;
+        maxDataLength = Integer.MAX_VALUE;
+
+        // Replaces the listener of the decorator, to intercept negotiation Packets
+        client.setClientListener(new PNetListener()
+        {
+            @Override
+            public void onConnect(final Client c)
+            {
+                negotiatedCompressor = null;
+                acceptedCompressor = null;
+                offerDictionary();
+                if (clientListener != null) clientListener.onConnect(CompressionClient.this);
+            }
+
+            @Override
+            public void onDisconnect(final Client c)
+            {
+                negotiatedCompressor = null;
+                acceptedCompressor = null;
+                if (clientListener != null) clientListener.onDisconnect(CompressionClient.this);
+            }
+
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                if (p.getPacketID() == DICTIONARY_OFFER_ID)
+                {
+                    handleNegotiation(p);
+                    return;
+                }
+
+                final Packet packet = p.getCodecID() == Codecs.DICTIONARY ? decompressDictionary(p) : p;
+                if (clientListener != null) clientListener.onReceive(packet, CompressionClient.this);
+            }
+        });
+    }
+
+    /**
+     * Sets the dictionaries to compress Packets with, and offers them to the other side.
+     * The same dictionaries are used to decompress dictionary compressed Packets from the other side.
+     * Packet IDs with a dictionary are compressed regardless of their length, once the other side accepted the dictionaries
+     * @param dictionaryCompressor Nullable DictionaryCompressor, null to stop using dictionaries
+     */
+    public void setDictionaryCompressor(final DictionaryCompressor dictionaryCompressor)
+    {
+        this.dictionaryCompressor = dictionaryCompressor;
+        negotiatedCompressor = null;
+        acceptedCompressor = null;
+        if (isConnected()) offerDictionary();
+    }
+
+    /**
+     * Returns whether the other side accepted the dictionaries
+     * @return Dictionaries are used
+     */
+    public boolean isDictionaryNegotiated()
+    {
+        return negotiatedCompressor != null;
+    }
+
+    private void offerDictionary()
+    {
+        final DictionaryCompressor dictionaryCompressor = this.dictionaryCompressor;
+        if (dictionaryCompressor == null) return;
+
+        logger.debug("Offering dictionaries with checksum {}", dictionaryCompressor.getChecksum());
+        client.send(new PacketBuilder(Packet.PacketType.Request)
+                .withID(DICTIONARY_OFFER_ID)
+                .withLong(dictionaryCompressor.getChecksum())
+                .build()
+        );
+        client.flush();
+    }
+
+    private void handleNegotiation(final Packet packet) throws IOException
+    {
+        // Both sides can offer dictionaries
+        if (packet.isRequest())
+        {
+            final DictionaryCompressor dictionaryCompressor = this.dictionaryCompressor;
+            acceptedCompressor = DictionaryNegotiator.answerOffer(packet, client, dictionaryCompressor) ? dictionaryCompressor : null;
+            return;
+        }
+
+        final PacketReader reader = new PacketReader(packet);
+        final boolean accepted = reader.readBoolean();
+        final long checksum = reader.readLong();
+
+        final DictionaryCompressor dictionaryCompressor = this.dictionaryCompressor;
+        if (dictionaryCompressor == null || dictionaryCompressor.getChecksum() != checksum) return;
+
+        if (accepted)
+        {
+            negotiatedCompressor = dictionaryCompressor;
+            logger.debug("Dictionaries accepted");
+        }
+        else
+        {
+            logger.info("Dictionaries rejected by {}", client.toString());
+        }
+    }
+
+    private Packet decompressDictionary(final Packet packet) throws IOException
+    {
+        // Either side's offer being accepted means both sides use these dictionaries
+        final DictionaryCompressor negotiatedCompressor = this.negotiatedCompressor;
+        return DictionaryNegotiator.decompress(
+                packet,
+                negotiatedCompressor != null ? negotiatedCompressor : acceptedCompressor,
+                maxDataLength
+        );
+    }
+
+    @Override
+    public void setMaxDataLength(final int maxDataLength)
+    {
+        super.setMaxDataLength(maxDataLength);
+        this.maxDataLength = maxDataLength;
+    }
+
+    /**
+     * Sets the minimum data length of Packets to compress
+     * @param minLength Length in bytes, {@link #DEFAULT_MIN_LENGTH} by default
+     */
+    public void setMinLength(final int minLength)
+    {
+        if (minLength < 0) throw new IllegalArgumentException("Negative minimum length");
+        this.minLength = minLength;
+    }
+
+    /**
+     * Sets the highest average ratio of compressed size to original size at which a Packet ID stays compressed
+     * @param maxRatio Ratio between 0 and 1, {@link #DEFAULT_MAX_RATIO} by default
+     */
+    public void setMaxRatio(final double maxRatio)
+    {
+        if (maxRatio <= 0 || maxRatio > 1) throw new IllegalArgumentException("Ratio must be above 0 and at most 1");
+        this.maxRatio = maxRatio;
+    }
+
+    /**
+     * Sets the amount of compressed Packets of a Packet ID which are sampled before its compression can be disabled
+     * @param minSamples Amount of Packets, {@link #DEFAULT_MIN_SAMPLES} by default
+     */
+    public void setMinSamples(final int minSamples)
+    {
+        if (minSamples < 1) throw new IllegalArgumentException("At least 1 sample is required");
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Sets how often a Packet ID of which compression is disabled is probed, by compressing one of its Packets anyway
+     * @param probeInterval Amount of Packets between probes, {@link #DEFAULT_PROBE_INTERVAL} by default
+     */
+    public void setProbeInterval(final int probeInterval)
+    {
+        if (probeInterval < 1) throw new IllegalArgumentException("Probe interval must be positive");
+        this.probeInterval = probeInterval;
+    }
+
+    /**
+     * Returns the statistics of given Packet ID
+     * @param packetID Packet ID
+     * @return Nullable CompressionStats, null when no Packet with this ID was considered for compression
+     */
+    public CompressionStats getStats(final short packetID)
+    {
+        synchronized (stats)
+        {
+            return stats.get(packetID);
+        }
+    }
+
+    /**
+     * Returns the statistics of all Packet IDs which were considered for compression
+     * @return List of CompressionStats
+     */
+    public List<CompressionStats> getStats()
+    {
+        synchronized (stats)
+        {
+            return new ArrayList<CompressionStats>(stats.values());
+        }
+    }
+
+    /**
+     * Sets the codec for Packet IDs without an assigned codec
+     * @param defaultCodec Nullable Codec, null to send these Packets uncompressed
+     */
+    public void setDefaultCodec(final Codec defaultCodec)
+    {
+        this.defaultCodec = defaultCodec;
+    }
+
+    /**
+     * Assigns a codec to given Packet ID
+     * @param packetID Packet ID
+     * @param codec Nullable Codec, null to send Packets with this ID uncompressed
+     */
+    public void setCodec(final short packetID, final Codec codec)
+    {
+        synchronized (codecs)
+        {
+            codecs.put(packetID, codec);
+        }
+    }
+
+    /**
+     * Removes the codec assignment of given Packet ID, so the default codec is used again
+     * @param packetID Packet ID
+     */
+    public void removeCodec(final short packetID)
+    {
+        synchronized (codecs)
+        {
+            codecs.remove(packetID);
+        }
+    }
+
+    /**
+     * Returns the codec which is used for given Packet ID
+     * @param packetID Packet ID
+     * @return Nullable Codec
+     */
+    public Codec getCodec(final short packetID)
+    {
+        synchronized (codecs)
+        {
+            return codecs.containsKey(packetID) ? codecs.get(packetID) : defaultCodec;
+        }
+    }
+
+    @Override
+    public boolean send(final Packet packet)
+    {
+        // Already encoded
+        if (packet.getCodecID() != 0) return client.send(packet);
+
+        final DictionaryCompressor negotiatedCompressor = this.negotiatedCompressor;
+        final boolean useDictionary = negotiatedCompressor != null && negotiatedCompressor.hasDictionary(packet.getPacketID());
+        final Codec codec = useDictionary ? negotiatedCompressor : getCodec(packet.getPacketID());
+        if (codec == null || (!useDictionary && packet.getDataLength() < minLength)) return client.send(packet);
+
+        final CompressionStats packetStats = getOrCreateStats(packet.getPacketID());
+        if (!packetStats.shouldCompress(probeInterval))
+        {
+            packetStats.recordUncompressed();
+            return client.send(packet);
+        }
+
+        final Packet compressed;
+        try
+        {
+            compressed = codec.compress(packet);
+        }
+        catch (final IOException e)
+        {
+            logger.warn("Unable to compress Packet, sending uncompressed: {} :", e.getClass(), e);
+            packetStats.recordUncompressed();
+            return client.send(packet);
+        }
+
+        final boolean wasEnabled = packetStats.isCompressionEnabled();
+        packetStats.recordCompressed(packet.getDataLength(), compressed.getDataLength(), minSamples, maxRatio);
+        if (wasEnabled != packetStats.isCompressionEnabled()) logger.debug("Compression of Packet ID {} changed: {}", packet.getPacketID(), packetStats);
+
+        if (compressed.getDataLength() >= packet.getDataLength())
+        {
+            compressed.release();
+            return client.send(packet);
+        }
+
+        try
+        {
+            return client.send(compressed);
+        }
+        finally
+        {
+            compressed.release();
+        }
+    }
+
+    private CompressionStats getOrCreateStats(final short packetID)
+    {
+        synchronized (stats)
+        {
+            CompressionStats packetStats = stats.get(packetID);
+            if (packetStats == null)
+            {
+                packetStats = new CompressionStats(packetID);
+                stats.put(packetID, packetStats);
+            }
+            return packetStats;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client.util;
+
+/**
+ * Compression statistics of a single Packet ID, as collected by a {@link CompressionClient}.
+ * The ratio is a moving average of compressed size divided by original size, sampled from compressed Packets
+ */
+public class CompressionStats
+{
+    private static final double SAMPLE_WEIGHT = 0.125;
+
+    private final short packetID;
+
+    private long packetsSent;
+    private long packetsCompressed;
+    private long uncompressedBytes;
+    private long compressedBytes;
+    private double ratio;
+    private int samples;
+    private boolean compressionEnabled;
+    private int packetsSinceProbe;
+
+    CompressionStats(final short packetID)
+    {
+        this.packetID = packetID;
+        ratio = 1;
+        compressionEnabled = true;
+    }
+
+    /**
+     * Returns whether the next Packet should be compressed. While compression is disabled, a Packet is compressed once per probe interval
+     * @param probeInterval Amount of Packets between probes
+     * @return Compress next Packet
+     */
+    synchronized boolean shouldCompress(final int probeInterval)
+    {
+        if (compressionEnabled) return true;
+        if (++packetsSinceProbe < probeInterval) return false;
+        packetsSinceProbe = 0;
+        return true;
+    }
+
+    /**
+     * Records a Packet which is sent uncompressed
+     */
+    synchronized void recordUncompressed()
+    {
+        packetsSent++;
+    }
+
+    /**
+     * Records the result of compressing a Packet and decides whether compression stays enabled
+     * @param originalLength Original data length
+     * @param compressedLength Compressed data length
+     * @param minSamples Amount of samples needed before compression can be disabled
+     * @param maxRatio Highest ratio at which compression stays enabled
+     */
+    synchronized void recordCompressed(final int originalLength, final int compressedLength, final int minSamples, final double maxRatio)
+    {
+        packetsSent++;
+        final double sample = originalLength == 0 ? 1 : (double) compressedLength / originalLength;
+        if (compressedLength < originalLength)
+        {
+            packetsCompressed++;
+            uncompressedBytes += originalLength;
+            compressedBytes += compressedLength;
+        }
+
+        if (!compressionEnabled)
+        {
+            // Probe: the data of this Packet ID became compressible again
+            if (sample <= maxRatio)
+            {
+                compressionEnabled = true;
+                ratio = sample;
+                samples = 1;
+            }
+            return;
+        }
+
+        ratio = samples == 0 ? sample : ratio + (sample - ratio) * SAMPLE_WEIGHT;
+        samples++;
+        if (samples >= minSamples && ratio > maxRatio) compressionEnabled = false;
+    }
+
+    /**
+     * Returns Packet ID
+     * @return Packet ID
+     */
+    public short getPacketID()
+    {
+        return packetID;
+    }
+
+    /**
+     * Returns amount of sent Packets with this ID, compressed or not
+     * @return Amount of Packets
+     */
+    public synchronized long getPacketsSent()
+    {
+        return packetsSent;
+    }
+
+    /**
+     * Returns amount of Packets which were sent compressed
+     * @return Amount of Packets
+     */
+    public synchronized long getPacketsCompressed()
+    {
+        return packetsCompressed;
+    }
+
+    /**
+     * Returns total original size of the Packets which were sent compressed
+     * @return Size in bytes
+     */
+    public synchronized long getUncompressedBytes()
+    {
+        return uncompressedBytes;
+    }
+
+    /**
+     * Returns total compressed size of the Packets which were sent compressed
+     * @return Size in bytes
+     */
+    public synchronized long getCompressedBytes()
+    {
+        return compressedBytes;
+    }
+
+    /**
+     * Returns the moving average of compressed size divided by original size
+     * @return Ratio, 1 when nothing was sampled yet
+     */
+    public synchronized double getRatio()
+    {
+        return ratio;
+    }
+
+    /**
+     * Returns whether Packets with this ID are compressed. When disabled, compression is probed periodically
+     * @return Compression enabled
+     */
+    public synchronized boolean isCompressionEnabled()
+    {
+        return compressionEnabled;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "ID: [" + packetID + "] Sent: [" + packetsSent + "] Compressed: [" + packetsCompressed + "] Ratio: [" + ratio + "] Enabled: [" + compressionEnabled + "]";
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client.util;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.packet.Codecs;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.VarInt;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Listener which reassembles Packets sent by a {@link MultiplexClient} and passes them on to another listener.
+ * Other Packets are passed on as is. Use this listener on the receiving side, e.g. using {@link nl.pvdberg.pnet.server.Server#setListener(PNetListener)}.
+ * <p>
+ * Every chunk starts with the channel ID (variable length integer) and a flag byte.
+ * The first chunk of a Packet continues with its codec ID (byte), Packet ID (short) and data length (variable length integer).
+ * The remaining data is a part of the Packet data
+ */
+public class DemultiplexListener implements PNetListener
+{
+    static final byte FLAG_FIRST = 1;
+    static final byte FLAG_LAST = 2;
+
+    private final PNetListener listener;
+    private final Map<Client, Map<Integer, Reassembly>> reassemblies;
+    private volatile int maxDataLength;
+
+    /**
+     * Creates a new DemultiplexListener
+     * @param listener Listener which receives the reassembled Packets
+     */
+    public DemultiplexListener(final PNetListener listener)
+    {
+        this.listener = listener;
+        reassemblies = new ConcurrentHashMap<Client, Map<Integer, Reassembly>>();
+        maxDataLength = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Sets the maximum data length of reassembled Packets. Larger Packets are rejected before any memory is allocated for them
+     * @param maxDataLength Maximum data length in bytes, {@link Integer#MAX_VALUE} by default
+     */
+    public void setMaxDataLength(final int maxDataLength)
+    {
+        if (maxDataLength < 0) throw new IllegalArgumentException("Negative maximum data length");
+        this.maxDataLength = maxDataLength;
+    }
+
+    @Override
+    public void onConnect(final Client c)
+    {
+        listener.onConnect(c);
+    }
+
+    @Override
+    public void onDisconnect(final Client c)
+    {
+        // Unfinished Packets are lost
+        reassemblies.remove(c);
+        listener.onDisconnect(c);
+    }
+
+    @Override
+    public void onReceive(final Packet p, final Client c) throws IOException
+    {
+        if (p.getPacketID() != MultiplexClient.MULTIPLEX_ID)
+        {
+            listener.onReceive(p, c);
+            return;
+        }
+
+        final ByteBuffer chunk = p.getDataView();
+        final int channelID;
+        final byte flags;
+        final Reassembly reassembly;
+        try
+        {
+            channelID = VarInt.readVarInt(chunk);
+            flags = chunk.get();
+            if ((flags & FLAG_FIRST) != 0)
+            {
+                final int codecID = chunk.get() & 0xFF;
+                final short packetID = chunk.getShort();
+                final int dataLength = VarInt.readVarInt(chunk);
+                if (codecID > Packet.MAX_CODEC_ID) throw new IOException("Invalid codec ID: " + codecID);
+                if (dataLength < 0 || dataLength > maxDataLength) throw new IOException("Invalid data length: " + dataLength);
+                reassembly = new Reassembly(p.getPacketType(), packetID, codecID, dataLength);
+            }
+            else
+            {
+                reassembly = getChannels(c).get(channelID);
+                if (reassembly == null) throw new IOException("Chunk without first chunk on channel " + channelID);
+            }
+        }
+        catch (final BufferUnderflowException e)
+        {
+            throw new IOException("Invalid chunk header");
+        }
+
+        final int length = chunk.remaining();
+        if (length > reassembly.data.length - reassembly.position) throw new IOException("Chunk exceeds data length");
+        chunk.get(reassembly.data, reassembly.position, length);
+        reassembly.position += length;
+
+        if ((flags & FLAG_LAST) == 0)
+        {
+            if ((flags & FLAG_FIRST) != 0) getChannels(c).put(channelID, reassembly);
+            return;
+        }
+
+        if ((flags & FLAG_FIRST) == 0) getChannels(c).remove(channelID);
+        if (reassembly.position != reassembly.data.length) throw new IOException("Chunks shorter than data length");
+
+        final Packet packet = Codecs.decompress(
+                new Packet(reassembly.packetType, reassembly.packetID, reassembly.codecID, reassembly.data),
+                maxDataLength
+        );
+        listener.onReceive(packet, c);
+    }
+
+    private Map<Integer, Reassembly> getChannels(final Client c)
+    {
+        Map<Integer, Reassembly> channels = reassemblies.get(c);
+        if (channels == null)
+        {
+            // Only the receiving thread of a Client adds its channels
+            channels = new ConcurrentHashMap<Integer, Reassembly>();
+            reassemblies.put(c, channels);
+        }
+        return channels;
+    }
+
+    private static class Reassembly
+    {
+        private final Packet.PacketType packetType;
+        private final short packetID;
+        private final int codecID;
+        private final byte[] data;
+        private int position;
+
+        private Reassembly(final Packet.PacketType packetType, final short packetID, final int codecID, final int dataLength)
+        {
+            this.packetType = packetType;
+            this.packetID = packetID;
+            this.codecID = codecID;
+            data = new byte[dataLength];
+        }
+    }
+}
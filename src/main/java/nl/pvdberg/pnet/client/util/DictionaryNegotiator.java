@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client.util;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.packet.Codecs;
+import nl.pvdberg.pnet.packet.DictionaryCompressor;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketBuilder;
+import nl.pvdberg.pnet.packet.PacketReader;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Answers the dictionary offers of {@link CompressionClient CompressionClients} and decodes their dictionary compressed Packets.
+ * An offer is accepted when it matches the dictionaries of this negotiator, after which the offering side sends dictionary compressed Packets.
+ * Acceptance is tracked per connection, so negotiators with different dictionaries can be used in the same process.
+ * Set this listener on the receiving side, wrapping the actual listener
+ */
+public class DictionaryNegotiator implements PNetListener
+{
+    private final DictionaryCompressor dictionaryCompressor;
+    private final PNetListener listener;
+    private final Set<Client> accepted;
+    private volatile int maxDataLength;
+
+    /**
+     * Creates a new negotiator
+     * @param dictionaryCompressor Dictionaries to accept
+     * @param listener Listener which receives all other events, with dictionary compressed Packets decoded
+     */
+    public DictionaryNegotiator(final DictionaryCompressor dictionaryCompressor, final PNetListener listener)
+    {
+        this.dictionaryCompressor = dictionaryCompressor;
+        this.listener = listener;
+        accepted = Collections.synchronizedSet(new HashSet<Client>());
+        maxDataLength = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Sets the maximum data length of decoded Packets
+     * @param maxDataLength Maximum data length in bytes
+     */
+    public void setMaxDataLength(final int maxDataLength)
+    {
+        if (maxDataLength < 0) throw new IllegalArgumentException("Negative maximum data length");
+        this.maxDataLength = maxDataLength;
+    }
+
+    /**
+     * Returns whether the dictionaries were accepted for given connection
+     * @param c Client
+     * @return Dictionaries accepted
+     */
+    public boolean isAccepted(final Client c)
+    {
+        return accepted.contains(c);
+    }
+
+    @Override
+    public void onConnect(final Client c)
+    {
+        listener.onConnect(c);
+    }
+
+    @Override
+    public void onDisconnect(final Client c)
+    {
+        accepted.remove(c);
+        listener.onDisconnect(c);
+    }
+
+    @Override
+    public void onReceive(final Packet p, final Client c) throws IOException
+    {
+        if (p.getPacketID() == CompressionClient.DICTIONARY_OFFER_ID)
+        {
+            // Replies only concern the offering side
+            if (!p.isRequest()) return;
+
+            if (answerOffer(p, c, dictionaryCompressor)) accepted.add(c);
+            else accepted.remove(c);
+            return;
+        }
+
+        listener.onReceive(
+                p.getCodecID() == Codecs.DICTIONARY ? decompress(p, accepted.contains(c) ? dictionaryCompressor : null, maxDataLength) : p,
+                c
+        );
+    }
+
+    /**
+     * Answers given dictionary offer
+     * @param offer Offer Packet
+     * @param c Offering Client
+     * @param dictionaryCompressor Nullable dictionaries of the answering side
+     * @return Offer was accepted
+     * @throws IOException when the offer is invalid
+     */
+    static boolean answerOffer(final Packet offer, final Client c, final DictionaryCompressor dictionaryCompressor) throws IOException
+    {
+        final long checksum = new PacketReader(offer).readLong();
+        final boolean accepted = dictionaryCompressor != null && dictionaryCompressor.getChecksum() == checksum;
+
+        c.send(new PacketBuilder(Packet.PacketType.Reply)
+                .withID(CompressionClient.DICTIONARY_OFFER_ID)
+                .withBoolean(accepted)
+                .withLong(checksum)
+                .build()
+        );
+        c.flush();
+        return accepted;
+    }
+
+    /**
+     * Decodes given dictionary compressed Packet, which is released
+     * @param packet Packet with codec {@link Codecs#DICTIONARY}
+     * @param dictionaryCompressor Nullable negotiated dictionaries
+     * @param maxDataLength Maximum accepted decoded data length
+     * @return Decoded Packet
+     * @throws IOException when no dictionaries were negotiated or when unable to decode
+     */
+    static Packet decompress(final Packet packet, final DictionaryCompressor dictionaryCompressor, final int maxDataLength) throws IOException
+    {
+        try
+        {
+            if (dictionaryCompressor == null) throw new IOException("Dictionary compressed Packet received without negotiated dictionaries");
+            return dictionaryCompressor.decompress(packet, maxDataLength);
+        }
+        finally
+        {
+            packet.release();
+        }
+    }
+}
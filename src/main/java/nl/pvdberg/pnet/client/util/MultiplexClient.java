@@ -0,0 +1,342 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client.util;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.VarInt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static nl.pvdberg.pnet.threading.ThreadManager.launchThread;
+
+/**
+ * Client which carries multiple independent channels over a single connection.
+ * Sent Packets are queued per channel, and a writer thread takes turns between the channels with queued Packets.
+ * Packets larger than the chunk size are split into chunks, so a large Packet on one channel does not hold back the Packets of other channels.
+ * Packets of the same channel are received in order, there is no order between channels. The amount of queued Packets per channel can be bounded.
+ * <p>
+ * Received Packets are reassembled automatically. The receiving side of a connection which is not a MultiplexClient,
+ * like a Server, has to use a {@link DemultiplexListener}. {@link #sendFile(short, java.io.File, long, int)} is not multiplexed
+ */
+public class MultiplexClient extends ClientDecorator
+{
+    /**
+     * Reserved Packet ID of chunks
+     */
+    public static final short MULTIPLEX_ID = Short.MIN_VALUE + 2;
+    public static final int DEFAULT_CHANNEL = 0;
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(MultiplexClient.class);
+
+    private final int chunkSize;
+    private final ExecutorService executorService;
+    private final int maxQueuedPackets;
+
+    private final Map<Integer, Channel> channels;
+    private final Queue<Channel> activeChannels;
+    private boolean writing;
+
+    /**
+     * Adds multiplexing to given Client implementation, using chunks of {@link #DEFAULT_CHUNK_SIZE} bytes
+     * @param client Client implementation
+     */
+    public MultiplexClient(final Client client)
+    {
+        this(client, DEFAULT_CHUNK_SIZE, null);
+    }
+
+    /**
+     * Adds multiplexing to given Client implementation, without bounding the amount of queued Packets
+     * @param client Client implementation
+     * @param chunkSize Maximum amount of Packet data per chunk. Smaller chunks reduce the delay between channels, at the cost of more overhead
+     * @param executorService Nullable ExecutorService which runs the writer thread
+     */
+    public MultiplexClient(final Client client, final int chunkSize, final ExecutorService executorService)
+    {
+        this(client, chunkSize, executorService, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adds multiplexing to given Client implementation
+     * @param client Client implementation
+     * @param chunkSize Maximum amount of Packet data per chunk. Smaller chunks reduce the delay between channels, at the cost of more overhead
+     * @param executorService Nullable ExecutorService which runs the writer thread
+     * @param maxQueuedPackets Maximum amount of queued Packets per channel
+     */
+    public MultiplexClient(final Client client, final int chunkSize, final ExecutorService executorService, final int maxQueuedPackets)
+    {
+        super(client);
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive");
+        if (maxQueuedPackets < 1) throw new IllegalArgumentException("Bound must be positive");
+
+        this.chunkSize = chunkSize;
+        this.executorService = executorService;
+        this.maxQueuedPackets = maxQueuedPackets;
+
+        channels = new HashMap<Integer, Channel>();
+        activeChannels = new LinkedList<Channel>();
+    }
+
+    /**
+     * Sets the listener, which receives reassembled Packets
+     * @param clientListener Nullable listener
+     */
+    @Override
+    public void setClientListener(final PNetListener clientListener)
+    {
+        super.setClientListener(clientListener == null ? null : new DemultiplexListener(clientListener));
+    }
+
+    /**
+     * Queues given Packet on the {@link #DEFAULT_CHANNEL default channel}
+     * @param packet Packet to send
+     * @return Whether the Packet was queued
+     */
+    @Override
+    public boolean send(final Packet packet)
+    {
+        return send(DEFAULT_CHANNEL, packet);
+    }
+
+    /**
+     * Queues given Packet on given channel. The Packet is sent after the Packets which were queued on this channel before
+     * @param channelID Channel ID
+     * @param packet Packet to send
+     * @return Whether the Packet was queued, false when the channel is full. The Packet may still be lost when the connection fails while it is sent
+     */
+    public boolean send(final int channelID, final Packet packet)
+    {
+        if (channelID < 0) throw new IllegalArgumentException("Negative channel ID");
+        if (!isConnected()) return false;
+
+        // The data is captured now, as the caller may release the Packet once this method returns
+        final Message message = new Message(packet);
+        synchronized (channels)
+        {
+            Channel channel = channels.get(channelID);
+            if (channel == null)
+            {
+                channel = new Channel(channelID);
+                channels.put(channelID, channel);
+            }
+
+            if (channel.messages.size() >= maxQueuedPackets)
+            {
+                logger.debug("Queue of channel {} is full", channelID);
+                return false;
+            }
+
+            channel.messages.add(message);
+            if (!channel.active)
+            {
+                channel.active = true;
+                activeChannels.add(channel);
+            }
+
+            if (writing) return true;
+            writing = true;
+            try
+            {
+                launchThread(executorService, new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        writerThreadImpl();
+                    }
+                });
+                return true;
+            }
+            catch (final RejectedExecutionException e)
+            {
+                // Nothing would ever send the queued Packets
+                logger.error("Unable to launch writer thread: {} :", e.getClass(), e);
+                writing = false;
+                clearQueues();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of Packets which are queued on given channel, including a partially sent Packet
+     * @param channelID Channel ID
+     * @return Amount of queued Packets
+     */
+    public int getQueuedPackets(final int channelID)
+    {
+        synchronized (channels)
+        {
+            final Channel channel = channels.get(channelID);
+            return channel == null ? 0 : channel.messages.size();
+        }
+    }
+
+    private void writerThreadImpl()
+    {
+        logger.debug("Multiplex writer thread started");
+        while (true)
+        {
+            final Channel channel;
+            final Message message;
+            synchronized (channels)
+            {
+                // Round robin: every turn sends a single chunk of a channel
+                channel = activeChannels.poll();
+                if (channel == null)
+                {
+                    writing = false;
+                    break;
+                }
+                message = channel.messages.peek();
+            }
+
+            final boolean sent = client.send(message.nextChunk(channel.id, chunkSize));
+
+            synchronized (channels)
+            {
+                if (!sent)
+                {
+                    logger.warn("Unable to send chunk, dropping all queued Packets");
+                    clearQueues();
+                    writing = false;
+                    return;
+                }
+
+                if (message.isDone()) channel.messages.poll();
+                if (channel.messages.isEmpty()) channel.active = false;
+                else activeChannels.add(channel);
+            }
+        }
+
+        // Write everything that was batched while the queues were drained
+        client.flush();
+        logger.debug("Multiplex writer thread stopped");
+    }
+
+    private void clearQueues()
+    {
+        for (final Channel channel : channels.values())
+        {
+            channel.messages.clear();
+            channel.active = false;
+        }
+        activeChannels.clear();
+    }
+
+    @Override
+    public void close()
+    {
+        client.close();
+        synchronized (channels)
+        {
+            clearQueues();
+        }
+    }
+
+    private static class Channel
+    {
+        private final int id;
+        private final Queue<Message> messages;
+        private boolean active;
+
+        private Channel(final int id)
+        {
+            this.id = id;
+            messages = new LinkedList<Message>();
+        }
+    }
+
+    /**
+     * Packet which is sent in chunks. Only accessed by the writer thread once queued
+     */
+    private static class Message
+    {
+        private final Packet.PacketType packetType;
+        private final short packetID;
+        private final int codecID;
+        private final byte[] data;
+        private int offset;
+        private boolean started;
+
+        private Message(final Packet packet)
+        {
+            packetType = packet.getPacketType();
+            packetID = packet.getPacketID();
+            codecID = packet.getCodecID();
+            data = packet.getData();
+        }
+
+        private Packet nextChunk(final int channelID, final int chunkSize)
+        {
+            // Packets which fit in a single chunk are sent as they are
+            if (!started && data.length <= chunkSize)
+            {
+                started = true;
+                offset = data.length;
+                return new Packet(packetType, packetID, codecID, data);
+            }
+
+            final boolean first = !started;
+            final int length = Math.min(chunkSize, data.length - offset);
+            final boolean last = offset + length == data.length;
+
+            int headerSize = VarInt.size(channelID) + 1;
+            if (first) headerSize += 1 + 2 + VarInt.size(data.length);
+
+            final byte[] chunk = new byte[headerSize + length];
+            final ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            VarInt.writeVarInt(buffer, channelID);
+            buffer.put((byte) ((first ? DemultiplexListener.FLAG_FIRST : 0) | (last ? DemultiplexListener.FLAG_LAST : 0)));
+            if (first)
+            {
+                buffer.put((byte) codecID);
+                buffer.putShort(packetID);
+                VarInt.writeVarInt(buffer, data.length);
+            }
+            buffer.put(data, offset, length);
+
+            started = true;
+            offset += length;
+            return new Packet(packetType, MultiplexClient.MULTIPLEX_ID, chunk);
+        }
+
+        private boolean isDone()
+        {
+            return started && offset == data.length;
+        }
+    }
+}
@@ -25,10 +25,12 @@
 package nl.pvdberg.pnet.client.util;
 
 import nl.pvdberg.pnet.client.ClientImpl;
+import nl.pvdberg.pnet.client.FlushPolicy;
 import nl.pvdberg.pnet.factory.SocketFactory;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.util.concurrent.ExecutorService;
 
 public class PlainClient extends ClientDecorator
 {
@@ -36,6 +38,34 @@ public class PlainClient extends ClientDecorator
      * Creates a new normal Client
      */
     public PlainClient()
+    {
+        this(FlushPolicy.IMMEDIATE);
+    }
+
+    /**
+     * Creates a new normal Client
+     * @param flushPolicy Policy which determines when sent Packets are written
+     */
+    public PlainClient(final FlushPolicy flushPolicy)
+    {
+        this(flushPolicy, null);
+    }
+
+    /**
+     * Creates a new normal Client
+     * @param executorService Nullable ExecutorService which runs the listener thread
+     */
+    public PlainClient(final ExecutorService executorService)
+    {
+        this(FlushPolicy.IMMEDIATE, executorService);
+    }
+
+    /**
+     * Creates a new normal Client
+     * @param flushPolicy Policy which determines when sent Packets are written
+     * @param executorService Nullable ExecutorService which runs the listener thread
+     */
+    public PlainClient(final FlushPolicy flushPolicy, final ExecutorService executorService)
     {
         super(new ClientImpl(
                 new SocketFactory()
@@ -45,7 +75,9 @@ public class PlainClient extends ClientDecorator
                     {
                         return new Socket(host, port);
                     }
-                })
+                },
+                flushPolicy,
+                executorService)
         );
     }
 }
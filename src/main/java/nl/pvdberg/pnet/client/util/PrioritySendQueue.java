@@ -0,0 +1,216 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client.util;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Queue with a level per priority, which is drained using deficit round robin.
+ * Levels take turns, starting at the highest priority (level 0). Every turn, a level receives credit of its weight times {@link #QUANTUM} bytes
+ * and gives out elements as long as its credit lasts, so every level receives a share of the bandwidth proportional to its weight
+ * and low priorities are never starved. The amount of queued elements per level is bounded.
+ * Not thread safe
+ */
+class PrioritySendQueue<E>
+{
+    static final int QUANTUM = 4096;
+
+    private final int[] weights;
+    private final int[] bounds;
+    private final List<LinkedList<Entry<E>>> queues;
+    private final long[] deficits;
+    private final int[] peakDepths;
+    private final long[] rejected;
+
+    private int current;
+    private boolean granted;
+    private int size;
+
+    /**
+     * Creates a new queue
+     * @param weights Weight per level, the first level has the highest priority
+     * @param bounds Maximum amount of queued elements per level
+     */
+    PrioritySendQueue(final int[] weights, final int[] bounds)
+    {
+        if (weights.length == 0) throw new IllegalArgumentException("At least 1 level is required");
+        if (bounds.length != weights.length) throw new IllegalArgumentException("Amount of bounds does not match amount of weights");
+        for (int i = 0; i < weights.length; i++)
+        {
+            if (weights[i] < 1) throw new IllegalArgumentException("Weight must be positive");
+            if (bounds[i] < 1) throw new IllegalArgumentException("Bound must be positive");
+        }
+
+        this.weights = weights.clone();
+        this.bounds = bounds.clone();
+        queues = new ArrayList<LinkedList<Entry<E>>>(weights.length);
+        for (int i = 0; i < weights.length; i++)
+        {
+            queues.add(new LinkedList<Entry<E>>());
+        }
+        deficits = new long[weights.length];
+        peakDepths = new int[weights.length];
+        rejected = new long[weights.length];
+    }
+
+    /**
+     * Adds an element to given level
+     * @param element Element
+     * @param priority Level
+     * @param length Amount of bytes the element takes to send
+     * @return False when the level is full
+     */
+    boolean offer(final E element, final int priority, final int length)
+    {
+        checkPriority(priority);
+
+        final LinkedList<Entry<E>> queue = queues.get(priority);
+        if (queue.size() >= bounds[priority])
+        {
+            rejected[priority]++;
+            return false;
+        }
+
+        queue.add(new Entry<E>(element, length));
+        size++;
+        if (queue.size() > peakDepths[priority]) peakDepths[priority] = queue.size();
+        return true;
+    }
+
+    /**
+     * Removes the next element to send
+     * @return Nullable element, null when empty
+     */
+    E poll()
+    {
+        if (size == 0) return null;
+
+        while (true)
+        {
+            final LinkedList<Entry<E>> queue = queues.get(current);
+            if (queue.isEmpty())
+            {
+                // Idle levels do not save up credit
+                deficits[current] = 0;
+                nextLevel();
+                continue;
+            }
+
+            if (!granted)
+            {
+                deficits[current] += (long) weights[current] * QUANTUM;
+                granted = true;
+            }
+
+            final Entry<E> head = queue.getFirst();
+            if (head.length <= deficits[current])
+            {
+                queue.removeFirst();
+                size--;
+                deficits[current] -= head.length;
+                if (queue.isEmpty()) deficits[current] = 0;
+                return head.element;
+            }
+
+            nextLevel();
+        }
+    }
+
+    private void nextLevel()
+    {
+        current = (current + 1) % queues.size();
+        granted = false;
+    }
+
+    /**
+     * Removes all elements
+     * @return Removed elements
+     */
+    List<E> clear()
+    {
+        final List<E> elements = new ArrayList<E>(size);
+        for (final LinkedList<Entry<E>> queue : queues)
+        {
+            for (final Entry<E> entry : queue)
+            {
+                elements.add(entry.element);
+            }
+            queue.clear();
+        }
+        for (int i = 0; i < deficits.length; i++)
+        {
+            deficits[i] = 0;
+        }
+        size = 0;
+        return elements;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    int levels()
+    {
+        return queues.size();
+    }
+
+    int getDepth(final int priority)
+    {
+        checkPriority(priority);
+        return queues.get(priority).size();
+    }
+
+    int getPeakDepth(final int priority)
+    {
+        checkPriority(priority);
+        return peakDepths[priority];
+    }
+
+    long getRejected(final int priority)
+    {
+        checkPriority(priority);
+        return rejected[priority];
+    }
+
+    private void checkPriority(final int priority)
+    {
+        if (priority < 0 || priority >= queues.size()) throw new IllegalArgumentException("Invalid priority: " + priority);
+    }
+
+    private static class Entry<E>
+    {
+        private final E element;
+        private final int length;
+
+        private Entry(final E element, final int length)
+        {
+            this.element = element;
+            this.length = length;
+        }
+    }
+}
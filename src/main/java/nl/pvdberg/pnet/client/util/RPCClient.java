@@ -0,0 +1,266 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client.util;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.event.RequestHandler;
+import nl.pvdberg.pnet.packet.Packet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static nl.pvdberg.pnet.threading.ThreadManager.schedule;
+
+/**
+ * Client which correlates requests and replies. {@link #request(Packet)} sends a request and returns an {@link RPCFuture} which completes with its reply.
+ * Any amount of requests can be in flight at once, regardless of their Packet IDs.
+ * Requests are answered by the {@link RequestHandler} of the other side, which is either an RPCClient or uses an {@link RPCHandler}.
+ * Other Packets are passed on as usual
+ */
+public class RPCClient extends ClientDecorator
+{
+    /**
+     * Reserved Packet ID of RPC Packets
+     */
+    public static final short RPC_ID = Short.MIN_VALUE + 1;
+    public static final long DEFAULT_TIMEOUT = 30000;
+    /**
+     * Interval in milliseconds at which pending requests are checked for timeouts
+     */
+    public static final long TIMEOUT_CHECK_INTERVAL = 100;
+
+    private final Logger logger = LoggerFactory.getLogger(RPCClient.class);
+
+    private final ConcurrentMap<Integer, RPCFuture> pendingRequests;
+    private final AtomicInteger nextCorrelationID;
+    private volatile long timeout;
+    private volatile RPCHandler rpcHandler;
+    private final Runnable timeoutCheck;
+    private ScheduledFuture timeoutCheckFuture;
+
+    /**
+     * Adds request correlation to given Client implementation. Requests of the other side are not answered
+     * @param client Client implementation
+     */
+    public RPCClient(final Client client)
+    {
+        this(client, null);
+    }
+
+    /**
+     * Adds request correlation to given Client implementation
+     * @param client Client implementation
+     * @param requestHandler Nullable handler which answers requests of the other side
+     */
+    public RPCClient(final Client client, final RequestHandler requestHandler)
+    {
+        super(client);
+        setRequestHandler(requestHandler);
+
+        pendingRequests = new ConcurrentHashMap<Integer, RPCFuture>();
+        nextCorrelationID = new AtomicInteger();
+        timeout = DEFAULT_TIMEOUT;
+        timeoutCheck = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                checkTimeouts();
+            }
+        };
+
+        // Replaces the listener of the decorator, to intercept RPC Packets
+        client.setClientListener(new PNetListener()
+        {
+            @Override
+            public void onConnect(final Client c)
+            {
+                if (clientListener != null) clientListener.onConnect(RPCClient.this);
+            }
+
+            @Override
+            public void onDisconnect(final Client c)
+            {
+                failPendingRequests(new IOException("Disconnected"));
+                if (clientListener != null) clientListener.onDisconnect(RPCClient.this);
+            }
+
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                if (p.getPacketID() != RPC_ID)
+                {
+                    if (clientListener != null) clientListener.onReceive(p, RPCClient.this);
+                    return;
+                }
+
+                if (p.isReply())
+                {
+                    handleReply(p);
+                    return;
+                }
+
+                final RPCHandler rpcHandler = RPCClient.this.rpcHandler;
+                if (rpcHandler == null)
+                {
+                    logger.warn("Received request without request handler");
+                    return;
+                }
+                rpcHandler.handlePacket(p, RPCClient.this);
+            }
+        });
+    }
+
+    /**
+     * Sets the handler which answers requests of the other side
+     * @param requestHandler Nullable RequestHandler, null to ignore requests
+     */
+    public void setRequestHandler(final RequestHandler requestHandler)
+    {
+        rpcHandler = requestHandler == null ? null : new RPCHandler(requestHandler);
+    }
+
+    /**
+     * Sets the time after which requests without reply fail with a {@link TimeoutException}.
+     * Timeouts are checked every {@link #TIMEOUT_CHECK_INTERVAL} milliseconds, {@link RPCFuture#get()} fails right away
+     * @param timeout Timeout in milliseconds, 0 to wait forever. {@link #DEFAULT_TIMEOUT} by default
+     */
+    public void setTimeout(final long timeout)
+    {
+        if (timeout < 0) throw new IllegalArgumentException("Negative timeout");
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the amount of requests which are waiting for a reply
+     * @return Amount of pending requests
+     */
+    public int getPendingRequests()
+    {
+        return pendingRequests.size();
+    }
+
+    /**
+     * Sends a request using the default timeout
+     * @param packet Uncompressed request
+     * @return RPCFuture which completes with the reply
+     * @see #request(Packet, long, TimeUnit)
+     */
+    public RPCFuture request(final Packet packet)
+    {
+        return request(packet, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends a request. The returned future fails when the request can not be sent, no reply is received in time or the connection is lost
+     * @param packet Uncompressed request
+     * @param timeout Timeout, 0 to wait forever
+     * @param unit Unit of the timeout
+     * @return RPCFuture which completes with the reply
+     */
+    public RPCFuture request(final Packet packet, final long timeout, final TimeUnit unit)
+    {
+        if (!packet.isRequest()) throw new IllegalArgumentException("Packet is not a request");
+        if (timeout < 0) throw new IllegalArgumentException("Negative timeout");
+
+        final int correlationID = nextCorrelationID.getAndIncrement();
+        final RPCFuture future = new RPCFuture(correlationID, pendingRequests, unit.toNanos(timeout));
+        pendingRequests.put(correlationID, future);
+        if (timeout > 0) scheduleTimeoutCheck();
+
+        if (!client.send(RPCHandler.wrap(Packet.PacketType.Request, packet, correlationID)))
+        {
+            future.fail(new IOException("Unable to send request"));
+        }
+        return future;
+    }
+
+    private void handleReply(final Packet packet) throws IOException
+    {
+        final RPCFuture future = pendingRequests.get(RPCHandler.getCorrelationID(packet));
+        if (future == null)
+        {
+            // Timed out or cancelled
+            logger.debug("Received reply without pending request");
+            return;
+        }
+        future.complete(RPCHandler.unwrap(packet));
+    }
+
+    /**
+     * Schedules a check of all pending requests, unless one is scheduled already.
+     * A single check is used for all requests, so completed requests do not leave cancelled tasks behind in the scheduler
+     */
+    private void scheduleTimeoutCheck()
+    {
+        synchronized (timeoutCheck)
+        {
+            // The check is cancelled when the scheduler was shut down
+            if (timeoutCheckFuture != null && !timeoutCheckFuture.isCancelled()) return;
+            timeoutCheckFuture = schedule(timeoutCheck, TIMEOUT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void checkTimeouts()
+    {
+        // Cleared before checking, so requests added meanwhile are either checked now or schedule a new check
+        synchronized (timeoutCheck)
+        {
+            timeoutCheckFuture = null;
+        }
+
+        final long now = System.nanoTime();
+        boolean pending = false;
+        for (final RPCFuture future : pendingRequests.values())
+        {
+            if (!future.expire(now) && future.hasTimeout()) pending = true;
+        }
+        if (pending) scheduleTimeoutCheck();
+    }
+
+    private void failPendingRequests(final Exception failure)
+    {
+        for (final RPCFuture future : new ArrayList<RPCFuture>(pendingRequests.values()))
+        {
+            future.fail(failure);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        client.close();
+        failPendingRequests(new IOException("Closed"));
+    }
+}
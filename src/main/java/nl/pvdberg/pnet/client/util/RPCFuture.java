@@ -0,0 +1,240 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client.util;
+
+import nl.pvdberg.pnet.event.ReplyListener;
+import nl.pvdberg.pnet.packet.Packet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Pending reply to a request sent by an {@link RPCClient}.
+ * The reply can be awaited using {@link #get()}, or handled asynchronously using {@link #addListener(ReplyListener)}
+ */
+public class RPCFuture implements Future<Packet>
+{
+    private final int correlationID;
+    private final ConcurrentMap<Integer, RPCFuture> pendingRequests;
+    private final long sentAt;
+    private final long timeoutNanos;
+
+    private List<ReplyListener> listeners;
+    private boolean done;
+    private Packet reply;
+    private Exception failure;
+
+    /**
+     * Creates a new pending request
+     * @param correlationID Correlation ID of the request
+     * @param pendingRequests Pending requests of the RPCClient, this future removes itself once completed
+     * @param timeoutNanos Timeout in nanoseconds, 0 to wait forever
+     */
+    RPCFuture(final int correlationID, final ConcurrentMap<Integer, RPCFuture> pendingRequests, final long timeoutNanos)
+    {
+        this.correlationID = correlationID;
+        this.pendingRequests = pendingRequests;
+        this.timeoutNanos = timeoutNanos;
+        sentAt = System.nanoTime();
+    }
+
+    /**
+     * Returns the ID which correlates the request and its reply
+     * @return Correlation ID
+     */
+    public int getCorrelationID()
+    {
+        return correlationID;
+    }
+
+    /**
+     * Adds a listener which is called once the request is completed. When already completed, the listener is called immediately.
+     * Listeners are called from the thread which completes the request, so they should not block
+     * @param listener ReplyListener
+     */
+    public void addListener(final ReplyListener listener)
+    {
+        synchronized (this)
+        {
+            if (!done)
+            {
+                if (listeners == null) listeners = new ArrayList<ReplyListener>(1);
+                listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    /**
+     * Returns whether this request fails when no reply is received in time
+     * @return Has a timeout
+     */
+    boolean hasTimeout()
+    {
+        return timeoutNanos > 0;
+    }
+
+    /**
+     * Returns the time left until this request times out
+     * @param now Current time, see {@link System#nanoTime()}
+     * @return Remaining nanoseconds, Long.MAX_VALUE without timeout
+     */
+    private long remainingNanos(final long now)
+    {
+        if (timeoutNanos == 0) return Long.MAX_VALUE;
+        return timeoutNanos - (now - sentAt);
+    }
+
+    /**
+     * Fails this request when its timeout has passed
+     * @param now Current time, see {@link System#nanoTime()}
+     * @return Whether this request is done
+     */
+    boolean expire(final long now)
+    {
+        if (remainingNanos(now) <= 0)
+        {
+            fail(new TimeoutException("No reply within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms"));
+        }
+        return isDone();
+    }
+
+    boolean complete(final Packet reply)
+    {
+        return finish(reply, null);
+    }
+
+    boolean fail(final Exception failure)
+    {
+        return finish(null, failure);
+    }
+
+    private boolean finish(final Packet reply, final Exception failure)
+    {
+        final List<ReplyListener> listeners;
+        synchronized (this)
+        {
+            if (done) return false;
+            done = true;
+            this.reply = reply;
+            this.failure = failure;
+            listeners = this.listeners;
+            this.listeners = null;
+            pendingRequests.remove(correlationID, this);
+            notifyAll();
+        }
+
+        if (listeners != null)
+        {
+            for (final ReplyListener listener : listeners)
+            {
+                notifyListener(listener);
+            }
+        }
+        return true;
+    }
+
+    private void notifyListener(final ReplyListener listener)
+    {
+        if (failure == null) listener.onReply(reply);
+        else listener.onFailure(failure);
+    }
+
+    /**
+     * Cancels the request. A reply which is received afterwards is ignored
+     * @param mayInterruptIfRunning Ignored, as a sent request can not be interrupted
+     * @return True if cancelled, false when already completed
+     */
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning)
+    {
+        return fail(new CancellationException("Request cancelled"));
+    }
+
+    @Override
+    public synchronized boolean isCancelled()
+    {
+        return failure instanceof CancellationException;
+    }
+
+    @Override
+    public synchronized boolean isDone()
+    {
+        return done;
+    }
+
+    /**
+     * Waits for the reply. Fails with a {@link TimeoutException} once the timeout of the request has passed,
+     * also when the scheduler which checks timeouts was shut down
+     * @return Reply
+     */
+    @Override
+    public Packet get() throws InterruptedException, ExecutionException
+    {
+        synchronized (this)
+        {
+            long remaining;
+            while (!done && (remaining = remainingNanos(System.nanoTime())) > 0)
+            {
+                if (remaining == Long.MAX_VALUE) wait();
+                else TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+        expire(System.nanoTime());
+        return getResult();
+    }
+
+    @Override
+    public Packet get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this)
+        {
+            long remaining;
+            while (!done && (remaining = remainingNanos(System.nanoTime())) > 0)
+            {
+                final long wait = Math.min(remaining, deadline - System.nanoTime());
+                if (wait <= 0) throw new TimeoutException("No reply yet");
+                TimeUnit.NANOSECONDS.timedWait(this, wait);
+            }
+        }
+        expire(System.nanoTime());
+        return getResult();
+    }
+
+    private synchronized Packet getResult() throws ExecutionException
+    {
+        if (failure instanceof CancellationException) throw (CancellationException) failure;
+        if (failure != null) throw new ExecutionException(failure);
+        return reply;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client.util;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.event.PacketHandler;
+import nl.pvdberg.pnet.event.RequestHandler;
+import nl.pvdberg.pnet.packet.Packet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Answers requests sent by {@link RPCClient RPCClients} using a {@link RequestHandler}.
+ * Add this handler for {@link RPCClient#RPC_ID} to the PacketDistributer of the receiving side.
+ * <p>
+ * Requests and replies are sent as Packets with ID {@link RPCClient#RPC_ID}, of which the data consists of the correlation ID (int),
+ * the Packet ID of the wrapped Packet (short) and the data of the wrapped Packet
+ */
+public class RPCHandler implements PacketHandler
+{
+    private static final int ENVELOPE_SIZE = 6;
+
+    private final RequestHandler requestHandler;
+
+    /**
+     * Creates a new RPCHandler
+     * @param requestHandler Handler which creates the replies
+     */
+    public RPCHandler(final RequestHandler requestHandler)
+    {
+        this.requestHandler = requestHandler;
+    }
+
+    @Override
+    public void handlePacket(final Packet p, final Client c) throws IOException
+    {
+        if (!p.isRequest()) return;
+
+        final int correlationID = getCorrelationID(p);
+        final Packet reply = requestHandler.handleRequest(unwrap(p), c);
+        if (reply != null) c.send(wrap(Packet.PacketType.Reply, reply, correlationID));
+    }
+
+    /**
+     * Wraps given Packet into an RPC Packet
+     * @param packetType Type of the RPC Packet
+     * @param packet Uncompressed Packet to wrap
+     * @param correlationID Correlation ID
+     * @return RPC Packet
+     */
+    static Packet wrap(final Packet.PacketType packetType, final Packet packet, final int correlationID)
+    {
+        if (packet.getCodecID() != 0) throw new IllegalArgumentException("Packet is compressed");
+
+        final byte[] data = new byte[ENVELOPE_SIZE + packet.getDataLength()];
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.putInt(correlationID);
+        buffer.putShort(packet.getPacketID());
+        if (packet.getBuffer() == null) buffer.put(packet.getData());
+        else packet.getBuffer().copyTo(buffer);
+        return new Packet(packetType, RPCClient.RPC_ID, data);
+    }
+
+    /**
+     * Returns the correlation ID of given RPC Packet
+     * @param packet RPC Packet
+     * @return Correlation ID
+     * @throws IOException when the Packet is too short
+     */
+    static int getCorrelationID(final Packet packet) throws IOException
+    {
+        return envelope(packet).getInt(0);
+    }
+
+    /**
+     * Unwraps the Packet contained by given RPC Packet
+     * @param packet RPC Packet
+     * @return Wrapped Packet, which does not refer to the data of the RPC Packet
+     * @throws IOException when the Packet is too short
+     */
+    static Packet unwrap(final Packet packet) throws IOException
+    {
+        final ByteBuffer envelope = envelope(packet);
+        final short packetID = envelope.getShort(4);
+        final byte[] data = new byte[envelope.remaining() - ENVELOPE_SIZE];
+        envelope.position(ENVELOPE_SIZE);
+        envelope.get(data);
+        return new Packet(packet.getPacketType(), packetID, data);
+    }
+
+    private static ByteBuffer envelope(final Packet packet) throws IOException
+    {
+        if (packet.getDataLength() < ENVELOPE_SIZE) throw new IOException("Invalid RPC Packet");
+        return packet.getDataView();
+    }
+}
@@ -25,6 +25,7 @@
 package nl.pvdberg.pnet.client.util;
 
 import nl.pvdberg.pnet.client.ClientImpl;
+import nl.pvdberg.pnet.client.FlushPolicy;
 import nl.pvdberg.pnet.factory.SocketFactory;
 import nl.pvdberg.pnet.security.TLSBuilder;
 
@@ -32,6 +33,7 @@ import javax.net.ssl.SSLSocket;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.util.concurrent.ExecutorService;
 
 public class TLSClient extends ClientDecorator
 {
@@ -41,6 +43,15 @@ public class TLSClient extends ClientDecorator
      * Creates a new Client using TLS with default trust store
      */
     public TLSClient()
+    {
+        this((ExecutorService) null);
+    }
+
+    /**
+     * Creates a new Client using TLS with default trust store
+     * @param executorService Nullable ExecutorService which runs the listener thread
+     */
+    public TLSClient(final ExecutorService executorService)
     {
         super(new ClientImpl(
                 new SocketFactory()
@@ -53,7 +64,9 @@ public class TLSClient extends ClientDecorator
                                 .withPort(port)
                                 .buildSocket();
                     }
-                })
+                },
+                FlushPolicy.IMMEDIATE,
+                executorService)
         );
     }
 
@@ -61,6 +74,15 @@ public class TLSClient extends ClientDecorator
      * Creates a new Client using TLS with given trust store
      */
     public TLSClient(final byte[] trustStore, final char[] trustStorePassword, final String trustStoreType)
+    {
+        this(trustStore, trustStorePassword, trustStoreType, null);
+    }
+
+    /**
+     * Creates a new Client using TLS with given trust store
+     * @param executorService Nullable ExecutorService which runs the listener thread
+     */
+    public TLSClient(final byte[] trustStore, final char[] trustStorePassword, final String trustStoreType, final ExecutorService executorService)
     {
         super(new ClientImpl(
                 new SocketFactory()
@@ -74,7 +96,9 @@ public class TLSClient extends ClientDecorator
                                 .withTrustStore(trustStoreType, new ByteArrayInputStream(trustStore), trustStorePassword)
                                 .buildSocket();
                     }
-                })
+                },
+                FlushPolicy.IMMEDIATE,
+                executorService)
         );
     }
 
@@ -0,0 +1,174 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.event;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.threading.SerialExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Calls onReceive on given Packet Distributer using an Executor, so slow handlers do not block reading.
+ * Handlers of different Clients (or Packet IDs) run in parallel, while the order of Packets is kept per Client (or per Packet ID)
+ */
+public class AsyncDistributerListener implements PNetListener
+{
+    public enum Ordering
+    {
+        /**
+         * Packets of the same Client are handled in order
+         */
+        PerClient,
+
+        /**
+         * Packets with the same Packet ID are handled in order, regardless of the Client
+         */
+        PerPacketID
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(AsyncDistributerListener.class);
+
+    private final PacketDistributer packetDistributer;
+    private final Executor executor;
+    private final Ordering ordering;
+
+    private final ConcurrentMap<Client, SerialExecutor> clientExecutors;
+    private final AtomicReferenceArray<SerialExecutor> packetIDExecutors;
+
+    /**
+     * Creates a new listener which keeps the order of Packets per Client
+     * @param packetDistributer Packet Distributer to call
+     * @param executor Executor to run handlers on
+     */
+    public AsyncDistributerListener(final PacketDistributer packetDistributer, final Executor executor)
+    {
+        this(packetDistributer, executor, Ordering.PerClient);
+    }
+
+    /**
+     * Creates a new listener
+     * @param packetDistributer Packet Distributer to call
+     * @param executor Executor to run handlers on
+     * @param ordering Which Packets are handled in order
+     */
+    public AsyncDistributerListener(final PacketDistributer packetDistributer, final Executor executor, final Ordering ordering)
+    {
+        this.packetDistributer = packetDistributer;
+        this.executor = executor;
+        this.ordering = ordering;
+
+        clientExecutors = new ConcurrentHashMap<Client, SerialExecutor>();
+        packetIDExecutors = new AtomicReferenceArray<SerialExecutor>(ordering == Ordering.PerPacketID ? 1 << 16 : 0);
+    }
+
+    @Override
+    public void onConnect(final Client c)
+    {
+    }
+
+    @Override
+    public void onDisconnect(final Client c)
+    {
+        // Pending handlers still run, the SerialExecutor is dropped when its queue is empty
+        clientExecutors.remove(c);
+    }
+
+    @Override
+    public void onReceive(final Packet p, final Client c) throws IOException
+    {
+        // Pooled Packets are released after this call returns
+        p.retain();
+
+        try
+        {
+            getExecutor(p, c).execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        packetDistributer.onReceive(p, c);
+                    }
+                    catch (final IOException e)
+                    {
+                        logger.warn("Unable to handle Packet: {} :", e.getClass(), e);
+                    }
+                    catch (final Exception e)
+                    {
+                        logger.error("Exception while handling onReceive: {} :", e.getClass(), e);
+                    }
+                    finally
+                    {
+                        p.release();
+                    }
+                }
+            });
+        }
+        catch (final RejectedExecutionException e)
+        {
+            // The task never runs, so it can not release the Packet
+            p.release();
+            throw e;
+        }
+    }
+
+    private SerialExecutor getExecutor(final Packet p, final Client c)
+    {
+        if (ordering == Ordering.PerPacketID)
+        {
+            final int index = p.getPacketID() & 0xFFFF;
+            final SerialExecutor serialExecutor = packetIDExecutors.get(index);
+            if (serialExecutor != null) return serialExecutor;
+
+            packetIDExecutors.compareAndSet(index, null, new SerialExecutor(executor));
+            return packetIDExecutors.get(index);
+        }
+
+        final SerialExecutor serialExecutor = clientExecutors.get(c);
+        if (serialExecutor != null) return serialExecutor;
+
+        final SerialExecutor newExecutor = new SerialExecutor(executor);
+        final SerialExecutor existing = clientExecutors.putIfAbsent(c, newExecutor);
+        return existing == null ? newExecutor : existing;
+    }
+
+    /**
+     * Returns internal Packet Distributer
+     * @return Packet Distributer
+     */
+    public PacketDistributer getPacketDistributer()
+    {
+        return packetDistributer;
+    }
+}
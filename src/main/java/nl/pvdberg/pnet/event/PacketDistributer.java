@@ -28,34 +28,40 @@ import nl.pvdberg.pnet.client.Client;
 import nl.pvdberg.pnet.packet.Packet;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class PacketDistributer
 {
-    private PacketDistributer globalHandler;
-    private PacketHandler defaultHandler;
-    private final Map<Short, PacketHandler> registry;
+    private static final int REGISTRY_SIZE = 1 << 16;
+
+    private volatile PacketDistributer globalHandler;
+    private volatile PacketHandler defaultHandler;
+
+    // Copy on write, indexed by unsigned Packet ID
+    private volatile PacketHandler[] registry;
 
     /**
      * Creates a new Packet Distributer. Use this to link functionality to different Packet IDs
      */
     public PacketDistributer()
     {
-        registry = new HashMap<Short, PacketHandler>();
+        registry = new PacketHandler[REGISTRY_SIZE];
     }
 
     /**
-     * Calls specified handler for Packet ID, or the default handler (if set)
+     * Calls specified handler for Packet ID, or the default handler (if set).
+     * Not synchronized: handlers may be called concurrently for Packets received by different Clients
      * @param packet New incoming Packet
      */
-    public synchronized void onReceive(final Packet packet, final Client client) throws IOException
+    public void onReceive(final Packet packet, final Client client) throws IOException
     {
+        final PacketDistributer globalHandler = this.globalHandler;
         if (globalHandler != null) globalHandler.onReceive(packet, client);
 
-        final PacketHandler packetHandler = registry.get(packet.getPacketID());
+        final PacketHandler packetHandler = registry[packet.getPacketID() & 0xFFFF];
         if (packetHandler == null)
         {
+            final PacketHandler defaultHandler = this.defaultHandler;
             if (defaultHandler != null) defaultHandler.handlePacket(packet, client);
         }
         else packetHandler.handlePacket(packet, client);
@@ -69,8 +75,11 @@ public class PacketDistributer
      */
     public synchronized void addHandler(final short packetID, final PacketHandler packetHandler)
     {
-        if (registry.containsKey(packetID)) throw new IllegalArgumentException("Handler for ID: " + packetID + " already exists");
-        registry.put(packetID, packetHandler);
+        if (registry[packetID & 0xFFFF] != null) throw new IllegalArgumentException("Handler for ID: " + packetID + " already exists");
+
+        final PacketHandler[] newRegistry = Arrays.copyOf(registry, REGISTRY_SIZE);
+        newRegistry[packetID & 0xFFFF] = packetHandler;
+        registry = newRegistry;
     }
 
     /**
@@ -78,9 +87,9 @@ public class PacketDistributer
      * @param packetID Packet ID
      * @return PacketHandler or null if no PacketHandler is found
      */
-    public synchronized PacketHandler getHandler(final short packetID)
+    public PacketHandler getHandler(final short packetID)
     {
-        return registry.get(packetID);
+        return registry[packetID & 0xFFFF];
     }
 
     /**
@@ -89,7 +98,7 @@ public class PacketDistributer
      */
     public synchronized void clearHandlers()
     {
-        registry.clear();
+        registry = new PacketHandler[REGISTRY_SIZE];
     }
 
     /**
@@ -114,7 +123,7 @@ public class PacketDistributer
      * Returns global handler
      * @return Packet Distributer (may be null)
      */
-    public synchronized PacketDistributer getGlobalHandler()
+    public PacketDistributer getGlobalHandler()
     {
         return globalHandler;
     }
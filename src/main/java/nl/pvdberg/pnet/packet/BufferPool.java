@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Pool of {@link PacketBuffer PacketBuffers}. Buffers are grouped in power of two size classes,
+ * released buffers are kept for reuse so allocating does not create garbage once the pool is warmed up.
+ * Requests larger than the largest size class are served by unpooled buffers
+ */
+public class BufferPool
+{
+    public static final int MIN_BUFFER_SIZE = 64;
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_BUFFERS_PER_SIZE = 256;
+
+    private final boolean direct;
+    private final int maxBufferSize;
+    private final ArrayBlockingQueue<PacketBuffer>[] freeBuffers;
+
+    /**
+     * Creates a new pool of heap buffers using default limits
+     */
+    public BufferPool()
+    {
+        this(false);
+    }
+
+    /**
+     * Creates a new pool using default limits
+     * @param direct Whether to allocate direct buffers
+     */
+    public BufferPool(final boolean direct)
+    {
+        this(direct, DEFAULT_MAX_BUFFER_SIZE, DEFAULT_BUFFERS_PER_SIZE);
+    }
+
+    /**
+     * Creates a new pool
+     * @param direct Whether to allocate direct buffers
+     * @param maxBufferSize Size of the largest pooled buffer, rounded up to a power of two
+     * @param buffersPerSize Maximum amount of free buffers kept per size class
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(final boolean direct, final int maxBufferSize, final int buffersPerSize)
+    {
+        if (maxBufferSize < MIN_BUFFER_SIZE) throw new IllegalArgumentException("Max buffer size must be at least " + MIN_BUFFER_SIZE);
+        if (maxBufferSize > 1 << 30) throw new IllegalArgumentException("Max buffer size too large");
+        if (buffersPerSize < 1) throw new IllegalArgumentException("At least 1 buffer per size is required");
+
+        this.direct = direct;
+        this.maxBufferSize = roundUp(maxBufferSize);
+
+        freeBuffers = new ArrayBlockingQueue[sizeClass(this.maxBufferSize) + 1];
+        for (int i = 0; i < freeBuffers.length; i++)
+        {
+            freeBuffers[i] = new ArrayBlockingQueue<PacketBuffer>(buffersPerSize);
+        }
+    }
+
+    /**
+     * Returns a buffer which can hold given amount of bytes. The buffer has a reference count of 1
+     * @param length Length in bytes
+     * @return PacketBuffer
+     */
+    public PacketBuffer allocate(final int length)
+    {
+        if (length < 0) throw new IllegalArgumentException("Negative length");
+        if (length > maxBufferSize) return PacketBuffer.allocate(length, direct);
+
+        final int sizeClass = sizeClass(roundUp(length));
+        PacketBuffer packetBuffer = freeBuffers[sizeClass].poll();
+        if (packetBuffer == null)
+        {
+            final int capacity = MIN_BUFFER_SIZE << sizeClass;
+            packetBuffer = new PacketBuffer(
+                    this,
+                    direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity)
+            );
+        }
+        packetBuffer.init(length);
+        return packetBuffer;
+    }
+
+    /**
+     * Returns a released buffer to this pool
+     * @param packetBuffer Released PacketBuffer
+     */
+    void recycle(final PacketBuffer packetBuffer)
+    {
+        // Drop buffer when the pool is full
+        freeBuffers[sizeClass(packetBuffer.getBuffer().capacity())].offer(packetBuffer);
+    }
+
+    /**
+     * Returns amount of free buffers in this pool
+     * @return Amount of free buffers
+     */
+    public int getFreeBuffers()
+    {
+        int free = 0;
+        for (final ArrayBlockingQueue<PacketBuffer> queue : freeBuffers)
+        {
+            free += queue.size();
+        }
+        return free;
+    }
+
+    /**
+     * Returns whether this pool allocates direct buffers
+     * @return Direct
+     */
+    public boolean isDirect()
+    {
+        return direct;
+    }
+
+    private static int roundUp(final int length)
+    {
+        if (length <= MIN_BUFFER_SIZE) return MIN_BUFFER_SIZE;
+        return Integer.highestOneBit(length - 1) << 1;
+    }
+
+    private static int sizeClass(final int capacity)
+    {
+        return Integer.numberOfTrailingZeros(capacity) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    }
+}
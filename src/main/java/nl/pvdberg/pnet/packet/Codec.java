@@ -0,0 +1,58 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import java.io.IOException;
+
+/**
+ * Encoding of Packet data, such as a compression algorithm.
+ * An encoded Packet carries the ID of its codec in the header, so receivers can decode it without agreeing on an encoding beforehand.
+ * Codecs have to be registered at {@link Codecs} on the receiving side. Implementations have to be thread safe
+ */
+public interface Codec
+{
+    /**
+     * Returns the ID which is written into the header of encoded Packets
+     * @return Codec ID from 1 to {@link Packet#MAX_CODEC_ID}
+     */
+    int getCodecID();
+
+    /**
+     * Encodes given Packet
+     * @param packet Packet to encode
+     * @return Packet with the ID of this codec
+     * @throws IOException when unable to encode
+     */
+    Packet compress(final Packet packet) throws IOException;
+
+    /**
+     * Decodes given Packet
+     * @param packet Packet which was encoded by this codec
+     * @param maxDataLength Maximum accepted decoded data length
+     * @return Decoded Packet
+     * @throws IOException when unable to decode or when the decoded data length exceeds the maximum
+     */
+    Packet decompress(final Packet packet, final int maxDataLength) throws IOException;
+}
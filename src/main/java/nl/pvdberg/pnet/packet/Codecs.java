@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Registry of the {@link Codec Codecs} which are used to decode received Packets.
+ * {@link DeflateCompressor} and {@link LZ4Compressor} are registered by default
+ */
+public class Codecs
+{
+    public static final int DEFLATE = 1;
+    public static final int LZ4 = 2;
+    /**
+     * Codec ID of {@link DictionaryCompressor}. Dictionaries are negotiated per connection, so this codec cannot be registered.
+     * Packets with this codec are passed on encoded, to be decoded by the side holding the dictionaries
+     */
+    public static final int DICTIONARY = 3;
+
+    // Copy on write, so every received Packet looks up its codec without locking
+    private static volatile Codec[] codecs = new Codec[Packet.MAX_CODEC_ID + 1];
+
+    static
+    {
+        register(new DeflateCompressor());
+        register(new LZ4Compressor());
+    }
+
+    private Codecs()
+    {
+    }
+
+    /**
+     * Registers given codec, replacing any codec with the same ID
+     * @param codec Codec
+     * @throws IllegalArgumentException when the codec ID is invalid or {@link #DICTIONARY}
+     */
+    public static synchronized void register(final Codec codec)
+    {
+        final int codecID = codec.getCodecID();
+        if (codecID < 1 || codecID > Packet.MAX_CODEC_ID) throw new IllegalArgumentException("Invalid codec ID: " + codecID);
+        if (codecID == DICTIONARY) throw new IllegalArgumentException("Dictionaries are negotiated per connection");
+
+        final Codec[] newCodecs = Arrays.copyOf(codecs, codecs.length);
+        newCodecs[codecID] = codec;
+        codecs = newCodecs;
+    }
+
+    /**
+     * Returns codec with given ID
+     * @param codecID Codec ID
+     * @return Nullable Codec
+     */
+    public static Codec get(final int codecID)
+    {
+        if (codecID < 1 || codecID > Packet.MAX_CODEC_ID) return null;
+        return codecs[codecID];
+    }
+
+    /**
+     * Decodes given Packet using the codec in its header. Given Packet is released, unless it is returned because it is not encoded.
+     * Packets with codec {@link #DICTIONARY} are returned encoded
+     * @param packet Packet
+     * @param maxDataLength Maximum accepted decoded data length
+     * @return Decoded Packet
+     * @throws IOException when the codec is unknown or unable to decode
+     */
+    public static Packet decompress(final Packet packet, final int maxDataLength) throws IOException
+    {
+        if (packet.getCodecID() == 0 || packet.getCodecID() == DICTIONARY) return packet;
+
+        try
+        {
+            final Codec codec = get(packet.getCodecID());
+            if (codec == null) throw new IOException("Unknown codec: " + packet.getCodecID());
+            return codec.decompress(packet, maxDataLength);
+        }
+        finally
+        {
+            packet.release();
+        }
+    }
+}
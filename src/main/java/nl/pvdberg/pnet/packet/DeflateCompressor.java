@@ -0,0 +1,260 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses Packets using raw deflate. Unlike {@link PacketCompressor}, which creates a new GZIP stream per Packet,
+ * this compressor reuses a Deflater and Inflater per thread and stores the uncompressed length,
+ * so both directions work on exactly sized arrays without intermediate buffers.
+ * Compressed data consists of the uncompressed length as {@link VarInt} followed by the deflated data.
+ * The format is not compatible with {@link PacketCompressor}. Instances are thread safe.
+ * Compressed Packets carry codec ID {@link Codecs#DEFLATE}, so receivers decompress them automatically
+ */
+public class DeflateCompressor implements Codec
+{
+    public static final int DEFAULT_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+    private final int level;
+    private volatile int maxDataLength;
+
+    private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>()
+    {
+        @Override
+        protected Deflater initialValue()
+        {
+            return new Deflater(level, true);
+        }
+    };
+
+    private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>()
+    {
+        @Override
+        protected Inflater initialValue()
+        {
+            return new Inflater(true);
+        }
+    };
+
+    /**
+     * Creates a new compressor using the default compression level
+     */
+    public DeflateCompressor()
+    {
+        this(DEFAULT_LEVEL);
+    }
+
+    /**
+     * Creates a new compressor
+     * @param level Compression level from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public DeflateCompressor(final int level)
+    {
+        if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION)
+        {
+            throw new IllegalArgumentException("Invalid compression level");
+        }
+        this.level = level;
+        maxDataLength = Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int getCodecID()
+    {
+        return Codecs.DEFLATE;
+    }
+
+    /**
+     * Returns the compression level
+     * @return Compression level
+     */
+    public int getLevel()
+    {
+        return level;
+    }
+
+    /**
+     * Sets the maximum uncompressed length of decompressed Packets, which protects against data that inflates to a huge size
+     * @param maxDataLength Maximum data length in bytes, {@link Integer#MAX_VALUE} by default
+     */
+    public void setMaxDataLength(final int maxDataLength)
+    {
+        if (maxDataLength < 0) throw new IllegalArgumentException("Negative maximum data length");
+        this.maxDataLength = maxDataLength;
+    }
+
+    /**
+     * Compresses given Packet. Note that this can increase the total size when used incorrectly
+     * @param packet Packet to compress
+     * @return Compressed Packet
+     */
+    @Override
+    public Packet compress(final Packet packet)
+    {
+        final PacketBuffer buffer = packet.getBuffer();
+        final byte[] input;
+        final int offset;
+        final int length;
+        if (buffer == null || buffer.hasArray())
+        {
+            input = buffer == null ? packet.getData() : buffer.array();
+            offset = buffer == null ? 0 : buffer.arrayOffset();
+            length = packet.getDataLength();
+        }
+        else
+        {
+            input = packet.getData();
+            offset = 0;
+            length = input.length;
+        }
+
+        final int headerSize = VarInt.size(length);
+        byte[] output = new byte[headerSize + maxCompressedLength(length)];
+        VarInt.writeVarInt(ByteBuffer.wrap(output), length);
+
+        final Deflater deflater = deflaters.get();
+        int outputLength = headerSize;
+        try
+        {
+            final byte[] dictionary = getDictionary(packet.getPacketID());
+            if (dictionary != null) deflater.setDictionary(dictionary);
+            deflater.setInput(input, offset, length);
+            deflater.finish();
+            while (!deflater.finished())
+            {
+                // The bound is not guaranteed for every zlib version
+                if (outputLength == output.length) output = Arrays.copyOf(output, output.length * 2);
+                outputLength += deflater.deflate(output, outputLength, output.length - outputLength);
+            }
+        }
+        finally
+        {
+            deflater.reset();
+        }
+
+        return new Packet(
+                packet.getPacketType(),
+                packet.getPacketID(),
+                getCodecID(),
+                outputLength == output.length ? output : Arrays.copyOf(output, outputLength)
+        );
+    }
+
+    /**
+     * Decompresses given Packet
+     * @param packet Compressed Packet
+     * @return Decompressed Packet
+     * @throws IOException when unable to decompress
+     */
+    public Packet decompress(final Packet packet) throws IOException
+    {
+        return decompress(packet, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Packet decompress(final Packet packet, final int maxDataLength) throws IOException
+    {
+        final byte[] input = packet.getData();
+        final ByteBuffer header = ByteBuffer.wrap(input);
+        final int length;
+        try
+        {
+            length = VarInt.readVarInt(header);
+        }
+        catch (final BufferUnderflowException e)
+        {
+            throw new IOException("Missing length");
+        }
+        if (length < 0 || length > Math.min(maxDataLength, this.maxDataLength)) throw new IOException("Invalid data length: " + length);
+
+        final byte[] output = new byte[length];
+        final Inflater inflater = inflaters.get();
+        try
+        {
+            // A raw stream does not ask for its dictionary, it has to be set beforehand
+            final byte[] dictionary = getDictionary(packet.getPacketID());
+            if (dictionary != null) inflater.setDictionary(dictionary);
+            inflater.setInput(input, header.position(), input.length - header.position());
+
+            int outputLength = 0;
+            while (outputLength < length)
+            {
+                final int inflated = inflater.inflate(output, outputLength, length - outputLength);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    throw new IOException("Data shorter than stored length");
+                }
+                outputLength += inflated;
+            }
+
+            // Consume the end of the stream, which must not produce any more data
+            if (!inflater.finished() && (inflater.inflate(new byte[1]) != 0 || !inflater.finished()))
+            {
+                throw new IOException("Data longer than stored length");
+            }
+        }
+        catch (final DataFormatException e)
+        {
+            throw new IOException("Malformed data", e);
+        }
+        finally
+        {
+            inflater.reset();
+        }
+
+        return new Packet(
+                packet.getPacketType(),
+                packet.getPacketID(),
+                output
+        );
+    }
+
+    /**
+     * Returns the preset dictionary of given Packet ID. Both sides have to use the same dictionary
+     * @param packetID Packet ID
+     * @return Nullable dictionary, null by default
+     */
+    protected byte[] getDictionary(final short packetID)
+    {
+        return null;
+    }
+
+    /**
+     * Returns the worst case length of raw deflated data, see compressBound of zlib
+     * @param length Uncompressed length
+     * @return Compressed length
+     */
+    private static int maxCompressedLength(final int length)
+    {
+        return length + (length >>> 12) + (length >>> 14) + (length >>> 25) + 13;
+    }
+}
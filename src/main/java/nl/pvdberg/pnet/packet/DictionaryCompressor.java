@@ -0,0 +1,182 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Adler32;
+
+/**
+ * Compresses Packets using raw deflate with a preset dictionary per Packet ID.
+ * Small Packets hardly compress on their own, as deflate has no history to refer to. A dictionary trained on typical Packets
+ * (see {@link DictionaryTrainer}) provides this history, so repetitive Packets of only a few dozen bytes compress well.
+ * Both sides must use the same dictionaries; compressed Packets carry codec ID {@link Codecs#DICTIONARY},
+ * which is decoded per connection by the side which negotiated the dictionaries. Packet IDs without a dictionary are compressed as plain deflate
+ */
+public class DictionaryCompressor extends DeflateCompressor
+{
+    private final Map<Short, byte[]> dictionaries;
+    private final long checksum;
+
+    /**
+     * Creates a new compressor using the default compression level
+     * @param dictionaries Dictionary per Packet ID. The map is copied
+     */
+    public DictionaryCompressor(final Map<Short, byte[]> dictionaries)
+    {
+        this(dictionaries, DEFAULT_LEVEL);
+    }
+
+    /**
+     * Creates a new compressor
+     * @param dictionaries Dictionary per Packet ID. The map is copied
+     * @param level Compression level, see {@link DeflateCompressor#DeflateCompressor(int)}
+     */
+    public DictionaryCompressor(final Map<Short, byte[]> dictionaries, final int level)
+    {
+        super(level);
+
+        final Map<Short, byte[]> copy = new HashMap<Short, byte[]>();
+        for (final Map.Entry<Short, byte[]> entry : dictionaries.entrySet())
+        {
+            if (entry.getValue() == null || entry.getValue().length == 0) throw new IllegalArgumentException("Empty dictionary for Packet ID " + entry.getKey());
+            copy.put(entry.getKey(), entry.getValue().clone());
+        }
+        this.dictionaries = Collections.unmodifiableMap(copy);
+        checksum = calculateChecksum(copy);
+    }
+
+    @Override
+    public int getCodecID()
+    {
+        return Codecs.DICTIONARY;
+    }
+
+    @Override
+    protected byte[] getDictionary(final short packetID)
+    {
+        return dictionaries.get(packetID);
+    }
+
+    /**
+     * Returns whether a dictionary is available for given Packet ID
+     * @param packetID Packet ID
+     * @return Dictionary is available
+     */
+    public boolean hasDictionary(final short packetID)
+    {
+        return dictionaries.containsKey(packetID);
+    }
+
+    /**
+     * Returns all dictionaries. The returned arrays must not be modified
+     * @return Unmodifiable map of dictionary per Packet ID
+     */
+    public Map<Short, byte[]> getDictionaries()
+    {
+        return dictionaries;
+    }
+
+    /**
+     * Returns a checksum of all dictionaries, which can be used to verify that both sides use the same dictionaries
+     * @return Checksum
+     */
+    public long getChecksum()
+    {
+        return checksum;
+    }
+
+    /**
+     * Writes all dictionaries to given stream
+     * @param out Output
+     * @throws IOException when unable to write
+     * @see #read(DataInputStream)
+     */
+    public void write(final DataOutputStream out) throws IOException
+    {
+        final Short[] packetIDs = sortedPacketIDs(dictionaries);
+        out.writeInt(packetIDs.length);
+        for (final Short packetID : packetIDs)
+        {
+            final byte[] dictionary = dictionaries.get(packetID);
+            out.writeShort(packetID);
+            out.writeInt(dictionary.length);
+            out.write(dictionary);
+        }
+    }
+
+    /**
+     * Reads dictionaries written by {@link #write(DataOutputStream)}
+     * @param in Input
+     * @return DictionaryCompressor using the default compression level
+     * @throws IOException when unable to read
+     */
+    public static DictionaryCompressor read(final DataInputStream in) throws IOException
+    {
+        final int count = in.readInt();
+        if (count < 0) throw new IOException("Invalid dictionary count: " + count);
+
+        final Map<Short, byte[]> dictionaries = new HashMap<Short, byte[]>();
+        for (int i = 0; i < count; i++)
+        {
+            final short packetID = in.readShort();
+            final int length = in.readInt();
+            if (length < 1 || length > DictionaryTrainer.MAX_DICTIONARY_SIZE) throw new IOException("Invalid dictionary length: " + length);
+            final byte[] dictionary = new byte[length];
+            in.readFully(dictionary);
+            dictionaries.put(packetID, dictionary);
+        }
+        return new DictionaryCompressor(dictionaries);
+    }
+
+    private static long calculateChecksum(final Map<Short, byte[]> dictionaries)
+    {
+        final Adler32 adler32 = new Adler32();
+        for (final Short packetID : sortedPacketIDs(dictionaries))
+        {
+            final byte[] dictionary = dictionaries.get(packetID);
+            adler32.update(packetID >>> 8);
+            adler32.update(packetID);
+            adler32.update(dictionary.length >>> 24);
+            adler32.update(dictionary.length >>> 16);
+            adler32.update(dictionary.length >>> 8);
+            adler32.update(dictionary.length);
+            adler32.update(dictionary);
+        }
+        return adler32.getValue();
+    }
+
+    private static Short[] sortedPacketIDs(final Map<Short, byte[]> dictionaries)
+    {
+        final Short[] packetIDs = dictionaries.keySet().toArray(new Short[dictionaries.size()]);
+        Arrays.sort(packetIDs);
+        return packetIDs;
+    }
+}
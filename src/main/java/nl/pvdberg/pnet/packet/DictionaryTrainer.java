@@ -0,0 +1,322 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Trains dictionaries for {@link DictionaryCompressor} from sample Packets.
+ * Every sample is cut into overlapping segments, which are scored by how many samples share their substrings.
+ * The best segments are chosen greedily, where substrings which are already in the dictionary no longer count,
+ * and the most valuable segments are placed at the end of the dictionary, as deflate encodes nearby matches cheaper.
+ * <p>
+ * The trainer can also be ran as a tool: it reads a log of Packets written by {@link Packet#write(DataOutputStream)}
+ * and writes the dictionaries as read by {@link DictionaryCompressor#read(DataInputStream)}
+ */
+public class DictionaryTrainer
+{
+    /**
+     * Maximum dictionary size, as deflate can not refer further back
+     */
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+    public static final int DEFAULT_DICTIONARY_SIZE = 4 * 1024;
+
+    private static final int K = 8;
+    private static final int SEGMENT_SIZE = 32;
+    private static final int SEGMENT_STRIDE = 16;
+
+    private final Map<Short, List<byte[]>> samples;
+
+    /**
+     * Creates a new trainer without samples
+     */
+    public DictionaryTrainer()
+    {
+        samples = new HashMap<Short, List<byte[]>>();
+    }
+
+    /**
+     * Adds the data of given Packet as sample
+     * @param packet Uncompressed Packet
+     */
+    public void addSample(final Packet packet)
+    {
+        if (packet.getCodecID() != 0) throw new IllegalArgumentException("Packet is compressed");
+        addSample(packet.getPacketID(), packet.getData());
+    }
+
+    /**
+     * Adds a sample of given Packet ID
+     * @param packetID Packet ID
+     * @param data Sample data. The array is not copied
+     */
+    public synchronized void addSample(final short packetID, final byte[] data)
+    {
+        List<byte[]> packetSamples = samples.get(packetID);
+        if (packetSamples == null)
+        {
+            packetSamples = new ArrayList<byte[]>();
+            samples.put(packetID, packetSamples);
+        }
+        packetSamples.add(data);
+    }
+
+    /**
+     * Returns the amount of samples of given Packet ID
+     * @param packetID Packet ID
+     * @return Amount of samples
+     */
+    public synchronized int getSampleCount(final short packetID)
+    {
+        final List<byte[]> packetSamples = samples.get(packetID);
+        return packetSamples == null ? 0 : packetSamples.size();
+    }
+
+    /**
+     * Trains a dictionary for every Packet ID with samples
+     * @param maxSize Maximum size of each dictionary in bytes
+     * @return DictionaryCompressor using the trained dictionaries
+     */
+    public synchronized DictionaryCompressor train(final int maxSize)
+    {
+        final Map<Short, byte[]> dictionaries = new HashMap<Short, byte[]>();
+        for (final Short packetID : samples.keySet())
+        {
+            final byte[] dictionary = train(packetID, maxSize);
+            if (dictionary != null) dictionaries.put(packetID, dictionary);
+        }
+        return new DictionaryCompressor(dictionaries);
+    }
+
+    /**
+     * Trains a dictionary for given Packet ID
+     * @param packetID Packet ID
+     * @param maxSize Maximum size of the dictionary in bytes
+     * @return Nullable dictionary, null when the samples do not share any content
+     */
+    public synchronized byte[] train(final short packetID, final int maxSize)
+    {
+        if (maxSize < 1 || maxSize > MAX_DICTIONARY_SIZE) throw new IllegalArgumentException("Invalid dictionary size: " + maxSize);
+
+        final List<byte[]> packetSamples = samples.get(packetID);
+        if (packetSamples == null) return null;
+
+        // Count in how many samples every substring occurs
+        final Map<Long, Integer> frequencies = new HashMap<Long, Integer>();
+        final Set<Long> sampleKeys = new HashSet<Long>();
+        for (final byte[] sample : packetSamples)
+        {
+            sampleKeys.clear();
+            for (int i = 0; i + K <= sample.length; i++)
+            {
+                sampleKeys.add(key(sample, i));
+            }
+            for (final Long key : sampleKeys)
+            {
+                final Integer frequency = frequencies.get(key);
+                frequencies.put(key, frequency == null ? 1 : frequency + 1);
+            }
+        }
+
+        final PriorityQueue<Segment> queue = new PriorityQueue<Segment>();
+        for (final byte[] sample : packetSamples)
+        {
+            for (int start = 0; start + K <= sample.length; start += SEGMENT_STRIDE)
+            {
+                final Segment segment = new Segment(sample, start, Math.min(start + SEGMENT_SIZE, sample.length));
+                segment.score = segment.score(frequencies);
+                if (segment.score > 0) queue.add(segment);
+            }
+        }
+
+        // Lazy greedy selection: scores only decrease, so a segment whose score is still up to date is the best one
+        final List<Segment> selected = new ArrayList<Segment>();
+        int size = 0;
+        Segment segment;
+        while (size < maxSize && (segment = queue.poll()) != null)
+        {
+            final long score = segment.score(frequencies);
+            if (score == 0) continue;
+            if (score < segment.score)
+            {
+                segment.score = score;
+                queue.add(segment);
+                continue;
+            }
+
+            segment.cover(frequencies);
+            selected.add(segment);
+            size += segment.end - segment.start;
+        }
+
+        if (selected.isEmpty()) return null;
+
+        // Filled from the end, so the most valuable segments are placed last
+        final byte[] dictionary = new byte[Math.min(size, maxSize)];
+        int position = dictionary.length;
+        for (int i = 0; i < selected.size() && position > 0; i++)
+        {
+            final Segment s = selected.get(i);
+            final int length = Math.min(s.end - s.start, position);
+            position -= length;
+            System.arraycopy(s.sample, s.end - length, dictionary, position, length);
+        }
+        return dictionary;
+    }
+
+    private static long key(final byte[] data, final int offset)
+    {
+        long key = 0;
+        for (int i = 0; i < K; i++)
+        {
+            key = (key << 8) | (data[offset + i] & 0xFF);
+        }
+        return key;
+    }
+
+    private static class Segment implements Comparable<Segment>
+    {
+        private final byte[] sample;
+        private final int start;
+        private final int end;
+        private long score;
+
+        private Segment(final byte[] sample, final int start, final int end)
+        {
+            this.sample = sample;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Sums the frequencies of all distinct substrings which occur in more than one sample
+         */
+        private long score(final Map<Long, Integer> frequencies)
+        {
+            final Set<Long> keys = new HashSet<Long>();
+            long score = 0;
+            for (int i = start; i + K <= end; i++)
+            {
+                final Long key = key(sample, i);
+                if (!keys.add(key)) continue;
+                final int frequency = frequencies.get(key);
+                if (frequency > 1) score += frequency;
+            }
+            return score;
+        }
+
+        /**
+         * Marks all substrings of this segment as covered by the dictionary
+         */
+        private void cover(final Map<Long, Integer> frequencies)
+        {
+            for (int i = start; i + K <= end; i++)
+            {
+                frequencies.put(key(sample, i), 0);
+            }
+        }
+
+        @Override
+        public int compareTo(final Segment other)
+        {
+            return score > other.score ? -1 : score < other.score ? 1 : 0;
+        }
+    }
+
+    /**
+     * Trains dictionaries from a Packet log
+     * @param args Packet log file, dictionary output file and optionally the maximum dictionary size
+     * @throws IOException when unable to read the log or write the dictionaries
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length < 2 || args.length > 3)
+        {
+            System.err.println("Usage: DictionaryTrainer <packet log> <dictionary file> [max dictionary size]");
+            System.exit(1);
+            return;
+        }
+        final int maxSize = args.length == 3 ? Integer.parseInt(args[2]) : DEFAULT_DICTIONARY_SIZE;
+
+        final DictionaryTrainer trainer = new DictionaryTrainer();
+        int packets = 0;
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])));
+        try
+        {
+            while (true)
+            {
+                final Packet packet;
+                try
+                {
+                    packet = Codecs.decompress(Packet.fromStream(in), Integer.MAX_VALUE);
+                }
+                catch (final EOFException e)
+                {
+                    break;
+                }
+                // Dictionary compressed Packets cannot be decoded without their dictionaries
+                if (packet.getCodecID() != 0) continue;
+                trainer.addSample(packet);
+                packets++;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        final DictionaryCompressor compressor = trainer.train(maxSize);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[1])));
+        try
+        {
+            compressor.write(out);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        System.out.println("Read " + packets + " Packets");
+        for (final Map.Entry<Short, byte[]> entry : compressor.getDictionaries().entrySet())
+        {
+            System.out.println("Packet ID " + entry.getKey() + ": " + trainer.getSampleCount(entry.getKey()) + " samples, dictionary of " + entry.getValue().length + " bytes");
+        }
+        System.out.println("Checksum: " + compressor.getChecksum());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Pool which receives large Packets into memory mapped temporary files instead of the heap.
+ * Smaller requests are served like a regular {@link BufferPool}.
+ * The file of a received Packet is available through {@link Packet#getFile()} and is deleted when the Packet is released,
+ * so Packets which are never released leave their file behind
+ */
+public class FileBufferPool extends BufferPool
+{
+    public static final String FILE_PREFIX = "pnet";
+    public static final String FILE_SUFFIX = ".packet";
+
+    private final Logger logger = LoggerFactory.getLogger(FileBufferPool.class);
+
+    private final File directory;
+    private final int threshold;
+
+    /**
+     * Creates a new pool of heap buffers using default limits
+     * @param directory Nullable directory to create files in. When null, the default temporary directory is used
+     * @param threshold Minimum length in bytes of buffers which are backed by a file
+     */
+    public FileBufferPool(final File directory, final int threshold)
+    {
+        this(directory, threshold, false, DEFAULT_MAX_BUFFER_SIZE, DEFAULT_BUFFERS_PER_SIZE);
+    }
+
+    /**
+     * Creates a new pool
+     * @param directory Nullable directory to create files in. When null, the default temporary directory is used
+     * @param threshold Minimum length in bytes of buffers which are backed by a file
+     * @param direct Whether to allocate direct buffers below the threshold
+     * @param maxBufferSize Size of the largest pooled buffer, rounded up to a power of two
+     * @param buffersPerSize Maximum amount of free buffers kept per size class
+     */
+    public FileBufferPool(final File directory, final int threshold, final boolean direct, final int maxBufferSize, final int buffersPerSize)
+    {
+        super(direct, maxBufferSize, buffersPerSize);
+        if (threshold < 1) throw new IllegalArgumentException("Threshold must be positive");
+        if (directory != null && !directory.isDirectory()) throw new IllegalArgumentException("Not a directory: " + directory);
+
+        this.directory = directory;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns a buffer which can hold given amount of bytes. Buffers of at least the threshold length are backed by a new file.
+     * Falls back to a regular buffer when unable to create the file
+     * @param length Length in bytes
+     * @return PacketBuffer
+     */
+    @Override
+    public PacketBuffer allocate(final int length)
+    {
+        if (length < threshold) return super.allocate(length);
+
+        File file = null;
+        try
+        {
+            file = File.createTempFile(FILE_PREFIX, FILE_SUFFIX, directory);
+            return PacketBuffer.map(file, length);
+        }
+        catch (final IOException e)
+        {
+            logger.error("Unable to map file: {} :", e.getClass(), e);
+            if (file != null && !file.delete()) file.deleteOnExit();
+            return super.allocate(length);
+        }
+    }
+
+    /**
+     * Returns the directory files are created in
+     * @return Nullable directory
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Returns the minimum length of buffers which are backed by a file
+     * @return Threshold in bytes
+     */
+    public int getThreshold()
+    {
+        return threshold;
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compresses Packets using the LZ4 block format, which trades compression ratio for speed.
+ * Compressed data consists of the uncompressed length as {@link VarInt} followed by a single LZ4 block.
+ * Compressed Packets carry codec ID {@link Codecs#LZ4}. Instances are thread safe
+ */
+public class LZ4Compressor implements Codec
+{
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int HASH_LOG = 12;
+    private static final int RUN_MASK = 15;
+
+    private final ThreadLocal<int[]> hashTables = new ThreadLocal<int[]>()
+    {
+        @Override
+        protected int[] initialValue()
+        {
+            return new int[1 << HASH_LOG];
+        }
+    };
+
+    @Override
+    public int getCodecID()
+    {
+        return Codecs.LZ4;
+    }
+
+    /**
+     * Compresses given Packet. Incompressible data grows by a small amount
+     * @param packet Packet to compress
+     * @return Compressed Packet
+     */
+    @Override
+    public Packet compress(final Packet packet)
+    {
+        final PacketBuffer buffer = packet.getBuffer();
+        final byte[] input;
+        final int offset;
+        final int length;
+        if (buffer == null || buffer.hasArray())
+        {
+            input = buffer == null ? packet.getData() : buffer.array();
+            offset = buffer == null ? 0 : buffer.arrayOffset();
+            length = packet.getDataLength();
+        }
+        else
+        {
+            input = packet.getData();
+            offset = 0;
+            length = input.length;
+        }
+
+        final int headerSize = VarInt.size(length);
+        final byte[] output = new byte[headerSize + maxCompressedLength(length)];
+        VarInt.writeVarInt(ByteBuffer.wrap(output), length);
+        final int outputLength = compress(input, offset, length, output, headerSize);
+
+        return new Packet(
+                packet.getPacketType(),
+                packet.getPacketID(),
+                Codecs.LZ4,
+                Arrays.copyOf(output, outputLength)
+        );
+    }
+
+    /**
+     * Decompresses given Packet
+     * @param packet Compressed Packet
+     * @return Decompressed Packet
+     * @throws IOException when unable to decompress
+     */
+    public Packet decompress(final Packet packet) throws IOException
+    {
+        return decompress(packet, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Packet decompress(final Packet packet, final int maxDataLength) throws IOException
+    {
+        final byte[] input = packet.getData();
+        final ByteBuffer header = ByteBuffer.wrap(input);
+        final int length;
+        try
+        {
+            length = VarInt.readVarInt(header);
+        }
+        catch (final BufferUnderflowException e)
+        {
+            throw new IOException("Missing length");
+        }
+        if (length < 0 || length > maxDataLength) throw new IOException("Invalid data length: " + length);
+
+        final byte[] output = new byte[length];
+        decompress(input, header.position(), input.length, output);
+
+        return new Packet(
+                packet.getPacketType(),
+                packet.getPacketID(),
+                output
+        );
+    }
+
+    /**
+     * Returns the worst case length of a compressed block
+     * @param length Uncompressed length
+     * @return Compressed length
+     */
+    private static int maxCompressedLength(final int length)
+    {
+        return length + length / 255 + 16;
+    }
+
+    private static int hash(final int i)
+    {
+        return (i * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int readInt(final byte[] b, final int i)
+    {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Compresses given data into a single block
+     * @return Index in output after the block
+     */
+    private int compress(final byte[] src, final int srcOffset, final int srcLength, final byte[] dst, int dstIndex)
+    {
+        final int srcEnd = srcOffset + srcLength;
+        int anchor = srcOffset;
+
+        if (srcLength >= MATCH_FIND_LIMIT + 1)
+        {
+            final int matchFindLimit = srcEnd - MATCH_FIND_LIMIT;
+            final int matchLimit = srcEnd - LAST_LITERALS;
+            final int[] hashTable = hashTables.get();
+            Arrays.fill(hashTable, -1);
+
+            int index = srcOffset;
+            while (index < matchFindLimit)
+            {
+                final int sequence = readInt(src, index);
+                final int h = hash(sequence);
+                int reference = hashTable[h];
+                hashTable[h] = index;
+
+                if (reference < 0 || index - reference > MAX_DISTANCE || readInt(src, reference) != sequence)
+                {
+                    // Skip faster through data without matches
+                    index += 1 + ((index - anchor) >>> 6);
+                    continue;
+                }
+
+                // Extend the match backwards into the pending literals
+                while (index > anchor && reference > srcOffset && src[index - 1] == src[reference - 1])
+                {
+                    index--;
+                    reference--;
+                }
+
+                int matchLength = MIN_MATCH;
+                while (index + matchLength < matchLimit && src[index + matchLength] == src[reference + matchLength]) matchLength++;
+
+                dstIndex = writeSequence(src, anchor, index - anchor, index - reference, matchLength, dst, dstIndex);
+                index += matchLength;
+                anchor = index;
+
+                if (index < matchFindLimit) hashTable[hash(readInt(src, index - 2))] = index - 2;
+            }
+        }
+
+        // Last literals
+        final int literalLength = srcEnd - anchor;
+        dst[dstIndex++] = (byte) (Math.min(literalLength, RUN_MASK) << 4);
+        dstIndex = writeLength(literalLength, dst, dstIndex);
+        System.arraycopy(src, anchor, dst, dstIndex, literalLength);
+        return dstIndex + literalLength;
+    }
+
+    private static int writeSequence(final byte[] src, final int literalIndex, final int literalLength, final int distance, final int matchLength,
+                                     final byte[] dst, int dstIndex)
+    {
+        dst[dstIndex++] = (byte) (Math.min(literalLength, RUN_MASK) << 4 | Math.min(matchLength - MIN_MATCH, RUN_MASK));
+        dstIndex = writeLength(literalLength, dst, dstIndex);
+        System.arraycopy(src, literalIndex, dst, dstIndex, literalLength);
+        dstIndex += literalLength;
+
+        dst[dstIndex++] = (byte) distance;
+        dst[dstIndex++] = (byte) (distance >>> 8);
+        return writeLength(matchLength - MIN_MATCH, dst, dstIndex);
+    }
+
+    /**
+     * Writes the part of a length which does not fit in the token
+     */
+    private static int writeLength(final int length, final byte[] dst, int dstIndex)
+    {
+        if (length < RUN_MASK) return dstIndex;
+        int remaining = length - RUN_MASK;
+        while (remaining >= 255)
+        {
+            dst[dstIndex++] = (byte) 255;
+            remaining -= 255;
+        }
+        dst[dstIndex++] = (byte) remaining;
+        return dstIndex;
+    }
+
+    private static void decompress(final byte[] src, int srcIndex, final int srcEnd, final byte[] dst) throws IOException
+    {
+        int dstIndex = 0;
+        while (true)
+        {
+            if (srcIndex >= srcEnd) throw new IOException("Malformed data");
+            final int token = src[srcIndex++] & 0xFF;
+
+            // Literals
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK)
+            {
+                int b;
+                do
+                {
+                    if (srcIndex >= srcEnd) throw new IOException("Malformed data");
+                    b = src[srcIndex++] & 0xFF;
+                    literalLength += b;
+                }
+                while (b == 255 && literalLength > 0);
+            }
+            if (literalLength < 0 || literalLength > srcEnd - srcIndex || literalLength > dst.length - dstIndex)
+            {
+                throw new IOException("Malformed data");
+            }
+            System.arraycopy(src, srcIndex, dst, dstIndex, literalLength);
+            srcIndex += literalLength;
+            dstIndex += literalLength;
+
+            // The last sequence only contains literals
+            if (srcIndex == srcEnd) break;
+
+            // Match
+            if (srcEnd - srcIndex < 2) throw new IOException("Malformed data");
+            final int distance = (src[srcIndex] & 0xFF) | (src[srcIndex + 1] & 0xFF) << 8;
+            srcIndex += 2;
+            if (distance == 0 || distance > dstIndex) throw new IOException("Malformed data");
+
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK)
+            {
+                int b;
+                do
+                {
+                    if (srcIndex >= srcEnd) throw new IOException("Malformed data");
+                    b = src[srcIndex++] & 0xFF;
+                    matchLength += b;
+                }
+                while (b == 255 && matchLength > 0);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength < MIN_MATCH || matchLength > dst.length - dstIndex) throw new IOException("Malformed data");
+
+            final int matchIndex = dstIndex - distance;
+            if (distance >= matchLength)
+            {
+                System.arraycopy(dst, matchIndex, dst, dstIndex, matchLength);
+            }
+            else
+            {
+                // Overlapping match repeats the last bytes
+                for (int i = 0; i < matchLength; i++) dst[dstIndex + i] = dst[matchIndex + i];
+            }
+            dstIndex += matchLength;
+        }
+
+        if (dstIndex != dst.length) throw new IOException("Data shorter than stored length");
+    }
+}
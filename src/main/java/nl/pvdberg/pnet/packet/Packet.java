@@ -25,13 +25,26 @@
 package nl.pvdberg.pnet.packet;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 public class Packet
 {
+    /**
+     * Size of the Packet header: type, ID and data length. Only applies to {@link PacketFraming#Legacy}
+     */
+    public static final int HEADER_SIZE = 7;
+
+    /**
+     * Highest codec ID which fits in the header, see {@link Codec}
+     */
+    public static final int MAX_CODEC_ID = 15;
+
     private final PacketType packetType;
     private final short packetID;
+    private final int codecID;
     private final int dataLength;
     private final byte[] data;
+    private final PacketBuffer buffer;
 
     public enum PacketType
     {
@@ -49,10 +62,56 @@ public class Packet
      */
     public Packet(final PacketType packetType, final short packetID, final byte[] data)
     {
+        this(packetType, packetID, 0, data);
+    }
+
+    /**
+     * Creates a new immutable Packet of which the data is encoded by given codec
+     * @param packetType Packet Type
+     * @param packetID Packet ID
+     * @param codecID ID of the {@link Codec} which encoded the data, or 0 when the data is not encoded
+     * @param data Packet Data
+     */
+    public Packet(final PacketType packetType, final short packetID, final int codecID, final byte[] data)
+    {
+        if (codecID < 0 || codecID > MAX_CODEC_ID) throw new IllegalArgumentException("Invalid codec ID: " + codecID);
         this.packetType = packetType;
         this.packetID = packetID;
+        this.codecID = codecID;
         dataLength = data.length;
         this.data = data;
+        buffer = null;
+    }
+
+    /**
+     * Creates a new immutable Packet backed by a PacketBuffer.
+     * The Packet takes over the reference of the caller, see {@link #release()}
+     * @param packetType Packet Type
+     * @param packetID Packet ID
+     * @param buffer Packet Data
+     */
+    public Packet(final PacketType packetType, final short packetID, final PacketBuffer buffer)
+    {
+        this(packetType, packetID, 0, buffer);
+    }
+
+    /**
+     * Creates a new immutable Packet backed by a PacketBuffer, of which the data is encoded by given codec.
+     * The Packet takes over the reference of the caller, see {@link #release()}
+     * @param packetType Packet Type
+     * @param packetID Packet ID
+     * @param codecID ID of the {@link Codec} which encoded the data, or 0 when the data is not encoded
+     * @param buffer Packet Data
+     */
+    public Packet(final PacketType packetType, final short packetID, final int codecID, final PacketBuffer buffer)
+    {
+        if (codecID < 0 || codecID > MAX_CODEC_ID) throw new IllegalArgumentException("Invalid codec ID: " + codecID);
+        this.packetType = packetType;
+        this.packetID = packetID;
+        this.codecID = codecID;
+        dataLength = buffer.getLength();
+        data = null;
+        this.buffer = buffer;
     }
 
     /**
@@ -91,6 +150,15 @@ public class Packet
         return packetID;
     }
 
+    /**
+     * Returns ID of the {@link Codec} which encoded the data
+     * @return Codec ID, or 0 when the data is not encoded
+     */
+    public int getCodecID()
+    {
+        return codecID;
+    }
+
     /**
      * Returns Data length
      * @return Data length
@@ -101,12 +169,67 @@ public class Packet
     }
 
     /**
-     * Returns Packet data
+     * Returns Packet data. Data of a buffer backed Packet is copied into a new array
      * @return Data
      */
     public byte[] getData()
     {
-        return data;
+        if (data != null) return data;
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Returns a view of the Packet data, which does not copy the data of a buffer backed Packet.
+     * The view is positioned at 0 and limited to the data length
+     * @return ByteBuffer
+     */
+    public ByteBuffer getDataView()
+    {
+        if (data != null) return ByteBuffer.wrap(data);
+
+        final ByteBuffer view = buffer.getBuffer().duplicate();
+        view.clear();
+        view.limit(dataLength);
+        return view;
+    }
+
+    /**
+     * Returns buffer which holds the Packet data
+     * @return PacketBuffer, or null when this Packet is backed by a byte array
+     */
+    public PacketBuffer getBuffer()
+    {
+        return buffer;
+    }
+
+    /**
+     * Returns the file which holds the data of this Packet, when it was received into a file.
+     * The file is deleted when this Packet is released, move it (e.g. using {@link File#renameTo(File)}) to keep it
+     * @return Nullable File
+     * @see FileBufferPool
+     */
+    public File getFile()
+    {
+        return buffer == null ? null : buffer.getFile();
+    }
+
+    /**
+     * Increases reference count of the Packet data. Has no effect when this Packet is backed by a byte array
+     * @return This Packet
+     */
+    public Packet retain()
+    {
+        if (buffer != null) buffer.retain();
+        return this;
+    }
+
+    /**
+     * Decreases reference count of the Packet data. A buffer backed Packet must not be used after its last release.
+     * Has no effect when this Packet is backed by a byte array
+     */
+    public void release()
+    {
+        if (buffer != null) buffer.release();
     }
 
     /**
@@ -116,17 +239,23 @@ public class Packet
      */
     public void write(final DataOutputStream out) throws IOException
     {
-        // Packet Type
-        out.writeByte(packetType.ordinal());
-
-        // Packet ID
-        out.writeShort(packetID);
+        write(out, PacketFraming.Legacy);
+    }
 
-        // Data Length
-        out.writeInt(dataLength);
+    /**
+     * Writes Packet into DataOutputStream
+     * @param out DataOutputStream to write into
+     * @param packetFraming Format of the header
+     * @throws IOException when unable to write to stream
+     */
+    public void write(final DataOutputStream out, final PacketFraming packetFraming) throws IOException
+    {
+        // Packet Type, Packet ID and Data Length
+        packetFraming.writeHeader(this, out);
 
         // Data
-        out.write(data);
+        if (data != null) out.write(data);
+        else buffer.writeTo(out);
     }
 
     /**
@@ -137,29 +266,116 @@ public class Packet
      */
     public static Packet fromStream(final DataInputStream in) throws IOException
     {
-        // Packet Type
-        final Packet.PacketType packetType = Packet.PacketType.fastValues[in.readByte()];
+        return fromStream(in, null, PacketFraming.Legacy);
+    }
 
-        // Packet ID
-        final short packetID = in.readShort();
+    /**
+     * Reads a Packet from raw input data into a buffer of given pool.
+     * The returned Packet has to be released, see {@link #release()}
+     * @param in DataInputStream to fromStream from
+     * @param bufferPool BufferPool to allocate the data buffer from
+     * @return Packet created from input
+     * @throws IOException when unable to read from stream
+     */
+    public static Packet fromStream(final DataInputStream in, final BufferPool bufferPool) throws IOException
+    {
+        return fromStream(in, bufferPool, PacketFraming.Legacy);
+    }
 
-        // Data Length
-        final int dataLength = in.readInt();
+    /**
+     * Reads a Packet from raw input data.
+     * When a BufferPool is given, the returned Packet has to be released, see {@link #release()}
+     * @param in DataInputStream to fromStream from
+     * @param bufferPool Nullable BufferPool to allocate the data buffer from
+     * @param packetFraming Format of the header
+     * @return Packet created from input
+     * @throws IOException when unable to read from stream
+     */
+    public static Packet fromStream(final DataInputStream in, final BufferPool bufferPool, final PacketFraming packetFraming) throws IOException
+    {
+        return fromStream(in, bufferPool, packetFraming, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads a Packet from raw input data.
+     * When a BufferPool is given, the returned Packet has to be released, see {@link #release()}
+     * @param in DataInputStream to fromStream from
+     * @param bufferPool Nullable BufferPool to allocate the data buffer from
+     * @param packetFraming Format of the header
+     * @param maxDataLength Maximum accepted data length, larger Packets are rejected before any memory is allocated
+     * @return Packet created from input
+     * @throws IOException when unable to read from stream or when the data length exceeds the maximum
+     */
+    public static Packet fromStream(final DataInputStream in, final BufferPool bufferPool, final PacketFraming packetFraming, final int maxDataLength) throws IOException
+    {
+        final Packet.PacketType packetType;
+        final short packetID;
+        final int codecID;
+        final int dataLength;
+        if (packetFraming == PacketFraming.Legacy)
+        {
+            // Packet Type and codec ID
+            final int type = in.readUnsignedByte();
+            packetType = PacketFraming.getLegacyPacketType(type);
+            codecID = PacketFraming.getLegacyCodecID(type);
+
+            // Packet ID
+            packetID = in.readShort();
+
+            // Data Length
+            dataLength = in.readInt();
+        }
+        else
+        {
+            // Packet Type and Packet ID
+            final int compactID = VarInt.readVarInt(in);
+            packetType = PacketFraming.getCompactPacketType(compactID);
+            packetID = PacketFraming.getCompactPacketID(compactID);
+            codecID = PacketFraming.getCompactCodecID(compactID);
+
+            // Data Length
+            dataLength = VarInt.readVarInt(in);
+        }
+        if (dataLength < 0) throw new IOException("Invalid data length: " + dataLength);
+        if (dataLength > maxDataLength) throw new IOException("Data length " + dataLength + " exceeds maximum of " + maxDataLength);
 
         // Data
-        final byte[] data = new byte[dataLength];
-        in.readFully(data);
+        if (bufferPool == null)
+        {
+            final byte[] data = new byte[dataLength];
+            in.readFully(data);
+
+            return new Packet(
+                    packetType,
+                    packetID,
+                    codecID,
+                    data
+            );
+        }
+
+        final PacketBuffer buffer = bufferPool.allocate(dataLength);
+        try
+        {
+            buffer.readFrom(in);
+        }
+        catch (final IOException e)
+        {
+            buffer.release();
+            throw e;
+        }
 
         return new Packet(
                 packetType,
                 packetID,
-                data
+                codecID,
+                buffer
         );
     }
 
     @Override
     public String toString()
     {
-        return "Type: [" + packetType + "] ID: [" + packetID + "] Data: [" + dataLength + " bytes]";
+        if (codecID == 0) return "Type: [" + packetType + "] ID: [" + packetID + "] Data: [" + dataLength + " bytes]";
+        return "Type: [" + packetType + "] ID: [" + packetID + "] Codec: [" + codecID + "] Data: [" + dataLength + " bytes]";
     }
 }
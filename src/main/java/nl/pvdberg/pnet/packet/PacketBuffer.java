@@ -0,0 +1,363 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference counted buffer which holds the data of a Packet.
+ * A new buffer has a reference count of 1. When the count reaches 0, the buffer is returned to its {@link BufferPool} (if any)
+ * and must not be used anymore.
+ */
+public class PacketBuffer
+{
+    private static final int COPY_BUFFER_SIZE = 4096;
+    /**
+     * Heap buffer per thread which direct buffers are copied through, so stream I/O does not allocate
+     */
+    private static final ThreadLocal<byte[]> copyBuffers = new ThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[COPY_BUFFER_SIZE];
+        }
+    };
+
+    private final BufferPool pool;
+    private final PacketBuffer parent;
+    private final File file;
+    private final ByteBuffer buffer;
+    private final AtomicInteger refCount;
+    private int length;
+
+    /**
+     * Creates a new buffer
+     * @param pool Nullable pool to return to when released
+     * @param buffer Backing buffer
+     */
+    PacketBuffer(final BufferPool pool, final ByteBuffer buffer)
+    {
+        this(pool, null, null, buffer);
+    }
+
+    private PacketBuffer(final BufferPool pool, final PacketBuffer parent, final File file, final ByteBuffer buffer)
+    {
+        this.pool = pool;
+        this.parent = parent;
+        this.file = file;
+        this.buffer = buffer;
+        refCount = new AtomicInteger();
+    }
+
+    /**
+     * Creates a new buffer which is not pooled
+     * @param length Length in bytes
+     * @param direct Whether to allocate a direct buffer
+     * @return PacketBuffer
+     */
+    public static PacketBuffer allocate(final int length, final boolean direct)
+    {
+        final PacketBuffer packetBuffer = new PacketBuffer(
+                null,
+                direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length)
+        );
+        packetBuffer.init(length);
+        return packetBuffer;
+    }
+
+    /**
+     * Creates a new buffer which is backed by given array. The array is not copied
+     * @param data Data
+     * @return PacketBuffer
+     */
+    public static PacketBuffer wrap(final byte[] data)
+    {
+        final PacketBuffer packetBuffer = new PacketBuffer(null, ByteBuffer.wrap(data));
+        packetBuffer.init(data.length);
+        return packetBuffer;
+    }
+
+    /**
+     * Creates a new buffer which is backed by a memory mapped file, so the data does not occupy the heap.
+     * The file is deleted when the buffer is released, unless it was moved (e.g. using {@link File#renameTo(File)}) beforehand
+     * @param file File to map, which is created or truncated to given length
+     * @param length Length in bytes
+     * @return PacketBuffer
+     * @throws IOException when unable to map the file
+     */
+    public static PacketBuffer map(final File file, final int length) throws IOException
+    {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        final ByteBuffer mapped;
+        try
+        {
+            randomAccessFile.setLength(length);
+            // The mapping stays valid after the file is closed
+            mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+
+        final PacketBuffer packetBuffer = new PacketBuffer(null, null, file, mapped);
+        packetBuffer.init(length);
+        return packetBuffer;
+    }
+
+    /**
+     * Creates a new buffer which shares the data of this buffer, but has its own position, limit and reference count.
+     * This buffer is retained until the duplicate is released
+     * @return PacketBuffer
+     */
+    public PacketBuffer duplicate()
+    {
+        retain();
+        final PacketBuffer duplicate = new PacketBuffer(null, this, null, buffer.duplicate());
+        duplicate.init(length);
+        return duplicate;
+    }
+
+    /**
+     * Resets this buffer for a new owner
+     * @param length Length in bytes
+     */
+    void init(final int length)
+    {
+        this.length = length;
+        buffer.clear();
+        buffer.limit(length);
+        refCount.set(1);
+    }
+
+    /**
+     * Returns backing buffer. The data is located between index 0 and {@link #getLength()}.
+     * Position and limit may be changed by the owner of this buffer, shared users should use absolute operations or a duplicate
+     * @return ByteBuffer
+     */
+    public ByteBuffer getBuffer()
+    {
+        return buffer;
+    }
+
+    /**
+     * Returns length of the data
+     * @return Length in bytes
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Returns whether this buffer is backed by an accessible byte array
+     * @return Has array
+     */
+    public boolean hasArray()
+    {
+        return buffer.hasArray();
+    }
+
+    /**
+     * Returns backing array. The data starts at {@link #arrayOffset()}
+     * @return Byte array
+     * @throws UnsupportedOperationException when this buffer is not backed by an array
+     */
+    public byte[] array()
+    {
+        return buffer.array();
+    }
+
+    /**
+     * Returns offset of the data in the backing array
+     * @return Offset
+     */
+    public int arrayOffset()
+    {
+        return buffer.arrayOffset();
+    }
+
+    /**
+     * Returns the file which backs this buffer
+     * @return Nullable File, see {@link #map(File, int)}
+     */
+    public File getFile()
+    {
+        return parent == null ? file : parent.getFile();
+    }
+
+    /**
+     * Returns whether this buffer is returned to a pool when released
+     * @return Pooled
+     */
+    public boolean isPooled()
+    {
+        return pool != null;
+    }
+
+    /**
+     * Returns current reference count
+     * @return Reference count
+     */
+    public int refCount()
+    {
+        return refCount.get();
+    }
+
+    /**
+     * Increases reference count by 1
+     * @return This buffer
+     * @throws IllegalStateException when this buffer is already released
+     */
+    public PacketBuffer retain()
+    {
+        while (true)
+        {
+            final int count = refCount.get();
+            if (count <= 0) throw new IllegalStateException("Buffer already released");
+            if (refCount.compareAndSet(count, count + 1)) return this;
+        }
+    }
+
+    /**
+     * Decreases reference count by 1. When the count reaches 0, the buffer is returned to its pool
+     * @return Whether the buffer was deallocated
+     * @throws IllegalStateException when this buffer is already released
+     */
+    public boolean release()
+    {
+        while (true)
+        {
+            final int count = refCount.get();
+            if (count <= 0) throw new IllegalStateException("Buffer already released");
+            if (refCount.compareAndSet(count, count - 1))
+            {
+                if (count != 1) return false;
+                if (parent != null) parent.release();
+                else if (pool != null) pool.recycle(this);
+                else if (file != null && file.exists() && !file.delete()) file.deleteOnExit();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Copies data into a new byte array
+     * @return Byte array
+     */
+    public byte[] toByteArray()
+    {
+        final byte[] data = new byte[length];
+        if (buffer.hasArray())
+        {
+            System.arraycopy(buffer.array(), buffer.arrayOffset(), data, 0, length);
+        }
+        else
+        {
+            final ByteBuffer duplicate = buffer.duplicate();
+            duplicate.clear();
+            duplicate.get(data);
+        }
+        return data;
+    }
+
+    /**
+     * Copies data into given buffer, starting at its position
+     * @param target ByteBuffer to copy into
+     */
+    public void copyTo(final ByteBuffer target)
+    {
+        if (buffer.hasArray())
+        {
+            target.put(buffer.array(), buffer.arrayOffset(), length);
+            return;
+        }
+
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.clear();
+        duplicate.limit(length);
+        target.put(duplicate);
+    }
+
+    /**
+     * Writes data into given stream
+     * @param out DataOutputStream to write into
+     * @throws IOException when unable to write to stream
+     */
+    void writeTo(final DataOutputStream out) throws IOException
+    {
+        if (buffer.hasArray())
+        {
+            out.write(buffer.array(), buffer.arrayOffset(), length);
+            return;
+        }
+
+        // Direct buffers have to be copied through the heap
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.clear();
+        duplicate.limit(length);
+        final byte[] copyBuffer = copyBuffers.get();
+        while (duplicate.hasRemaining())
+        {
+            final int chunk = Math.min(copyBuffer.length, duplicate.remaining());
+            duplicate.get(copyBuffer, 0, chunk);
+            out.write(copyBuffer, 0, chunk);
+        }
+    }
+
+    /**
+     * Fills this buffer with data from given stream
+     * @param in DataInputStream to read from
+     * @throws IOException when unable to read from stream
+     */
+    void readFrom(final DataInputStream in) throws IOException
+    {
+        if (buffer.hasArray())
+        {
+            in.readFully(buffer.array(), buffer.arrayOffset(), length);
+            return;
+        }
+
+        // Direct buffers have to be filled through the heap
+        buffer.clear();
+        buffer.limit(length);
+        final byte[] copyBuffer = copyBuffers.get();
+        while (buffer.hasRemaining())
+        {
+            final int chunk = Math.min(copyBuffer.length, buffer.remaining());
+            in.readFully(copyBuffer, 0, chunk);
+            buffer.put(copyBuffer, 0, chunk);
+        }
+        buffer.flip();
+    }
+}
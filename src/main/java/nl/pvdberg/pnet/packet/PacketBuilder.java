@@ -28,12 +28,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 public class PacketBuilder
 {
     private final Logger logger = LoggerFactory.getLogger(PacketBuilder.class);
 
-    private final ByteArrayOutputStream byteArrayOutputStream;
+    private final BufferOutputStream byteArrayOutputStream;
     private final DataOutputStream dataOutputStream;
 
     private final Packet.PacketType packetType;
@@ -46,7 +47,7 @@ public class PacketBuilder
      */
     public PacketBuilder(final Packet.PacketType packetType)
     {
-        byteArrayOutputStream = new ByteArrayOutputStream();
+        byteArrayOutputStream = new BufferOutputStream();
         dataOutputStream = new DataOutputStream(byteArrayOutputStream);
         isBuilt = false;
 
@@ -246,6 +247,121 @@ public class PacketBuilder
         return this;
     }
 
+    /**
+     * Adds an unsigned integer using 1 to 5 bytes, see {@link VarInt}
+     * @param i Unsigned integer
+     * @throws IllegalStateException see {@link #checkBuilt()}
+     */
+    public synchronized PacketBuilder withVarInt(final int i)
+    {
+        checkBuilt();
+        try
+        {
+            VarInt.writeVarInt(dataOutputStream, i);
+        }
+        catch (final IOException e)
+        {
+            logger.error("Unable to add variable length integer: {} : {}", e.getClass(), e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * Adds a zigzag encoded integer using 1 to 5 bytes, see {@link VarInt}
+     * @param i Integer
+     * @throws IllegalStateException see {@link #checkBuilt()}
+     */
+    public synchronized PacketBuilder withSignedVarInt(final int i)
+    {
+        checkBuilt();
+        try
+        {
+            VarInt.writeVarInt(dataOutputStream, VarInt.encodeZigZag(i));
+        }
+        catch (final IOException e)
+        {
+            logger.error("Unable to add variable length integer: {} : {}", e.getClass(), e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * Adds an unsigned long using 1 to 10 bytes, see {@link VarInt}
+     * @param l Unsigned long
+     * @throws IllegalStateException see {@link #checkBuilt()}
+     */
+    public synchronized PacketBuilder withVarLong(final long l)
+    {
+        checkBuilt();
+        try
+        {
+            VarInt.writeVarLong(dataOutputStream, l);
+        }
+        catch (final IOException e)
+        {
+            logger.error("Unable to add variable length long: {} : {}", e.getClass(), e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * Adds a zigzag encoded long using 1 to 10 bytes, see {@link VarInt}
+     * @param l Long
+     * @throws IllegalStateException see {@link #checkBuilt()}
+     */
+    public synchronized PacketBuilder withSignedVarLong(final long l)
+    {
+        checkBuilt();
+        try
+        {
+            VarInt.writeVarLong(dataOutputStream, VarInt.encodeZigZag(l));
+        }
+        catch (final IOException e)
+        {
+            logger.error("Unable to add variable length long: {} : {}", e.getClass(), e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * Adds byte array with a variable length prefix instead of a 4 byte length
+     * @param b Byte array
+     * @throws IllegalStateException see {@link #checkBuilt()}
+     */
+    public synchronized PacketBuilder withCompactBytes(final byte[] b)
+    {
+        checkBuilt();
+        try
+        {
+            VarInt.writeVarInt(dataOutputStream, b.length);
+            dataOutputStream.write(b);
+        }
+        catch (final IOException e)
+        {
+            logger.error("Unable to add bytes: {} : {}", e.getClass(), e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * Adds a String with a variable length prefix instead of a 4 byte length
+     * @param s UTF-8 String
+     * @throws IllegalStateException see {@link #checkBuilt()}
+     */
+    public synchronized PacketBuilder withCompactString(final String s)
+    {
+        try
+        {
+            withCompactBytes(s.getBytes("utf-8"));
+        }
+        catch (final UnsupportedEncodingException e)
+        {
+            logger.error("UTF-8 encoding is not supported");
+        }
+
+        return this;
+    }
+
     /**
      * Returns current data as a byte array
      * @return Byte array
@@ -261,6 +377,38 @@ public class PacketBuilder
      * @throws IllegalStateException see {@link #checkBuilt()}
      */
     public synchronized Packet build()
+    {
+        close();
+
+        return new Packet(
+                packetType,
+                packetID,
+                byteArrayOutputStream.toByteArray()
+        );
+    }
+
+    /**
+     * Builds Packet with given data, backed by a buffer of given pool.
+     * The returned Packet has to be released, see {@link Packet#release()}
+     * @param bufferPool BufferPool to allocate the data buffer from
+     * @return Packet
+     * @throws IllegalStateException see {@link #checkBuilt()}
+     */
+    public synchronized Packet build(final BufferPool bufferPool)
+    {
+        close();
+
+        final PacketBuffer buffer = bufferPool.allocate(byteArrayOutputStream.size());
+        byteArrayOutputStream.copyTo(buffer.getBuffer());
+
+        return new Packet(
+                packetType,
+                packetID,
+                buffer
+        );
+    }
+
+    private void close()
     {
         checkBuilt();
         isBuilt = true;
@@ -273,11 +421,17 @@ public class PacketBuilder
         {
             logger.error("Unable to build packet: {} : {}", e.getClass(), e.getMessage());
         }
+    }
 
-        return new Packet(
-                packetType,
-                packetID,
-                byteArrayOutputStream.toByteArray()
-        );
+    /**
+     * ByteArrayOutputStream which can copy its contents without creating an intermediate array
+     */
+    private static class BufferOutputStream extends ByteArrayOutputStream
+    {
+        private void copyTo(final ByteBuffer buffer)
+        {
+            buffer.put(buf, 0, count);
+            buffer.flip();
+        }
     }
 }
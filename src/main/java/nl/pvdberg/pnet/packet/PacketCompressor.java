@@ -33,7 +33,7 @@ import java.util.zip.GZIPOutputStream;
 
 public class PacketCompressor
 {
-    private static final int INFLATE_BUFFER_SIZE = 16;
+    private static final int INFLATE_BUFFER_SIZE = 4096;
 
     /**
      * Decompresses given Packet
@@ -46,7 +46,7 @@ public class PacketCompressor
         final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(packet.getData());
         final GZIPInputStream gzipInputStream = new GZIPInputStream(byteArrayInputStream);
 
-        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(packet.getDataLength());
 
         // Read from input until everything is inflated
         final byte buffer[] = new byte[INFLATE_BUFFER_SIZE];
@@ -68,6 +68,7 @@ public class PacketCompressor
      * @param packet Packet to compress
      * @return Compressed Packet
      * @throws IOException when unable to compress
+     * @see nl.pvdberg.pnet.client.util.CompressionClient CompressionClient, which only compresses Packets that benefit from it
      */
     public static Packet compress(final Packet packet) throws IOException
     {
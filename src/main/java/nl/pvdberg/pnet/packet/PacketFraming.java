@@ -0,0 +1,333 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Format of the header which is sent in front of the data of every Packet.
+ * Connections start in {@link #Legacy} framing. Each side offers to read its preferred framing (see {@link #NEGOTIATION_ID}),
+ * and the other side switches its writes to that framing when it prefers the same. Peers which do not support negotiation stay in {@link #Legacy}.
+ * <ul>
+ * <li>{@link #Legacy}: PacketType ordinal (1 byte), Packet ID (2 bytes) and data length (4 bytes)</li>
+ * <li>{@link #Compact}: Packet ID and PacketType packed into a variable length integer (1 to 3 bytes), followed by the data length as a
+ * variable length integer (1 to 5 bytes). Small Packets with a Packet ID below 64 only need a 2 byte header</li>
+ * </ul>
+ * The codec ID of an encoded Packet is stored in the upper bits of the PacketType byte (Legacy) or compact ID (Compact),
+ * so Packets without a codec have the same header as before codecs were added.
+ * @see VarInt
+ */
+public enum PacketFraming
+{
+    Legacy,
+    Compact;
+
+    /**
+     * Reserved Packet ID of framing negotiation Packets, which are always sent in {@link #Legacy} framing.
+     * A Request offers to read the framing in its data. A Reply accepts it: every Packet written after the Reply uses that framing.
+     * Clients handle these Packets themselves, they are never passed to listeners
+     */
+    public static final short NEGOTIATION_ID = Short.MIN_VALUE + 3;
+
+    /**
+     * Maximum size of a header in any framing
+     */
+    public static final int MAX_HEADER_SIZE = 8;
+
+    private static final int LEGACY_HEADER_SIZE = 7;
+    private static final int MAX_COMPACT_ID_SIZE = 3;
+
+    /**
+     * Packs Packet ID and PacketType into a single integer
+     * @param packetType PacketType
+     * @param packetID Packet ID
+     * @return Compact ID
+     */
+    private static int compactID(final Packet.PacketType packetType, final short packetID, final int codecID)
+    {
+        return (codecID << 17) | ((packetID & 0xFFFF) << 1) | packetType.ordinal();
+    }
+
+    /**
+     * Creates a framing negotiation Packet for this framing
+     * @param packetType Request to offer this framing, Reply to accept it
+     * @return Packet with ID {@link #NEGOTIATION_ID}
+     */
+    public Packet createNegotiationPacket(final Packet.PacketType packetType)
+    {
+        return new Packet(packetType, NEGOTIATION_ID, new byte[] { (byte) ordinal() });
+    }
+
+    /**
+     * Returns the framing of given negotiation Packet
+     * @param packet Packet with ID {@link #NEGOTIATION_ID}
+     * @return Offered or accepted PacketFraming
+     * @throws IOException when the Packet does not contain a known framing
+     */
+    public static PacketFraming readNegotiationPacket(final Packet packet) throws IOException
+    {
+        if (packet.getDataLength() != 1) throw new IOException("Invalid framing negotiation Packet: " + packet);
+        final int ordinal = packet.getDataView().get(0) & 0xFF;
+        if (ordinal >= values().length) throw new IOException("Unknown framing: " + ordinal);
+        return values()[ordinal];
+    }
+
+    /**
+     * Decides what to do with a received negotiation Packet. A Reply accepts a framing offered by this side,
+     * a Request offers a framing which is only accepted when this side prefers it as well
+     * @param packet Packet with ID {@link #NEGOTIATION_ID}
+     * @param preferred Framing preferred by this side
+     * @return For a Reply, the framing to read from now on. For a Request, the framing to accept and write from now on,
+     * or null when the offer is declined
+     * @throws IOException when the Packet does not contain a known framing
+     */
+    public static PacketFraming negotiate(final Packet packet, final PacketFraming preferred) throws IOException
+    {
+        final PacketFraming framing = readNegotiationPacket(packet);
+        if (packet.isReply()) return framing;
+
+        // Legacy is used until a switch, so it is never accepted explicitly
+        if (framing == Legacy || framing != preferred) return null;
+        return framing;
+    }
+
+    /**
+     * Returns PacketType of given compact ID
+     * @param compactID Packet ID, PacketType and codec ID as written by {@link #Compact}
+     * @return PacketType
+     * @throws IOException when the compact ID is invalid
+     */
+    public static Packet.PacketType getCompactPacketType(final int compactID) throws IOException
+    {
+        if ((compactID >>> 21) != 0) throw new IOException("Invalid compact ID: " + compactID);
+        return Packet.PacketType.fastValues[compactID & 1];
+    }
+
+    /**
+     * Returns codec ID of given compact ID
+     * @param compactID Packet ID, PacketType and codec ID as written by {@link #Compact}
+     * @return Codec ID
+     */
+    public static int getCompactCodecID(final int compactID)
+    {
+        return (compactID >>> 17) & Packet.MAX_CODEC_ID;
+    }
+
+    /**
+     * Returns PacketType of given type byte
+     * @param type Unsigned PacketType byte as written by {@link #Legacy}
+     * @return PacketType
+     * @throws IOException when the type is invalid
+     */
+    public static Packet.PacketType getLegacyPacketType(final int type) throws IOException
+    {
+        final int ordinal = type & 0x0F;
+        if (ordinal >= Packet.PacketType.fastValues.length) throw new IOException("Invalid Packet type: " + type);
+        return Packet.PacketType.fastValues[ordinal];
+    }
+
+    /**
+     * Returns codec ID of given type byte
+     * @param type Unsigned PacketType byte as written by {@link #Legacy}
+     * @return Codec ID
+     */
+    public static int getLegacyCodecID(final int type)
+    {
+        return (type >>> 4) & Packet.MAX_CODEC_ID;
+    }
+
+    private static int legacyType(final Packet.PacketType packetType, final int codecID)
+    {
+        return (codecID << 4) | packetType.ordinal();
+    }
+
+    /**
+     * Returns Packet ID of given compact ID
+     * @param compactID Packet ID and PacketType as written by {@link #Compact}
+     * @return Packet ID
+     */
+    public static short getCompactPacketID(final int compactID)
+    {
+        return (short) (compactID >>> 1);
+    }
+
+    /**
+     * Returns size of the header of given Packet
+     * @param packet Packet
+     * @return Size in bytes
+     */
+    public int getHeaderSize(final Packet packet)
+    {
+        return getHeaderSize(packet.getPacketType(), packet.getPacketID(), packet.getCodecID(), packet.getDataLength());
+    }
+
+    /**
+     * Returns size of a header with given fields
+     * @param packetType PacketType
+     * @param packetID Packet ID
+     * @param dataLength Data length
+     * @return Size in bytes
+     */
+    public int getHeaderSize(final Packet.PacketType packetType, final short packetID, final int dataLength)
+    {
+        return getHeaderSize(packetType, packetID, 0, dataLength);
+    }
+
+    /**
+     * Returns size of a header with given fields
+     * @param packetType PacketType
+     * @param packetID Packet ID
+     * @param codecID Codec ID
+     * @param dataLength Data length
+     * @return Size in bytes
+     */
+    public int getHeaderSize(final Packet.PacketType packetType, final short packetID, final int codecID, final int dataLength)
+    {
+        if (this == Legacy) return LEGACY_HEADER_SIZE;
+        return VarInt.size(compactID(packetType, packetID, codecID)) + VarInt.size(dataLength);
+    }
+
+    /**
+     * Writes the header of given Packet
+     * @param packet Packet
+     * @param out DataOutputStream to write to
+     * @throws IOException when unable to write
+     */
+    public void writeHeader(final Packet packet, final DataOutputStream out) throws IOException
+    {
+        writeHeader(packet.getPacketType(), packet.getPacketID(), packet.getCodecID(), packet.getDataLength(), out);
+    }
+
+    /**
+     * Writes a header with given fields
+     * @param packetType PacketType
+     * @param packetID Packet ID
+     * @param dataLength Data length
+     * @param out DataOutputStream to write to
+     * @throws IOException when unable to write
+     */
+    public void writeHeader(final Packet.PacketType packetType, final short packetID, final int dataLength, final DataOutputStream out) throws IOException
+    {
+        writeHeader(packetType, packetID, 0, dataLength, out);
+    }
+
+    /**
+     * Writes a header with given fields
+     * @param packetType PacketType
+     * @param packetID Packet ID
+     * @param codecID Codec ID
+     * @param dataLength Data length
+     * @param out DataOutputStream to write to
+     * @throws IOException when unable to write
+     */
+    public void writeHeader(final Packet.PacketType packetType, final short packetID, final int codecID, final int dataLength, final DataOutputStream out) throws IOException
+    {
+        if (this == Legacy)
+        {
+            out.writeByte(legacyType(packetType, codecID));
+            out.writeShort(packetID);
+            out.writeInt(dataLength);
+            return;
+        }
+
+        VarInt.writeVarInt(out, compactID(packetType, packetID, codecID));
+        VarInt.writeVarInt(out, dataLength);
+    }
+
+    /**
+     * Writes the header of given Packet
+     * @param packet Packet
+     * @param out ByteBuffer to write to
+     */
+    public void writeHeader(final Packet packet, final ByteBuffer out)
+    {
+        writeHeader(packet.getPacketType(), packet.getPacketID(), packet.getCodecID(), packet.getDataLength(), out);
+    }
+
+    /**
+     * Writes a header with given fields
+     * @param packetType PacketType
+     * @param packetID Packet ID
+     * @param dataLength Data length
+     * @param out ByteBuffer to write to
+     */
+    public void writeHeader(final Packet.PacketType packetType, final short packetID, final int dataLength, final ByteBuffer out)
+    {
+        writeHeader(packetType, packetID, 0, dataLength, out);
+    }
+
+    /**
+     * Writes a header with given fields
+     * @param packetType PacketType
+     * @param packetID Packet ID
+     * @param codecID Codec ID
+     * @param dataLength Data length
+     * @param out ByteBuffer to write to
+     */
+    public void writeHeader(final Packet.PacketType packetType, final short packetID, final int codecID, final int dataLength, final ByteBuffer out)
+    {
+        if (this == Legacy)
+        {
+            out.put((byte) legacyType(packetType, codecID));
+            out.putShort(packetID);
+            out.putInt(dataLength);
+            return;
+        }
+
+        VarInt.writeVarInt(out, compactID(packetType, packetID, codecID));
+        VarInt.writeVarInt(out, dataLength);
+    }
+
+    /**
+     * Returns the length of the header at given location, if it is complete
+     * @param buffer ByteBuffer containing (part of) a header
+     * @param offset Absolute index of the first byte of the header
+     * @param length Amount of bytes available
+     * @return Header length in bytes, or -1 when the header is incomplete
+     * @throws IOException when the bytes are not a valid header
+     */
+    public int getHeaderLength(final ByteBuffer buffer, final int offset, final int length) throws IOException
+    {
+        if (this == Legacy) return length >= LEGACY_HEADER_SIZE ? LEGACY_HEADER_SIZE : -1;
+
+        final int idLength = getVarIntLength(buffer, offset, Math.min(length, MAX_COMPACT_ID_SIZE), MAX_COMPACT_ID_SIZE);
+        if (idLength < 0) return -1;
+        final int lengthLength = getVarIntLength(buffer, offset + idLength, Math.min(length - idLength, VarInt.MAX_VAR_INT_SIZE), VarInt.MAX_VAR_INT_SIZE);
+        if (lengthLength < 0) return -1;
+        return idLength + lengthLength;
+    }
+
+    private static int getVarIntLength(final ByteBuffer buffer, final int offset, final int available, final int maxLength) throws IOException
+    {
+        for (int i = 0; i < available; i++)
+        {
+            if ((buffer.get(offset + i) & 0x80) == 0) return i + 1;
+        }
+        if (available >= maxLength) throw new IOException("Malformed header");
+        return -1;
+    }
+}
@@ -147,6 +147,71 @@ public class PacketReader
         return dataInputStream.readShort();
     }
 
+    /**
+     * Reads an unsigned variable length integer, see {@link VarInt}
+     * @return Unsigned integer
+     * @throws IOException when unable to read
+     */
+    public synchronized int readVarInt() throws IOException
+    {
+        return VarInt.readVarInt(dataInputStream);
+    }
+
+    /**
+     * Reads a zigzag encoded variable length integer, see {@link VarInt}
+     * @return Integer
+     * @throws IOException when unable to read
+     */
+    public synchronized int readSignedVarInt() throws IOException
+    {
+        return VarInt.decodeZigZag(VarInt.readVarInt(dataInputStream));
+    }
+
+    /**
+     * Reads an unsigned variable length long, see {@link VarInt}
+     * @return Unsigned long
+     * @throws IOException when unable to read
+     */
+    public synchronized long readVarLong() throws IOException
+    {
+        return VarInt.readVarLong(dataInputStream);
+    }
+
+    /**
+     * Reads a zigzag encoded variable length long, see {@link VarInt}
+     * @return Long
+     * @throws IOException when unable to read
+     */
+    public synchronized long readSignedVarLong() throws IOException
+    {
+        return VarInt.decodeZigZag(VarInt.readVarLong(dataInputStream));
+    }
+
+    /**
+     * Reads byte array with a variable length prefix
+     * @return Bytes
+     * @throws IOException when not enough data is available
+     */
+    public synchronized byte[] readCompactBytes() throws IOException
+    {
+        final int dataLength = VarInt.readVarInt(dataInputStream);
+        if (dataLength < 0 || dataLength > dataInputStream.available()) throw new IOException("Not enough data available");
+
+        final byte[] data = new byte[dataLength];
+        dataInputStream.readFully(data);
+        return data;
+    }
+
+    /**
+     * Reads a String with a variable length prefix
+     * @return UTF-8 String
+     * @throws IOException when unable to read
+     */
+    public synchronized String readCompactString() throws IOException
+    {
+        return new String(readCompactBytes(), "utf-8");
+    }
+
     /**
      * Returns internal Packet
      * @return Packet
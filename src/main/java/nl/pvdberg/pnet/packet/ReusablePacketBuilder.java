@@ -0,0 +1,474 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Unsynchronized alternative to {@link PacketBuilder} which writes directly into a growable buffer.
+ * The builder can be reused for any amount of Packets by calling {@link #reset()}, so a sending thread can keep a single instance.
+ * Produces the same data layout as {@link PacketBuilder}. Not thread safe
+ */
+public class ReusablePacketBuilder
+{
+    public static final int DEFAULT_INITIAL_CAPACITY = 256;
+
+    private final BufferPool bufferPool;
+    private final boolean direct;
+
+    private PacketBuffer packetBuffer;
+    private ByteBuffer buffer;
+
+    private Packet.PacketType packetType;
+    private short packetID;
+
+    /**
+     * Creates a new builder with a heap buffer
+     * @param packetType Type of built Packets
+     */
+    public ReusablePacketBuilder(final Packet.PacketType packetType)
+    {
+        this(packetType, DEFAULT_INITIAL_CAPACITY, false);
+    }
+
+    /**
+     * Creates a new builder with an unpooled buffer
+     * @param packetType Type of built Packets
+     * @param initialCapacity Initial capacity of the buffer in bytes
+     * @param direct Whether to allocate a direct buffer
+     */
+    public ReusablePacketBuilder(final Packet.PacketType packetType, final int initialCapacity, final boolean direct)
+    {
+        this(packetType, initialCapacity, direct, null);
+    }
+
+    /**
+     * Creates a new builder which allocates its buffer from given pool. Call {@link #release()} to return the buffer
+     * @param packetType Type of built Packets
+     * @param bufferPool BufferPool to allocate from
+     */
+    public ReusablePacketBuilder(final Packet.PacketType packetType, final BufferPool bufferPool)
+    {
+        this(packetType, DEFAULT_INITIAL_CAPACITY, bufferPool.isDirect(), bufferPool);
+    }
+
+    private ReusablePacketBuilder(final Packet.PacketType packetType, final int initialCapacity, final boolean direct, final BufferPool bufferPool)
+    {
+        if (initialCapacity < 1) throw new IllegalArgumentException("Initial capacity must be positive");
+
+        this.bufferPool = bufferPool;
+        this.direct = direct;
+        this.packetType = packetType;
+
+        packetBuffer = allocate(initialCapacity);
+        buffer = packetBuffer.getBuffer();
+    }
+
+    private PacketBuffer allocate(final int capacity)
+    {
+        final PacketBuffer allocated = bufferPool == null ?
+                PacketBuffer.allocate(capacity, direct) :
+                bufferPool.allocate(capacity);
+        // Use the full capacity of pooled size classes
+        allocated.getBuffer().clear();
+        return allocated;
+    }
+
+    /**
+     * Makes sure given amount of bytes can be written, growing the buffer when needed
+     * @param bytes Amount of bytes
+     * @throws IllegalStateException see {@link #checkReleased()}
+     */
+    private void ensureWritable(final int bytes)
+    {
+        checkReleased();
+        if (buffer.remaining() >= bytes) return;
+
+        final int required = buffer.position() + bytes;
+        if (required < 0) throw new IllegalStateException("Packet too large");
+        final int capacity = Math.max(required, buffer.capacity() << 1);
+
+        final PacketBuffer grown = allocate(capacity);
+        final ByteBuffer grownBuffer = grown.getBuffer();
+        buffer.flip();
+        grownBuffer.put(buffer);
+
+        packetBuffer.release();
+        packetBuffer = grown;
+        buffer = grownBuffer;
+    }
+
+    /**
+     * @throws IllegalStateException when the buffer is released
+     */
+    private void checkReleased()
+    {
+        if (packetBuffer == null) throw new IllegalStateException("Builder already released");
+    }
+
+    /**
+     * Clears all data and the Packet ID, so a new Packet of the same type can be built
+     * @return This builder
+     * @throws IllegalStateException see {@link #checkReleased()}
+     */
+    public ReusablePacketBuilder reset()
+    {
+        checkReleased();
+        buffer.clear();
+        packetID = 0;
+        return this;
+    }
+
+    /**
+     * Clears all data and the Packet ID, so a new Packet of given type can be built
+     * @param packetType Type of the next Packet
+     * @return This builder
+     * @throws IllegalStateException see {@link #checkReleased()}
+     */
+    public ReusablePacketBuilder reset(final Packet.PacketType packetType)
+    {
+        reset();
+        this.packetType = packetType;
+        return this;
+    }
+
+    /**
+     * Adds a custom Packet ID
+     * @param packetID Packet ID
+     */
+    public ReusablePacketBuilder withID(final short packetID)
+    {
+        this.packetID = packetID;
+        return this;
+    }
+
+    /**
+     * Adds a byte
+     * @param b Byte
+     */
+    public ReusablePacketBuilder withByte(final byte b)
+    {
+        ensureWritable(1);
+        buffer.put(b);
+        return this;
+    }
+
+    /**
+     * Adds byte array
+     * @param b Byte array
+     */
+    public ReusablePacketBuilder withBytes(final byte[] b)
+    {
+        return withBytes(b, 0, b.length);
+    }
+
+    /**
+     * Adds part of a byte array
+     * @param b Byte array
+     * @param offset Offset of the first byte
+     * @param length Amount of bytes
+     */
+    public ReusablePacketBuilder withBytes(final byte[] b, final int offset, final int length)
+    {
+        ensureWritable(4 + length);
+        buffer.putInt(length);
+        buffer.put(b, offset, length);
+        return this;
+    }
+
+    /**
+     * Adds an integer
+     * @param i Integer
+     */
+    public ReusablePacketBuilder withInt(final int i)
+    {
+        ensureWritable(4);
+        buffer.putInt(i);
+        return this;
+    }
+
+    /**
+     * Adds a String
+     * @param s UTF-8 String
+     */
+    public ReusablePacketBuilder withString(final String s)
+    {
+        final int encodedLength = utf8Length(s);
+        ensureWritable(4 + encodedLength);
+        buffer.putInt(encodedLength);
+        putUtf8(s);
+        return this;
+    }
+
+    /**
+     * Adds a String with a variable length prefix instead of a 4 byte length
+     * @param s UTF-8 String
+     */
+    public ReusablePacketBuilder withCompactString(final String s)
+    {
+        final int encodedLength = utf8Length(s);
+        ensureWritable(VarInt.size(encodedLength) + encodedLength);
+        VarInt.writeVarInt(buffer, encodedLength);
+        putUtf8(s);
+        return this;
+    }
+
+    /**
+     * Calculates the encoded length of given String, so it can be encoded without an intermediate array
+     * @param s String
+     * @return UTF-8 length in bytes
+     */
+    private static int utf8Length(final String s)
+    {
+        final int length = s.length();
+        int encodedLength = 0;
+        for (int i = 0; i < length; i++)
+        {
+            final char c = s.charAt(i);
+            if (c < 0x80) encodedLength++;
+            else if (c < 0x800) encodedLength += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1)))
+            {
+                encodedLength += 4;
+                i++;
+            }
+            else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) encodedLength++;
+            else encodedLength += 3;
+        }
+        return encodedLength;
+    }
+
+    /**
+     * Encodes given String into the buffer. Space has to be ensured beforehand, see {@link #utf8Length(String)}
+     * @param s String
+     */
+    private void putUtf8(final String s)
+    {
+        final int length = s.length();
+        for (int i = 0; i < length; i++)
+        {
+            final char c = s.charAt(i);
+            if (c < 0x80)
+            {
+                buffer.put((byte) c);
+            }
+            else if (c < 0x800)
+            {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1)))
+            {
+                final int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            }
+            else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+            {
+                // Unpaired surrogate, replaced like String#getBytes does
+                buffer.put((byte) '?');
+            }
+            else
+            {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Adds an unsigned integer using 1 to 5 bytes, see {@link VarInt}
+     * @param i Unsigned integer
+     */
+    public ReusablePacketBuilder withVarInt(final int i)
+    {
+        ensureWritable(VarInt.MAX_VAR_INT_SIZE);
+        VarInt.writeVarInt(buffer, i);
+        return this;
+    }
+
+    /**
+     * Adds a zigzag encoded integer using 1 to 5 bytes, see {@link VarInt}
+     * @param i Integer
+     */
+    public ReusablePacketBuilder withSignedVarInt(final int i)
+    {
+        return withVarInt(VarInt.encodeZigZag(i));
+    }
+
+    /**
+     * Adds an unsigned long using 1 to 10 bytes, see {@link VarInt}
+     * @param l Unsigned long
+     */
+    public ReusablePacketBuilder withVarLong(final long l)
+    {
+        ensureWritable(VarInt.MAX_VAR_LONG_SIZE);
+        VarInt.writeVarLong(buffer, l);
+        return this;
+    }
+
+    /**
+     * Adds a zigzag encoded long using 1 to 10 bytes, see {@link VarInt}
+     * @param l Long
+     */
+    public ReusablePacketBuilder withSignedVarLong(final long l)
+    {
+        return withVarLong(VarInt.encodeZigZag(l));
+    }
+
+    /**
+     * Adds byte array with a variable length prefix instead of a 4 byte length
+     * @param b Byte array
+     */
+    public ReusablePacketBuilder withCompactBytes(final byte[] b)
+    {
+        ensureWritable(VarInt.size(b.length) + b.length);
+        VarInt.writeVarInt(buffer, b.length);
+        buffer.put(b);
+        return this;
+    }
+
+    /**
+     * Adds a boolean
+     * @param b Boolean
+     */
+    public ReusablePacketBuilder withBoolean(final boolean b)
+    {
+        ensureWritable(1);
+        buffer.put(b ? (byte) 1 : (byte) 0);
+        return this;
+    }
+
+    /**
+     * Adds a float
+     * @param f Float
+     */
+    public ReusablePacketBuilder withFloat(final float f)
+    {
+        ensureWritable(4);
+        buffer.putFloat(f);
+        return this;
+    }
+
+    /**
+     * Adds a double
+     * @param d Double
+     */
+    public ReusablePacketBuilder withDouble(final double d)
+    {
+        ensureWritable(8);
+        buffer.putDouble(d);
+        return this;
+    }
+
+    /**
+     * Adds a long
+     * @param l Long
+     */
+    public ReusablePacketBuilder withLong(final long l)
+    {
+        ensureWritable(8);
+        buffer.putLong(l);
+        return this;
+    }
+
+    /**
+     * Adds a short
+     * @param s Short
+     */
+    public ReusablePacketBuilder withShort(final short s)
+    {
+        ensureWritable(2);
+        buffer.putShort(s);
+        return this;
+    }
+
+    /**
+     * Returns amount of bytes written since the last reset
+     * @return Size in bytes
+     */
+    public int size()
+    {
+        return buffer.position();
+    }
+
+    /**
+     * Returns current data as a byte array
+     * @return Byte array
+     * @throws IllegalStateException see {@link #checkReleased()}
+     */
+    public byte[] getBytes()
+    {
+        checkReleased();
+        final byte[] data = new byte[buffer.position()];
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.flip();
+        duplicate.get(data);
+        return data;
+    }
+
+    /**
+     * Builds Packet with current data. The builder keeps its data until {@link #reset()} is called
+     * @return Packet
+     * @throws IllegalStateException see {@link #checkReleased()}
+     */
+    public Packet build()
+    {
+        return new Packet(packetType, packetID, getBytes());
+    }
+
+    /**
+     * Builds Packet with current data, backed by a buffer of given pool.
+     * The returned Packet has to be released, see {@link Packet#release()}
+     * @param bufferPool BufferPool to allocate the data buffer from
+     * @return Packet
+     * @throws IllegalStateException see {@link #checkReleased()}
+     */
+    public Packet build(final BufferPool bufferPool)
+    {
+        checkReleased();
+        final PacketBuffer data = bufferPool.allocate(buffer.position());
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.flip();
+        data.getBuffer().put(duplicate);
+        data.getBuffer().flip();
+        return new Packet(packetType, packetID, data);
+    }
+
+    /**
+     * Releases the buffer of this builder. The builder can not be used afterwards
+     * @throws IllegalStateException see {@link #checkReleased()}
+     */
+    public void release()
+    {
+        checkReleased();
+        packetBuffer.release();
+        packetBuffer = null;
+        buffer = null;
+    }
+}
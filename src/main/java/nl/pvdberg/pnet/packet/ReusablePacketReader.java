@@ -0,0 +1,449 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Unsynchronized alternative to {@link PacketReader} which reads directly from the data of a Packet using a cursor.
+ * No objects are created while reading, except for the values of {@link #readBytes()}, {@link #readBytesView()} and {@link #readString()}.
+ * The reader can be moved to another Packet by calling {@link #reset(Packet)}. Not thread safe
+ */
+public class ReusablePacketReader
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private Packet packet;
+
+    // Either array or buffer is used, depending on whether the data is accessible as an array
+    private byte[] array;
+    private int arrayOffset;
+    private ByteBuffer buffer;
+
+    private int length;
+    private int position;
+
+    /**
+     * Creates a new reader without a Packet. Call {@link #reset(Packet)} before reading
+     */
+    public ReusablePacketReader()
+    {
+    }
+
+    /**
+     * Creates a new reader for given Packet
+     * @param packet Packet to read
+     */
+    public ReusablePacketReader(final Packet packet)
+    {
+        reset(packet);
+    }
+
+    /**
+     * Moves this reader to the start of given Packet
+     * @param packet Packet to read
+     * @return This reader
+     */
+    public ReusablePacketReader reset(final Packet packet)
+    {
+        this.packet = packet;
+        length = packet.getDataLength();
+        position = 0;
+
+        final PacketBuffer packetBuffer = packet.getBuffer();
+        if (packetBuffer == null)
+        {
+            array = packet.getData();
+            arrayOffset = 0;
+            buffer = null;
+        }
+        else if (packetBuffer.hasArray())
+        {
+            array = packetBuffer.array();
+            arrayOffset = packetBuffer.arrayOffset();
+            buffer = null;
+        }
+        else
+        {
+            array = null;
+            buffer = packetBuffer.getBuffer();
+        }
+        return this;
+    }
+
+    /**
+     * Returns the Packet which is read
+     * @return Nullable Packet
+     */
+    public Packet getPacket()
+    {
+        return packet;
+    }
+
+    /**
+     * See {@link Packet#getPacketID()}
+     */
+    public short getPacketID()
+    {
+        return packet.getPacketID();
+    }
+
+    /**
+     * Returns current position in the data
+     * @return Position in bytes
+     */
+    public int position()
+    {
+        return position;
+    }
+
+    /**
+     * Moves to given position in the data
+     * @param position Position in bytes
+     * @return This reader
+     * @throws IndexOutOfBoundsException when position is outside of the data
+     */
+    public ReusablePacketReader position(final int position)
+    {
+        if (position < 0 || position > length) throw new IndexOutOfBoundsException("Position " + position + " outside of data");
+        this.position = position;
+        return this;
+    }
+
+    /**
+     * Returns amount of bytes which are left to read
+     * @return Remaining bytes
+     */
+    public int remaining()
+    {
+        return length - position;
+    }
+
+    /**
+     * Skips given amount of bytes
+     * @param bytes Amount of bytes
+     * @return This reader
+     * @throws IOException when not enough data is available
+     */
+    public ReusablePacketReader skip(final int bytes) throws IOException
+    {
+        if (bytes < 0) throw new IllegalArgumentException("Negative amount of bytes");
+        advance(bytes);
+        return this;
+    }
+
+    /**
+     * Moves the cursor forward
+     * @param bytes Amount of bytes to read
+     * @return Absolute index of the first byte
+     * @throws IOException when not enough data is available
+     */
+    private int advance(final int bytes) throws IOException
+    {
+        if (bytes > length - position) throw new IOException("Not enough data available");
+        final int index = position;
+        position += bytes;
+        return array == null ? index : arrayOffset + index;
+    }
+
+    private int getByte(final int index)
+    {
+        return array == null ? buffer.get(index) : array[index];
+    }
+
+    /**
+     * Reads a byte
+     * @return Byte
+     * @throws IOException when not enough data is available
+     */
+    public byte readByte() throws IOException
+    {
+        return (byte) getByte(advance(1));
+    }
+
+    /**
+     * Reads a boolean
+     * @return Boolean
+     * @throws IOException when not enough data is available
+     */
+    public boolean readBoolean() throws IOException
+    {
+        return getByte(advance(1)) != 0;
+    }
+
+    /**
+     * Reads a short
+     * @return Short
+     * @throws IOException when not enough data is available
+     */
+    public short readShort() throws IOException
+    {
+        final int index = advance(2);
+        if (array == null) return buffer.getShort(index);
+        return (short) ((array[index] << 8) | (array[index + 1] & 0xFF));
+    }
+
+    /**
+     * Reads an integer
+     * @return Integer
+     * @throws IOException when not enough data is available
+     */
+    public int readInt() throws IOException
+    {
+        final int index = advance(4);
+        if (array == null) return buffer.getInt(index);
+        return (array[index] << 24) |
+                ((array[index + 1] & 0xFF) << 16) |
+                ((array[index + 2] & 0xFF) << 8) |
+                (array[index + 3] & 0xFF);
+    }
+
+    /**
+     * Reads a long
+     * @return Long
+     * @throws IOException when not enough data is available
+     */
+    public long readLong() throws IOException
+    {
+        final int index = advance(8);
+        if (array == null) return buffer.getLong(index);
+        return ((long) array[index] << 56) |
+                ((long) (array[index + 1] & 0xFF) << 48) |
+                ((long) (array[index + 2] & 0xFF) << 40) |
+                ((long) (array[index + 3] & 0xFF) << 32) |
+                ((long) (array[index + 4] & 0xFF) << 24) |
+                ((array[index + 5] & 0xFF) << 16) |
+                ((array[index + 6] & 0xFF) << 8) |
+                (array[index + 7] & 0xFF);
+    }
+
+    /**
+     * Reads a float
+     * @return Float
+     * @throws IOException when not enough data is available
+     */
+    public float readFloat() throws IOException
+    {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    /**
+     * Reads a double
+     * @return Double
+     * @throws IOException when not enough data is available
+     */
+    public double readDouble() throws IOException
+    {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /**
+     * Reads an unsigned variable length integer, see {@link VarInt}
+     * @return Unsigned integer
+     * @throws IOException when not enough data is available or when the encoding is too long
+     */
+    public int readVarInt() throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            final int b = getByte(advance(1));
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /**
+     * Reads a zigzag encoded variable length integer, see {@link VarInt}
+     * @return Integer
+     * @throws IOException when not enough data is available or when the encoding is too long
+     */
+    public int readSignedVarInt() throws IOException
+    {
+        return VarInt.decodeZigZag(readVarInt());
+    }
+
+    /**
+     * Reads an unsigned variable length long, see {@link VarInt}
+     * @return Unsigned long
+     * @throws IOException when not enough data is available or when the encoding is too long
+     */
+    public long readVarLong() throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            final int b = getByte(advance(1));
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed variable length long");
+    }
+
+    /**
+     * Reads a zigzag encoded variable length long, see {@link VarInt}
+     * @return Long
+     * @throws IOException when not enough data is available or when the encoding is too long
+     */
+    public long readSignedVarLong() throws IOException
+    {
+        return VarInt.decodeZigZag(readVarLong());
+    }
+
+    /**
+     * Reads the length of a byte array and moves past it
+     * @return Length in bytes
+     * @throws IOException when not enough data is available
+     */
+    private int readBytesLength() throws IOException
+    {
+        return checkBytesLength(readInt());
+    }
+
+    /**
+     * Reads the variable length of a compact byte array and moves past it
+     * @return Length in bytes
+     * @throws IOException when not enough data is available
+     */
+    private int readCompactBytesLength() throws IOException
+    {
+        return checkBytesLength(readVarInt());
+    }
+
+    private int checkBytesLength(final int dataLength) throws IOException
+    {
+        if (dataLength < 0 || dataLength > remaining()) throw new IOException("Not enough data available");
+        return dataLength;
+    }
+
+    /**
+     * Reads byte array
+     * @return Bytes
+     * @throws IOException when not enough data is available
+     */
+    public byte[] readBytes() throws IOException
+    {
+        final byte[] data = new byte[readBytesLength()];
+        readBytes(data, 0, data.length);
+        return data;
+    }
+
+    /**
+     * Reads byte array with a variable length prefix
+     * @return Bytes
+     * @throws IOException when not enough data is available
+     */
+    public byte[] readCompactBytes() throws IOException
+    {
+        final byte[] data = new byte[readCompactBytesLength()];
+        readBytes(data, 0, data.length);
+        return data;
+    }
+
+    /**
+     * Reads byte array into given array
+     * @param target Array to copy the bytes into
+     * @return Amount of bytes read
+     * @throws IOException when not enough data is available
+     * @throws IndexOutOfBoundsException when the bytes do not fit in the target array
+     */
+    public int readBytes(final byte[] target) throws IOException
+    {
+        final int dataLength = readBytesLength();
+        if (dataLength > target.length)
+        {
+            position -= 4;
+            throw new IndexOutOfBoundsException("Target array too small: " + dataLength + " bytes required");
+        }
+        readBytes(target, 0, dataLength);
+        return dataLength;
+    }
+
+    private void readBytes(final byte[] target, final int offset, final int dataLength) throws IOException
+    {
+        final int index = advance(dataLength);
+        if (array != null)
+        {
+            System.arraycopy(array, index, target, offset, dataLength);
+            return;
+        }
+
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.clear();
+        duplicate.position(index);
+        duplicate.get(target, offset, dataLength);
+    }
+
+    /**
+     * Reads byte array as a read only view of the Packet data, without copying.
+     * The view is only valid as long as the Packet is not released
+     * @return ByteBuffer containing the bytes between its position and limit
+     * @throws IOException when not enough data is available
+     */
+    public ByteBuffer readBytesView() throws IOException
+    {
+        final int dataLength = readBytesLength();
+        final int index = advance(dataLength);
+        if (array != null) return ByteBuffer.wrap(array, index, dataLength).slice().asReadOnlyBuffer();
+
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.clear();
+        duplicate.position(index);
+        duplicate.limit(index + dataLength);
+        return duplicate.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Reads a String
+     * @return UTF-8 String
+     * @throws IOException when not enough data is available
+     */
+    public String readString() throws IOException
+    {
+        return readString(readBytesLength());
+    }
+
+    /**
+     * Reads a String with a variable length prefix
+     * @return UTF-8 String
+     * @throws IOException when not enough data is available
+     */
+    public String readCompactString() throws IOException
+    {
+        return readString(readCompactBytesLength());
+    }
+
+    private String readString(final int dataLength) throws IOException
+    {
+        if (array != null) return new String(array, advance(dataLength), dataLength, UTF_8);
+
+        final byte[] data = new byte[dataLength];
+        readBytes(data, 0, dataLength);
+        return new String(data, UTF_8);
+    }
+}
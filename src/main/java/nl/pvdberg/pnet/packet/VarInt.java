@@ -0,0 +1,231 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length encoding of integers. Every byte holds 7 bits of the value, least significant group first,
+ * the most significant bit of a byte is set when more bytes follow.
+ * Small values take less bytes. Signed values should be zigzag encoded first, so small negative values stay small
+ */
+public class VarInt
+{
+    public static final int MAX_VAR_INT_SIZE = 5;
+    public static final int MAX_VAR_LONG_SIZE = 10;
+
+    private VarInt()
+    {
+    }
+
+    /**
+     * Maps signed integers to unsigned integers, so values close to 0 have a small encoding
+     * @param i Integer
+     * @return ZigZag encoded integer
+     */
+    public static int encodeZigZag(final int i)
+    {
+        return (i << 1) ^ (i >> 31);
+    }
+
+    /**
+     * Maps signed longs to unsigned longs, so values close to 0 have a small encoding
+     * @param l Long
+     * @return ZigZag encoded long
+     */
+    public static long encodeZigZag(final long l)
+    {
+        return (l << 1) ^ (l >> 63);
+    }
+
+    /**
+     * Reverses {@link #encodeZigZag(int)}
+     * @param i ZigZag encoded integer
+     * @return Integer
+     */
+    public static int decodeZigZag(final int i)
+    {
+        return (i >>> 1) ^ -(i & 1);
+    }
+
+    /**
+     * Reverses {@link #encodeZigZag(long)}
+     * @param l ZigZag encoded long
+     * @return Long
+     */
+    public static long decodeZigZag(final long l)
+    {
+        return (l >>> 1) ^ -(l & 1);
+    }
+
+    /**
+     * Returns amount of bytes needed to encode given value
+     * @param i Unsigned integer
+     * @return Size in bytes
+     */
+    public static int size(final int i)
+    {
+        if ((i & (~0 << 7)) == 0) return 1;
+        if ((i & (~0 << 14)) == 0) return 2;
+        if ((i & (~0 << 21)) == 0) return 3;
+        if ((i & (~0 << 28)) == 0) return 4;
+        return 5;
+    }
+
+    /**
+     * Returns amount of bytes needed to encode given value
+     * @param l Unsigned long
+     * @return Size in bytes
+     */
+    public static int size(long l)
+    {
+        int size = 1;
+        while ((l & ~0x7FL) != 0)
+        {
+            l >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Writes an unsigned integer
+     * @param out DataOutput to write to
+     * @param i Unsigned integer
+     * @throws IOException when unable to write
+     */
+    public static void writeVarInt(final DataOutput out, int i) throws IOException
+    {
+        while ((i & ~0x7F) != 0)
+        {
+            out.writeByte((i & 0x7F) | 0x80);
+            i >>>= 7;
+        }
+        out.writeByte(i);
+    }
+
+    /**
+     * Writes an unsigned long
+     * @param out DataOutput to write to
+     * @param l Unsigned long
+     * @throws IOException when unable to write
+     */
+    public static void writeVarLong(final DataOutput out, long l) throws IOException
+    {
+        while ((l & ~0x7FL) != 0)
+        {
+            out.writeByte((int) (l & 0x7F) | 0x80);
+            l >>>= 7;
+        }
+        out.writeByte((int) l);
+    }
+
+    /**
+     * Reads an unsigned integer
+     * @param in DataInput to read from
+     * @return Unsigned integer
+     * @throws IOException when unable to read or when the encoding is too long
+     */
+    public static int readVarInt(final DataInput in) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            final byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /**
+     * Reads an unsigned long
+     * @param in DataInput to read from
+     * @return Unsigned long
+     * @throws IOException when unable to read or when the encoding is too long
+     */
+    public static long readVarLong(final DataInput in) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            final byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed variable length long");
+    }
+
+    /**
+     * Writes an unsigned integer
+     * @param out ByteBuffer to write to
+     * @param i Unsigned integer
+     */
+    public static void writeVarInt(final ByteBuffer out, int i)
+    {
+        while ((i & ~0x7F) != 0)
+        {
+            out.put((byte) ((i & 0x7F) | 0x80));
+            i >>>= 7;
+        }
+        out.put((byte) i);
+    }
+
+    /**
+     * Writes an unsigned long
+     * @param out ByteBuffer to write to
+     * @param l Unsigned long
+     */
+    public static void writeVarLong(final ByteBuffer out, long l)
+    {
+        while ((l & ~0x7FL) != 0)
+        {
+            out.put((byte) ((l & 0x7F) | 0x80));
+            l >>>= 7;
+        }
+        out.put((byte) l);
+    }
+
+    /**
+     * Reads an unsigned integer
+     * @param in ByteBuffer to read from
+     * @return Unsigned integer
+     * @throws IOException when the encoding is too long
+     */
+    public static int readVarInt(final ByteBuffer in) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            final byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.server;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.client.NioClient;
+import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.packet.BufferPool;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketFraming;
+import nl.pvdberg.pnet.threading.EventLoop;
+import nl.pvdberg.pnet.threading.EventLoopGroup;
+import nl.pvdberg.pnet.threading.SelectHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server which handles all connections using a small amount of EventLoops instead of a thread per connection.
+ * Connected Clients are {@link NioClient NioClients}. Events are fired from within an EventLoop, so event handlers should not block.
+ */
+public class NioServer implements Server, SelectHandler
+{
+    private final Logger logger = LoggerFactory.getLogger(NioServer.class);
+
+    private final int threads;
+    private final boolean ownsEventLoopGroup;
+    private EventLoopGroup eventLoopGroup;
+
+    private ServerSocketChannel server;
+    private EventLoop acceptorLoop;
+    private final List<Client> clients;
+    private PNetListener serverListener;
+    private volatile BufferPool bufferPool;
+    private volatile PacketFraming packetFraming;
+    private volatile int maxDataLength;
+
+    /**
+     * Creates a new Server using an EventLoop per available processor
+     */
+    public NioServer()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new Server using given amount of EventLoops. The EventLoops are started and stopped with the Server
+     * @param threads Amount of EventLoops
+     */
+    public NioServer(final int threads)
+    {
+        if (threads < 1) throw new IllegalArgumentException("At least 1 thread is required");
+
+        this.threads = threads;
+        ownsEventLoopGroup = true;
+
+        clients = new ArrayList<Client>();
+        packetFraming = PacketFraming.Legacy;
+        maxDataLength = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Creates a new Server using given EventLoopGroup. The EventLoopGroup is not stopped when the Server stops
+     * @param eventLoopGroup EventLoopGroup to handle connections with
+     */
+    public NioServer(final EventLoopGroup eventLoopGroup)
+    {
+        threads = eventLoopGroup.size();
+        ownsEventLoopGroup = false;
+        this.eventLoopGroup = eventLoopGroup;
+
+        clients = new ArrayList<Client>();
+        packetFraming = PacketFraming.Legacy;
+        maxDataLength = Integer.MAX_VALUE;
+    }
+
+    @Override
+    public synchronized void setListener(final PNetListener serverListener)
+    {
+        this.serverListener = serverListener;
+    }
+
+    @Override
+    public void setBufferPool(final BufferPool bufferPool)
+    {
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public void setPacketFraming(final PacketFraming packetFraming)
+    {
+        this.packetFraming = packetFraming;
+    }
+
+    /**
+     * Not supported, see {@link NioClient#setStreamCompression(boolean)}
+     */
+    @Override
+    public void setStreamCompression(final boolean streamCompression)
+    {
+        if (streamCompression) throw new UnsupportedOperationException("Stream compression is not supported by NioServer");
+    }
+
+    @Override
+    public void setMaxDataLength(final int maxDataLength)
+    {
+        if (maxDataLength < 0) throw new IllegalArgumentException("Negative maximum data length");
+        this.maxDataLength = maxDataLength;
+    }
+
+    @Override
+    public synchronized boolean start(final int port)
+    {
+        logger.debug("Starting server");
+
+        try
+        {
+            server = ServerSocketChannel.open();
+            server.socket().bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+
+            if (ownsEventLoopGroup) eventLoopGroup = new EventLoopGroup(threads);
+        }
+        catch (final Exception e)
+        {
+            logger.error("Unable to start server: {} :", e.getClass(), e);
+            stop();
+            return false;
+        }
+
+        logger.debug("Registering acceptor");
+        final ServerSocketChannel server = this.server;
+        final EventLoop acceptorLoop = eventLoopGroup.next();
+        this.acceptorLoop = acceptorLoop;
+        acceptorLoop.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    acceptorLoop.register(server, SelectionKey.OP_ACCEPT, NioServer.this);
+                }
+                catch (final ClosedChannelException e)
+                {
+                    // Ignore : stopped before registration
+                }
+            }
+        });
+
+        return true;
+    }
+
+    @Override
+    public void onSelect(final SelectionKey key)
+    {
+        final ServerSocketChannel server = (ServerSocketChannel) key.channel();
+
+        try
+        {
+            SocketChannel socketChannel;
+            while ((socketChannel = server.accept()) != null)
+            {
+                accept(socketChannel);
+            }
+        }
+        catch (final IOException e)
+        {
+            logger.error("Error while accepting: {} :", e.getClass(), e);
+        }
+    }
+
+    private void accept(final SocketChannel socketChannel)
+    {
+        final NioClient client = new NioClient(eventLoopGroup);
+        client.setBufferPool(bufferPool);
+        client.setPacketFraming(packetFraming);
+        client.setMaxDataLength(maxDataLength);
+
+        // Pass events
+        client.setClientListener(new PNetListener()
+        {
+            @Override
+            public void onConnect(final Client c)
+            {
+                synchronized (clients)
+                {
+                    logger.debug("{} connected", c.toString());
+                    clients.add(c);
+                }
+                if (serverListener != null) serverListener.onConnect(c);
+            }
+
+            @Override
+            public void onDisconnect(final Client c)
+            {
+                synchronized (clients)
+                {
+                    logger.debug("{} disconnected", c.toString());
+                    clients.remove(c);
+                }
+                if (serverListener != null) serverListener.onDisconnect(c);
+            }
+
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                if (serverListener != null) serverListener.onReceive(p, c);
+            }
+        });
+
+        try
+        {
+            client.setSocket(socketChannel.socket());
+        }
+        catch (final IOException e)
+        {
+            logger.error("Unable to use accepted channel: {} :", e.getClass(), e);
+            try
+            {
+                socketChannel.close();
+            }
+            catch (final IOException e2)
+            {
+                logger.error("Unable to close channel: {} :", e2.getClass(), e2);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void stop()
+    {
+        logger.info("Stopping server");
+
+        final List<Client> connectedClients;
+        synchronized (clients)
+        {
+            connectedClients = new ArrayList<Client>(clients);
+            clients.clear();
+        }
+
+        // Close all clients
+        for (final Client client : connectedClients)
+        {
+            // Disconnect events are not passed on while stopping
+            client.setClientListener(null);
+            client.close();
+        }
+
+        if (server != null)
+        {
+            closeServer(server, acceptorLoop);
+            server = null;
+            acceptorLoop = null;
+        }
+
+        if (ownsEventLoopGroup && eventLoopGroup != null)
+        {
+            eventLoopGroup.shutdown();
+            eventLoopGroup = null;
+        }
+    }
+
+    /**
+     * Closes the server channel on the EventLoop it is registered at, and waits until the port is released
+     * @param server Server channel
+     * @param acceptorLoop Nullable EventLoop which accepts connections
+     */
+    private void closeServer(final ServerSocketChannel server, final EventLoop acceptorLoop)
+    {
+        // Not started, or the loop is gone and no longer holds the registration
+        if (acceptorLoop == null || acceptorLoop.isShutdown())
+        {
+            closeQuietly(server);
+            return;
+        }
+
+        // The channel stays bound while its key is registered, so it has to be closed by its own EventLoop
+        final CountDownLatch closed = new CountDownLatch(1);
+        final Runnable closeTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    acceptorLoop.close(server);
+                    logger.debug("ServerSocketChannel closed");
+                }
+                catch (final IOException e)
+                {
+                    logger.error("Unable to close server: {} :", e.getClass(), e);
+                }
+                finally
+                {
+                    closed.countDown();
+                }
+            }
+        };
+
+        if (acceptorLoop.inEventLoop())
+        {
+            closeTask.run();
+            return;
+        }
+
+        acceptorLoop.execute(closeTask);
+        try
+        {
+            while (!closed.await(100, TimeUnit.MILLISECONDS))
+            {
+                // The loop was shut down before it could run the task
+                if (acceptorLoop.isShutdown())
+                {
+                    closeQuietly(server);
+                    return;
+                }
+            }
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeQuietly(final ServerSocketChannel server)
+    {
+        try
+        {
+            server.close();
+            logger.debug("ServerSocketChannel closed");
+        }
+        catch (final IOException e)
+        {
+            logger.error("Unable to close server: {} :", e.getClass(), e);
+        }
+    }
+}
@@ -25,6 +25,8 @@
 package nl.pvdberg.pnet.server;
 
 import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.packet.BufferPool;
+import nl.pvdberg.pnet.packet.PacketFraming;
 
 public interface Server
 {
@@ -34,6 +36,34 @@ public interface Server
      */
     void setListener(final PNetListener serverListener);
 
+    /**
+     * Sets the pool which Clients that connect afterwards allocate buffers for received Packets from, see {@link nl.pvdberg.pnet.client.Client#setBufferPool(BufferPool)}
+     * @param bufferPool Nullable BufferPool
+     */
+    void setBufferPool(final BufferPool bufferPool);
+
+    /**
+     * Sets the preferred format of Packet headers of all Clients that connect afterwards.
+     * The framing is negotiated with every connecting Client, see {@link nl.pvdberg.pnet.client.Client#setPacketFraming(PacketFraming)}. The default is {@link PacketFraming#Legacy}
+     * @param packetFraming PacketFraming
+     */
+    void setPacketFraming(final PacketFraming packetFraming);
+
+    /**
+     * Sets whether the connections of all Clients that connect afterwards are compressed as a whole.
+     * Only connections to Clients which enable it as well are compressed, disabled by default
+     * @param streamCompression Compress connections
+     * @throws UnsupportedOperationException when not supported by this Server
+     * @see nl.pvdberg.pnet.client.Client#setStreamCompression(boolean)
+     */
+    void setStreamCompression(final boolean streamCompression);
+
+    /**
+     * Sets the maximum data length of Packets received by Clients that connect afterwards, see {@link nl.pvdberg.pnet.client.Client#setMaxDataLength(int)}
+     * @param maxDataLength Maximum data length in bytes, {@link Integer#MAX_VALUE} by default
+     */
+    void setMaxDataLength(final int maxDataLength);
+
     /**
      * Starts the server at given port
      * @param port Port to listen to
@@ -27,7 +27,9 @@ package nl.pvdberg.pnet.server;
 import nl.pvdberg.pnet.client.Client;
 import nl.pvdberg.pnet.factory.ClientFactory;
 import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.packet.BufferPool;
 import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketFraming;
 import nl.pvdberg.pnet.factory.ServerSocketFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,8 +40,12 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static nl.pvdberg.pnet.threading.ThreadManager.launchThread;
+import static nl.pvdberg.pnet.threading.ThreadManager.waitForCompletion;
 
 public class ServerImpl implements Server
 {
@@ -47,10 +53,17 @@ public class ServerImpl implements Server
 
     private final ServerSocketFactory ssf;
     private final ClientFactory cf;
+    private final ExecutorService executorService;
 
     private ServerSocket server;
+    private Future acceptorFuture;
+    private volatile Thread acceptorThread;
     private final List<Client> clients;
     private PNetListener serverListener;
+    private volatile BufferPool bufferPool;
+    private volatile PacketFraming packetFraming;
+    private volatile boolean streamCompression;
+    private volatile int maxDataLength;
 
     /**
      * Creates a new Server using given factories
@@ -58,11 +71,25 @@ public class ServerImpl implements Server
      * @param cf Client factory
      */
     public ServerImpl(final ServerSocketFactory ssf, final ClientFactory cf) throws IOException
+    {
+        this(ssf, cf, null);
+    }
+
+    /**
+     * Creates a new Server using given factories
+     * @param ssf ServerSocket factory
+     * @param cf Client factory
+     * @param executorService Nullable ExecutorService which runs the acceptor thread, see {@link nl.pvdberg.pnet.threading.ThreadManager ThreadManager} when null
+     */
+    public ServerImpl(final ServerSocketFactory ssf, final ClientFactory cf, final ExecutorService executorService) throws IOException
     {
         this.ssf = ssf;
         this.cf = cf;
+        this.executorService = executorService;
 
         clients = new ArrayList<Client>();
+        packetFraming = PacketFraming.Legacy;
+        maxDataLength = Integer.MAX_VALUE;
     }
 
     @Override
@@ -71,6 +98,31 @@ public class ServerImpl implements Server
         this.serverListener = serverListener;
     }
 
+    @Override
+    public void setBufferPool(final BufferPool bufferPool)
+    {
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public void setPacketFraming(final PacketFraming packetFraming)
+    {
+        this.packetFraming = packetFraming;
+    }
+
+    @Override
+    public void setStreamCompression(final boolean streamCompression)
+    {
+        this.streamCompression = streamCompression;
+    }
+
+    @Override
+    public void setMaxDataLength(final int maxDataLength)
+    {
+        if (maxDataLength < 0) throw new IllegalArgumentException("Negative maximum data length");
+        this.maxDataLength = maxDataLength;
+    }
+
     @Override
     public synchronized boolean start(final int port)
     {
@@ -87,19 +139,22 @@ public class ServerImpl implements Server
         }
 
         logger.debug("Starting thread");
-        launchThread(new Runnable()
+        final ServerSocket server = this.server;
+        acceptorThread = null;
+        acceptorFuture = launchThread(executorService, new Runnable()
         {
             @Override
             public void run()
             {
-                acceptorThreadImpl();
+                acceptorThread = Thread.currentThread();
+                acceptorThreadImpl(server);
             }
         });
 
         return true;
     }
 
-    private void acceptorThreadImpl()
+    private void acceptorThreadImpl(final ServerSocket server)
     {
         while (true)
         {
@@ -108,6 +163,10 @@ public class ServerImpl implements Server
             {
                 final Socket socket = server.accept();
                 final Client client = cf.getClient();
+                client.setBufferPool(bufferPool);
+                client.setPacketFraming(packetFraming);
+                client.setStreamCompression(streamCompression);
+                client.setMaxDataLength(maxDataLength);
 
                 // Pass events
                 client.setClientListener(new PNetListener()
@@ -145,7 +204,8 @@ public class ServerImpl implements Server
             }
             catch (final SocketException e)
             {
-                stop();
+                // Server is already stopping when the socket is closed
+                if (!server.isClosed()) stop();
                 break;
             }
             catch (final IOException e)
@@ -164,18 +224,22 @@ public class ServerImpl implements Server
     {
         logger.info("Stopping server");
 
+        final List<Client> connectedClients;
         synchronized (clients)
         {
-            // Close all client threads
-            for (final Client client : clients)
-            {
-                // Prevent ConcurrentModification by removing the event listener
-                client.setClientListener(null);
-                client.close();
-            }
+            connectedClients = new ArrayList<Client>(clients);
             clients.clear();
         }
 
+        // Close all client threads
+        // Closing happens outside the lock, as a disconnecting client may hold its own lock while waiting for the client list
+        for (final Client client : connectedClients)
+        {
+            // Disconnect events are not passed on while stopping
+            client.setClientListener(null);
+            client.close();
+        }
+
         if (server == null) return;
         try
         {
@@ -186,5 +250,25 @@ public class ServerImpl implements Server
         {
             logger.error("Unable to close server: {} :", e.getClass(), e);
         }
+
+        // The socket is released once the acceptor thread has left accept()
+        // When the acceptor did not start yet (e.g. in a busy pool), it will fail immediately on the closed socket
+        final Thread acceptorThread = this.acceptorThread;
+        if (acceptorFuture != null && acceptorThread != null && Thread.currentThread() != acceptorThread)
+        {
+            try
+            {
+                waitForCompletion(acceptorFuture);
+            }
+            catch (final ExecutionException e)
+            {
+                logger.error("Error in acceptor thread: {} :", e.getClass(), e);
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            acceptorFuture = null;
+        }
     }
 }
@@ -32,6 +32,7 @@ import nl.pvdberg.pnet.server.ServerImpl;
 
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.util.concurrent.ExecutorService;
 
 public class PlainServer extends ServerDecorator
 {
@@ -39,6 +40,15 @@ public class PlainServer extends ServerDecorator
      * Creates a new normal Server
      */
     public PlainServer() throws IOException
+    {
+        this(null);
+    }
+
+    /**
+     * Creates a new normal Server. The ExecutorService needs a thread for accepting and a thread per connected Client
+     * @param executorService Nullable ExecutorService which runs the acceptor thread and the listener threads of connected Clients
+     */
+    public PlainServer(final ExecutorService executorService) throws IOException
     {
         super(new ServerImpl(
                 new ServerSocketFactory()
@@ -54,9 +64,10 @@ public class PlainServer extends ServerDecorator
                     @Override
                     public Client getClient()
                     {
-                        return new PlainClient();
+                        return new PlainClient(executorService);
                     }
-                }
+                },
+                executorService
         ));
     }
 }
@@ -1,6 +1,8 @@
 package nl.pvdberg.pnet.server.util;
 
 import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.packet.BufferPool;
+import nl.pvdberg.pnet.packet.PacketFraming;
 import nl.pvdberg.pnet.server.Server;
 
 public class ServerDecorator implements Server
@@ -18,6 +20,30 @@ public class ServerDecorator implements Server
         server.setListener(serverListener);
     }
 
+    @Override
+    public void setPacketFraming(final PacketFraming packetFraming)
+    {
+        server.setPacketFraming(packetFraming);
+    }
+
+    @Override
+    public void setStreamCompression(final boolean streamCompression)
+    {
+        server.setStreamCompression(streamCompression);
+    }
+
+    @Override
+    public void setBufferPool(final BufferPool bufferPool)
+    {
+        server.setBufferPool(bufferPool);
+    }
+
+    @Override
+    public void setMaxDataLength(final int maxDataLength)
+    {
+        server.setMaxDataLength(maxDataLength);
+    }
+
     @Override
     public boolean start(final int port)
     {
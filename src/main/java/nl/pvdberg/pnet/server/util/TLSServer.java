@@ -34,6 +34,7 @@ import nl.pvdberg.pnet.server.ServerImpl;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.util.concurrent.ExecutorService;
 
 public class TLSServer extends ServerDecorator
 {
@@ -41,6 +42,15 @@ public class TLSServer extends ServerDecorator
      * Creates a new Server using TLS
      */
     public TLSServer(final byte[] keyStore, final char[] keyStorePassword, final String keyStoreType) throws IOException
+    {
+        this(keyStore, keyStorePassword, keyStoreType, null);
+    }
+
+    /**
+     * Creates a new Server using TLS. The ExecutorService needs a thread for accepting and a thread per connected Client
+     * @param executorService Nullable ExecutorService which runs the acceptor thread and the listener threads of connected Clients
+     */
+    public TLSServer(final byte[] keyStore, final char[] keyStorePassword, final String keyStoreType, final ExecutorService executorService) throws IOException
     {
         super(new ServerImpl(
                 new ServerSocketFactory()
@@ -59,9 +69,10 @@ public class TLSServer extends ServerDecorator
                     @Override
                     public Client getClient()
                     {
-                        return new TLSClient();
+                        return new TLSClient(executorService);
                     }
-                }
+                },
+                executorService
         ));
     }
 }
@@ -0,0 +1,215 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InputStream which reads a message sent by a {@link PacketOutputStream}. Fragments are queued as they arrive,
+ * only a limited amount of fragments is kept in memory: when the reader falls behind, the receiving thread waits
+ * (or the stream is aborted when it was received by an EventLoop, see {@link StreamReceiver}).
+ * Reading blocks until more fragments arrive
+ */
+public class PacketInputStream extends InputStream
+{
+    private static final byte[] END = new byte[0];
+    private static final byte[] ABORTED = new byte[0];
+
+    private static final long OFFER_INTERVAL = 100;
+
+    private final BlockingQueue<byte[]> fragments;
+    private final int dataOffset;
+
+    private byte[] fragment;
+    private int position;
+    private volatile boolean closed;
+    private volatile boolean aborted;
+
+    /**
+     * Creates a new stream
+     * @param maxFragments Maximum amount of queued fragments
+     * @param dataOffset Offset of the data in every fragment
+     */
+    PacketInputStream(final int maxFragments, final int dataOffset)
+    {
+        fragments = new ArrayBlockingQueue<byte[]>(maxFragments);
+        this.dataOffset = dataOffset;
+    }
+
+    /**
+     * Queues a received fragment, waiting while the queue is full
+     * @param data Fragment data, starting at the data offset
+     * @throws InterruptedException when interrupted while waiting
+     */
+    void offer(final byte[] data) throws InterruptedException
+    {
+        while (!closed)
+        {
+            if (fragments.offer(data, OFFER_INTERVAL, TimeUnit.MILLISECONDS)) return;
+        }
+    }
+
+    /**
+     * Queues a received fragment without waiting
+     * @param data Fragment data, starting at the data offset
+     * @return Whether the fragment was queued, false when the queue is full
+     */
+    boolean tryOffer(final byte[] data)
+    {
+        // Nothing is read anymore once closed
+        return closed || fragments.offer(data);
+    }
+
+    /**
+     * Marks the end of the stream
+     * @throws InterruptedException when interrupted while waiting
+     */
+    void end() throws InterruptedException
+    {
+        offer(END);
+    }
+
+    /**
+     * Marks the end of the stream without waiting
+     * @return Whether the end was queued, false when the queue is full
+     */
+    boolean tryEnd()
+    {
+        return tryOffer(END);
+    }
+
+    /**
+     * Marks the stream as aborted, reading will fail once all queued data is read
+     */
+    void abort()
+    {
+        aborted = true;
+        // Never wait, the reader might be gone
+        if (!fragments.offer(ABORTED))
+        {
+            fragments.clear();
+            fragments.offer(ABORTED);
+        }
+    }
+
+    /**
+     * Makes sure the current fragment has data left
+     * @return Whether data is available, false at the end of the stream
+     * @throws IOException when the stream was aborted or closed
+     */
+    private boolean nextFragment() throws IOException
+    {
+        while (fragment == null || position == fragment.length)
+        {
+            if (fragment == END) return false;
+            if (closed) throw new IOException("Stream closed");
+
+            final byte[] next;
+            try
+            {
+                next = fragments.take();
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for data");
+            }
+
+            if (next == ABORTED) throw new IOException("Stream aborted");
+            fragment = next;
+            position = next == END ? 0 : dataOffset;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!nextFragment()) return -1;
+        return fragment[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException
+    {
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+        if (!nextFragment()) return -1;
+
+        final int chunk = Math.min(len, fragment.length - position);
+        System.arraycopy(fragment, position, b, off, chunk);
+        position += chunk;
+        return chunk;
+    }
+
+    @Override
+    public int available()
+    {
+        return fragment == null ? 0 : fragment.length - position;
+    }
+
+    /**
+     * Closes this stream. Remaining fragments are discarded
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        fragments.clear();
+    }
+
+    /**
+     * Returns whether this stream is closed by the reader
+     * @return Closed
+     */
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * Returns whether this stream was aborted by the receiver
+     * @return Aborted
+     */
+    boolean isAborted()
+    {
+        return aborted;
+    }
+
+    /**
+     * Returns a channel which reads from this stream
+     * @return ReadableByteChannel
+     */
+    public ReadableByteChannel getChannel()
+    {
+        return Channels.newChannel(this);
+    }
+}
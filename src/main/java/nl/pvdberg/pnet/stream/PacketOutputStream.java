@@ -0,0 +1,175 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.stream;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.VarInt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * OutputStream which sends its data as a sequence of fragment Packets with the same Packet ID.
+ * This allows sending messages of any size, while only a single fragment has to be kept in memory.
+ * The receiving side reassembles the message using a {@link StreamReceiver}.
+ * Every fragment starts with the stream ID (variable length integer) and a flag byte, followed by the data.
+ * Not thread safe
+ */
+public class PacketOutputStream extends OutputStream
+{
+    public static final int DEFAULT_FRAGMENT_SIZE = 64 * 1024;
+
+    static final byte FLAG_LAST = 1;
+
+    private static final AtomicInteger nextStreamID = new AtomicInteger();
+
+    private final Client client;
+    private final short packetID;
+    private final int streamID;
+    private final int headerSize;
+
+    private byte[] fragment;
+    private int count;
+    private boolean closed;
+
+    /**
+     * Creates a new stream which sends fragments of {@link #DEFAULT_FRAGMENT_SIZE} bytes
+     * @param client Client to send with
+     * @param packetID Packet ID of the fragments, which the receiver handles using a {@link StreamReceiver}
+     */
+    public PacketOutputStream(final Client client, final short packetID)
+    {
+        this(client, packetID, DEFAULT_FRAGMENT_SIZE);
+    }
+
+    /**
+     * Creates a new stream
+     * @param client Client to send with
+     * @param packetID Packet ID of the fragments, which the receiver handles using a {@link StreamReceiver}
+     * @param fragmentSize Maximum amount of data per fragment
+     */
+    public PacketOutputStream(final Client client, final short packetID, final int fragmentSize)
+    {
+        if (fragmentSize < 1) throw new IllegalArgumentException("Fragment size must be positive");
+
+        this.client = client;
+        this.packetID = packetID;
+        streamID = nextStreamID.getAndIncrement() & Integer.MAX_VALUE;
+        headerSize = VarInt.size(streamID) + 1;
+
+        fragment = new byte[headerSize + fragmentSize];
+        count = headerSize;
+    }
+
+    @Override
+    public void write(final int b) throws IOException
+    {
+        checkClosed();
+        if (count == fragment.length) sendFragment(false);
+        fragment[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException
+    {
+        checkClosed();
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+
+        while (len > 0)
+        {
+            if (count == fragment.length) sendFragment(false);
+            final int chunk = Math.min(len, fragment.length - count);
+            System.arraycopy(b, off, fragment, count, chunk);
+            count += chunk;
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    /**
+     * Sends all buffered data as a fragment and flushes the Client
+     * @throws IOException when unable to send
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        checkClosed();
+        if (count > headerSize) sendFragment(false);
+        if (!client.flush()) throw new IOException("Unable to flush");
+    }
+
+    /**
+     * Sends the last fragment, which ends the stream at the receiving side
+     * @throws IOException when unable to send
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed) return;
+        sendFragment(true);
+        closed = true;
+        fragment = null;
+    }
+
+    private void checkClosed() throws IOException
+    {
+        if (closed) throw new IOException("Stream closed");
+    }
+
+    private void sendFragment(final boolean last) throws IOException
+    {
+        final ByteBuffer header = ByteBuffer.wrap(fragment);
+        VarInt.writeVarInt(header, streamID);
+        header.put(last ? FLAG_LAST : 0);
+
+        // The Packet keeps the array, so a new one is used for the next fragment
+        final byte[] data;
+        if (last || count < fragment.length)
+        {
+            data = new byte[count];
+            System.arraycopy(fragment, 0, data, 0, count);
+        }
+        else
+        {
+            data = fragment;
+            fragment = new byte[fragment.length];
+        }
+        count = headerSize;
+
+        if (!client.send(new Packet(Packet.PacketType.Request, packetID, data))) throw new IOException("Unable to send fragment");
+    }
+
+    /**
+     * Returns ID of this stream, which is unique for all streams created by this JVM
+     * @return Stream ID
+     */
+    public int getStreamID()
+    {
+        return streamID;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.stream;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.event.PacketHandler;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.VarInt;
+import nl.pvdberg.pnet.threading.EventLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import static nl.pvdberg.pnet.threading.ThreadManager.launchThread;
+
+/**
+ * PacketHandler which reassembles messages sent by a {@link PacketOutputStream}.
+ * Every new stream is passed to a {@link StreamListener}, which reads it while the remaining fragments arrive.
+ * Memory usage per connection is limited to the maximum amount of streams times the maximum amount of queued fragments.
+ * When a reader falls behind, the thread which received the fragment waits, which slows down the sender.
+ * An {@link EventLoop} thread is shared by many connections and never waits: when the queue of a stream is full,
+ * that stream is aborted and its remaining fragments are discarded. Use a larger maximum amount of fragments,
+ * or receive through an {@link nl.pvdberg.pnet.event.AsyncDistributerListener AsyncDistributerListener}, when readers may fall behind.
+ * Call {@link #abortStreams(Client)} when a Client disconnects, so readers of unfinished streams fail instead of waiting forever
+ */
+public class StreamReceiver implements PacketHandler
+{
+    public static final int DEFAULT_MAX_FRAGMENTS = 4;
+    public static final int DEFAULT_MAX_STREAMS = 16;
+
+    private final Logger logger = LoggerFactory.getLogger(StreamReceiver.class);
+
+    private final StreamListener streamListener;
+    private final ExecutorService executorService;
+    private final int maxFragments;
+    private final int maxStreams;
+
+    private final Map<Client, Map<Integer, PacketInputStream>> streams;
+
+    /**
+     * Creates a new StreamReceiver which passes streams to a thread of the {@link nl.pvdberg.pnet.threading.ThreadManager ThreadManager}
+     * @param streamListener Listener which reads new streams
+     */
+    public StreamReceiver(final StreamListener streamListener)
+    {
+        this(streamListener, null, DEFAULT_MAX_FRAGMENTS, DEFAULT_MAX_STREAMS);
+    }
+
+    /**
+     * Creates a new StreamReceiver
+     * @param streamListener Listener which reads new streams
+     * @param executorService Nullable ExecutorService which runs the listener, see {@link nl.pvdberg.pnet.threading.ThreadManager ThreadManager} when null
+     * @param maxFragments Maximum amount of queued fragments per stream
+     * @param maxStreams Maximum amount of simultaneous streams per Client
+     */
+    public StreamReceiver(final StreamListener streamListener, final ExecutorService executorService, final int maxFragments, final int maxStreams)
+    {
+        if (maxFragments < 1) throw new IllegalArgumentException("At least 1 fragment is required");
+        if (maxStreams < 1) throw new IllegalArgumentException("At least 1 stream is required");
+
+        this.streamListener = streamListener;
+        this.executorService = executorService;
+        this.maxFragments = maxFragments;
+        this.maxStreams = maxStreams;
+
+        streams = new ConcurrentHashMap<Client, Map<Integer, PacketInputStream>>();
+    }
+
+    @Override
+    public void handlePacket(final Packet p, final Client c) throws IOException
+    {
+        final byte[] data = p.getData();
+        final ByteBuffer header = ByteBuffer.wrap(data);
+        final int streamID;
+        final byte flags;
+        try
+        {
+            streamID = VarInt.readVarInt(header);
+            flags = header.get();
+        }
+        catch (final RuntimeException e)
+        {
+            throw new IOException("Invalid fragment header");
+        }
+
+        Map<Integer, PacketInputStream> clientStreams = streams.get(c);
+        if (clientStreams == null)
+        {
+            clientStreams = new ConcurrentHashMap<Integer, PacketInputStream>();
+            streams.put(c, clientStreams);
+        }
+
+        PacketInputStream stream = clientStreams.get(streamID);
+        if (stream == null)
+        {
+            if (clientStreams.size() >= maxStreams) throw new IOException("Too many simultaneous streams");
+
+            stream = new PacketInputStream(maxFragments, header.position());
+            clientStreams.put(streamID, stream);
+            launchListener(stream, c);
+        }
+
+        final boolean last = (flags & PacketOutputStream.FLAG_LAST) != 0;
+        if (last) clientStreams.remove(streamID);
+
+        // Fragments of a dropped stream are discarded until its last fragment
+        if (stream.isAborted()) return;
+
+        if (EventLoop.isEventLoopThread())
+        {
+            if ((data.length > header.position() && !stream.tryOffer(data)) || (last && !stream.tryEnd()))
+            {
+                stream.abort();
+                throw new IOException("Reader fell behind, dropped stream " + streamID);
+            }
+            return;
+        }
+
+        try
+        {
+            if (data.length > header.position()) stream.offer(data);
+            if (last) stream.end();
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            clientStreams.remove(streamID);
+            stream.abort();
+            throw new IOException("Interrupted while queueing fragment");
+        }
+    }
+
+    private void launchListener(final PacketInputStream stream, final Client c)
+    {
+        launchThread(executorService, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    streamListener.onStream(stream, c);
+                }
+                catch (final IOException e)
+                {
+                    logger.warn("Unable to handle stream: {} :", e.getClass(), e);
+                }
+                catch (final Exception e)
+                {
+                    logger.error("Exception while handling stream: {} :", e.getClass(), e);
+                }
+                finally
+                {
+                    stream.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Aborts all unfinished streams of given Client. Reading these streams fails with an IOException
+     * @param c Client
+     */
+    public void abortStreams(final Client c)
+    {
+        final Map<Integer, PacketInputStream> clientStreams = streams.remove(c);
+        if (clientStreams == null) return;
+
+        for (final PacketInputStream stream : clientStreams.values())
+        {
+            stream.abort();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.threading;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class EventLoop implements Runnable
+{
+    public static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<EventLoop> currentEventLoop = new ThreadLocal<EventLoop>();
+
+    private final Logger logger = LoggerFactory.getLogger(EventLoop.class);
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final ByteBuffer readBuffer;
+
+    private volatile Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Creates a new EventLoop. The loop does nothing until it is ran by a thread
+     * @throws IOException when unable to open a Selector
+     */
+    public EventLoop() throws IOException
+    {
+        selector = Selector.open();
+        tasks = new ConcurrentLinkedQueue<Runnable>();
+        readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        running = true;
+    }
+
+    /**
+     * Schedules given task to be ran by this EventLoop
+     * @param task Task to run
+     */
+    public void execute(final Runnable task)
+    {
+        tasks.add(task);
+        if (!inEventLoop()) selector.wakeup();
+    }
+
+    /**
+     * Returns whether the current thread is the thread of this EventLoop
+     * @return Current thread is EventLoop thread
+     */
+    public boolean inEventLoop()
+    {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Returns whether the current thread runs an EventLoop.
+     * Such a thread is shared by many connections, so code running on it must never block
+     * @return Current thread is an EventLoop thread
+     */
+    public static boolean isEventLoopThread()
+    {
+        return currentEventLoop.get() != null;
+    }
+
+    /**
+     * Registers given channel at the Selector of this EventLoop.
+     * Must be called from within this EventLoop, see {@link #execute(Runnable)}
+     * @param channel Non blocking channel
+     * @param ops Interest operations
+     * @param selectHandler Handler which is called when the channel is selected
+     * @return SelectionKey of the registered channel
+     * @throws ClosedChannelException when the channel is closed
+     * @throws IllegalStateException when not called from within this EventLoop
+     */
+    public SelectionKey register(final SelectableChannel channel, final int ops, final SelectHandler selectHandler) throws ClosedChannelException
+    {
+        if (!inEventLoop()) throw new IllegalStateException("Not in event loop");
+        return channel.register(selector, ops, selectHandler);
+    }
+
+    /**
+     * Cancels the registration of given channel and closes it.
+     * The Selector is flushed, so the channel is released before this method returns instead of on the next select.
+     * Must be called from within this EventLoop, see {@link #execute(Runnable)}
+     * @param channel Channel to close
+     * @throws IOException when unable to close the channel
+     * @throws IllegalStateException when not called from within this EventLoop
+     */
+    public void close(final SelectableChannel channel) throws IOException
+    {
+        if (!inEventLoop()) throw new IllegalStateException("Not in event loop");
+
+        final SelectionKey key = channel.keyFor(selector);
+        if (key != null) key.cancel();
+        channel.close();
+
+        // Deregisters cancelled keys, which releases the channel
+        if (selector.isOpen()) selector.selectNow();
+    }
+
+    /**
+     * Returns whether this EventLoop has been shut down
+     * @return Shut down
+     */
+    public boolean isShutdown()
+    {
+        return !running;
+    }
+
+    /**
+     * Returns a buffer which can be used to read from channels.
+     * Only valid within this EventLoop, the contents are overwritten by the next read
+     * @return Shared read buffer
+     */
+    public ByteBuffer getReadBuffer()
+    {
+        if (!inEventLoop()) throw new IllegalStateException("Not in event loop");
+        readBuffer.clear();
+        return readBuffer;
+    }
+
+    @Override
+    public void run()
+    {
+        thread = Thread.currentThread();
+        currentEventLoop.set(this);
+        logger.debug("Event loop started");
+
+        while (running)
+        {
+            try
+            {
+                // Do not block when tasks were scheduled from within this loop
+                if (tasks.isEmpty()) selector.select();
+                else selector.selectNow();
+            }
+            catch (final IOException e)
+            {
+                logger.error("Error in event loop: {} :", e.getClass(), e);
+                break;
+            }
+
+            runTasks();
+
+            final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext())
+            {
+                final SelectionKey key = iterator.next();
+                iterator.remove();
+
+                if (!key.isValid()) continue;
+                try
+                {
+                    ((SelectHandler) key.attachment()).onSelect(key);
+                }
+                catch (final CancelledKeyException e)
+                {
+                    // Ignore : channel was closed while handling
+                }
+                catch (final Exception e)
+                {
+                    logger.error("Exception while handling selected key: {} :", e.getClass(), e);
+                }
+            }
+        }
+
+        runTasks();
+
+        try
+        {
+            selector.close();
+        }
+        catch (final IOException e)
+        {
+            logger.error("Unable to close selector: {} :", e.getClass(), e);
+        }
+
+        currentEventLoop.remove();
+        logger.debug("Event loop stopped");
+    }
+
+    private void runTasks()
+    {
+        Runnable task;
+        while ((task = tasks.poll()) != null)
+        {
+            try
+            {
+                task.run();
+            }
+            catch (final Exception e)
+            {
+                logger.error("Exception in event loop task: {} :", e.getClass(), e);
+            }
+        }
+    }
+
+    /**
+     * Stops this EventLoop. Channels registered at this loop should be closed beforehand
+     */
+    public void shutdown()
+    {
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.threading;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static nl.pvdberg.pnet.threading.ThreadManager.launchThread;
+
+public class EventLoopGroup
+{
+    private static int defaultThreads = Runtime.getRuntime().availableProcessors();
+    private static EventLoopGroup defaultGroup;
+
+    private final EventLoop[] eventLoops;
+    private final AtomicInteger nextIndex;
+
+    /**
+     * Creates and starts a new group of EventLoops
+     * @param threads Amount of EventLoops (and threads)
+     * @throws IOException when unable to create an EventLoop
+     */
+    public EventLoopGroup(final int threads) throws IOException
+    {
+        this(threads, null);
+    }
+
+    /**
+     * Creates and starts a new group of EventLoops
+     * @param threads Amount of EventLoops (and threads)
+     * @param threadFactory Nullable ThreadFactory which creates a dedicated thread per EventLoop. When null, the threads are launched by the {@link ThreadManager}
+     * @throws IOException when unable to create an EventLoop
+     */
+    public EventLoopGroup(final int threads, final ThreadFactory threadFactory) throws IOException
+    {
+        if (threads < 1) throw new IllegalArgumentException("At least 1 thread is required");
+
+        eventLoops = new EventLoop[threads];
+        nextIndex = new AtomicInteger();
+
+        for (int i = 0; i < threads; i++)
+        {
+            eventLoops[i] = new EventLoop();
+            if (threadFactory == null) launchThread(eventLoops[i]);
+            else threadFactory.newThread(eventLoops[i]).start();
+        }
+    }
+
+    /**
+     * Sets the amount of EventLoops of the default group. Must be called before the default group is used
+     * @param threads Amount of EventLoops
+     * @throws IllegalStateException when the default group is already created
+     */
+    public static synchronized void setDefaultThreads(final int threads)
+    {
+        if (threads < 1) throw new IllegalArgumentException("At least 1 thread is required");
+        if (defaultGroup != null) throw new IllegalStateException("Default EventLoopGroup already created");
+        defaultThreads = threads;
+    }
+
+    /**
+     * Returns the default EventLoopGroup, which is shared by all Clients that do not specify their own group.
+     * The group is created on first use, with an EventLoop per available processor unless configured otherwise
+     * @return Default EventLoopGroup
+     * @throws IllegalStateException when unable to create the group
+     * @see #setDefaultThreads(int)
+     */
+    public static synchronized EventLoopGroup getDefault()
+    {
+        if (defaultGroup == null)
+        {
+            try
+            {
+                defaultGroup = new EventLoopGroup(defaultThreads);
+            }
+            catch (final IOException e)
+            {
+                throw new IllegalStateException("Unable to create default EventLoopGroup", e);
+            }
+        }
+        return defaultGroup;
+    }
+
+    /**
+     * Returns the next EventLoop, chosen round robin
+     * @return EventLoop
+     */
+    public EventLoop next()
+    {
+        return eventLoops[(nextIndex.getAndIncrement() & Integer.MAX_VALUE) % eventLoops.length];
+    }
+
+    /**
+     * Returns amount of EventLoops in this group
+     * @return Amount of EventLoops
+     */
+    public int size()
+    {
+        return eventLoops.length;
+    }
+
+    /**
+     * Stops all EventLoops in this group
+     */
+    public void shutdown()
+    {
+        synchronized (EventLoopGroup.class)
+        {
+            if (defaultGroup == this) defaultGroup = null;
+        }
+
+        for (final EventLoop eventLoop : eventLoops)
+        {
+            eventLoop.shutdown();
+        }
+    }
+}
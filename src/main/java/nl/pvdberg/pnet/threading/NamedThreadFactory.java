@@ -0,0 +1,74 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.threading;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ThreadFactory which creates numbered threads with a common name prefix, priority and daemon flag.
+ * Distinct names make threads of different Servers and Clients easy to recognize in profilers and to pin with OS tools
+ */
+public class NamedThreadFactory implements ThreadFactory
+{
+    private final String prefix;
+    private final boolean daemon;
+    private final int priority;
+    private final AtomicInteger threadNumber;
+
+    /**
+     * Creates a new ThreadFactory for non daemon threads with normal priority
+     * @param prefix Thread name prefix
+     */
+    public NamedThreadFactory(final String prefix)
+    {
+        this(prefix, false, Thread.NORM_PRIORITY);
+    }
+
+    /**
+     * Creates a new ThreadFactory
+     * @param prefix Thread name prefix
+     * @param daemon Whether threads are daemon threads
+     * @param priority Thread priority
+     */
+    public NamedThreadFactory(final String prefix, final boolean daemon, final int priority)
+    {
+        if (priority < Thread.MIN_PRIORITY || priority > Thread.MAX_PRIORITY) throw new IllegalArgumentException("Invalid priority: " + priority);
+
+        this.prefix = prefix;
+        this.daemon = daemon;
+        this.priority = priority;
+        threadNumber = new AtomicInteger();
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable)
+    {
+        final Thread thread = new Thread(runnable, prefix + "-" + threadNumber.incrementAndGet());
+        thread.setDaemon(daemon);
+        thread.setPriority(priority);
+        return thread;
+    }
+}
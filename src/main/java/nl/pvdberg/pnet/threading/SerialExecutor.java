@@ -0,0 +1,140 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.threading;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executor which runs its tasks one at a time, in submission order, on threads of another Executor.
+ * Many SerialExecutors can share a single thread pool while each keeps its own ordering
+ */
+public class SerialExecutor implements Executor
+{
+    /**
+     * Maximum amount of tasks ran before the thread is handed back to the backing Executor
+     */
+    public static final int MAX_BATCH = 64;
+
+    private final Logger logger = LoggerFactory.getLogger(SerialExecutor.class);
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks;
+    private final AtomicBoolean scheduled;
+    private final Runnable drainTask;
+
+    /**
+     * Creates a new SerialExecutor
+     * @param executor Executor to run tasks on
+     */
+    public SerialExecutor(final Executor executor)
+    {
+        this.executor = executor;
+
+        tasks = new ConcurrentLinkedQueue<Runnable>();
+        scheduled = new AtomicBoolean();
+        drainTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        };
+    }
+
+    /**
+     * Queues given task
+     * @param task Task to run
+     * @throws RejectedExecutionException when the backing Executor rejects it. The task is not queued in that case
+     */
+    @Override
+    public void execute(final Runnable task)
+    {
+        tasks.add(task);
+        try
+        {
+            schedule();
+        }
+        catch (final RejectedExecutionException e)
+        {
+            // Unless a drain has taken it in the meantime, the task would stay queued without anything running it
+            if (tasks.remove(task)) throw e;
+        }
+    }
+
+    private void schedule()
+    {
+        if (!scheduled.compareAndSet(false, true)) return;
+
+        try
+        {
+            executor.execute(drainTask);
+        }
+        catch (final RejectedExecutionException e)
+        {
+            scheduled.set(false);
+            throw e;
+        }
+    }
+
+    private void drain()
+    {
+        for (int i = 0; i < MAX_BATCH; i++)
+        {
+            final Runnable task = tasks.poll();
+            if (task == null) break;
+
+            try
+            {
+                task.run();
+            }
+            catch (final Exception e)
+            {
+                logger.error("Exception in serial task: {} :", e.getClass(), e);
+            }
+        }
+
+        scheduled.set(false);
+
+        // Tasks may have been added after the last poll
+        if (!tasks.isEmpty()) schedule();
+    }
+
+    /**
+     * Returns amount of tasks waiting to be ran
+     * @return Amount of pending tasks
+     */
+    public int getPendingTasks()
+    {
+        return tasks.size();
+    }
+}
@@ -24,11 +24,156 @@
 
 package nl.pvdberg.pnet.threading;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.concurrent.*;
 
 public class ThreadManager
 {
-    private static final ExecutorService service = Executors.newCachedThreadPool();
+    /**
+     * System property which makes the default ExecutorService use virtual threads, when available
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "pnet.virtualThreads";
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadManager.class);
+
+    private static final Method virtualThreadExecutorFactory = findVirtualThreadExecutorFactory();
+    private static volatile ExecutorService service = createDefaultService();
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * Looks up the factory of virtual thread executors. It is only used when it creates an executor successfully,
+     * as it exists but fails when virtual threads are a disabled preview feature (Java 19 and 20)
+     * @return Nullable factory method
+     */
+    private static Method findVirtualThreadExecutorFactory()
+    {
+        final Method factory;
+        try
+        {
+            // Java 21+
+            factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        }
+        catch (final NoSuchMethodException e)
+        {
+            return null;
+        }
+
+        try
+        {
+            ((ExecutorService) factory.invoke(null)).shutdown();
+            return factory;
+        }
+        catch (final IllegalAccessException e)
+        {
+            logger.debug("Virtual threads are not accessible: {}", e.getClass());
+        }
+        catch (final InvocationTargetException e)
+        {
+            logger.debug("Virtual threads are not enabled: {}", e.getCause().getClass());
+        }
+        return null;
+    }
+
+    /**
+     * Returns the scheduler, which is created on first use and again after {@link #shutdown()}
+     * @return ScheduledExecutorService
+     */
+    private static synchronized ScheduledExecutorService getScheduler()
+    {
+        if (scheduler == null)
+        {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(final Runnable runnable)
+                {
+                    // Timers should not keep the application alive
+                    final Thread thread = new Thread(runnable, "PNet-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+
+    private static ExecutorService createDefaultService()
+    {
+        if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY))
+        {
+            final ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+            if (virtualThreadExecutor != null) return virtualThreadExecutor;
+            logger.warn("Virtual threads are not supported, using platform threads");
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Returns whether this JVM supports virtual threads. Determined once, by creating a virtual thread executor
+     * @return Virtual threads supported
+     */
+    public static boolean isVirtualThreadsSupported()
+    {
+        return virtualThreadExecutorFactory != null;
+    }
+
+    /**
+     * Creates an ExecutorService which starts a new virtual thread for every task
+     * @return ExecutorService, or null when virtual threads are not supported
+     */
+    public static ExecutorService newVirtualThreadExecutor()
+    {
+        if (virtualThreadExecutorFactory == null) return null;
+
+        try
+        {
+            return (ExecutorService) virtualThreadExecutorFactory.invoke(null);
+        }
+        catch (final IllegalAccessException e)
+        {
+            logger.error("Unable to create virtual thread executor: {} :", e.getClass(), e);
+        }
+        catch (final InvocationTargetException e)
+        {
+            logger.error("Unable to create virtual thread executor: {} :", e.getCause().getClass(), e.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the ExecutorService which runs all threads launched from now on.
+     * Threads which are already running keep running, the previous ExecutorService is not shut down
+     * @param executorService New ExecutorService
+     * @return Previous ExecutorService
+     */
+    public static synchronized ExecutorService setExecutorService(final ExecutorService executorService)
+    {
+        final ExecutorService previous = service;
+        service = executorService;
+        return previous;
+    }
+
+    /**
+     * Launches all threads from now on as virtual threads. Keeps using the current ExecutorService when virtual threads are not supported
+     * @return Whether virtual threads are used
+     * @see #setExecutorService(ExecutorService)
+     */
+    public static synchronized boolean useVirtualThreads()
+    {
+        final ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+        if (virtualThreadExecutor == null)
+        {
+            logger.warn("Virtual threads are not supported, using platform threads");
+            return false;
+        }
+
+        setExecutorService(virtualThreadExecutor);
+        return true;
+    }
 
     /**
      * Launches a new thread
@@ -40,6 +185,30 @@ public class ThreadManager
         return service.submit(runnable);
     }
 
+    /**
+     * Launches a new thread using given ExecutorService
+     * @param executorService Nullable ExecutorService, the default ExecutorService is used when null
+     * @param runnable Runnable to run in a thread
+     * @return Future
+     */
+    public static Future launchThread(final ExecutorService executorService, final Runnable runnable)
+    {
+        if (executorService == null) return launchThread(runnable);
+        return executorService.submit(runnable);
+    }
+
+    /**
+     * Runs given Runnable after given delay. Scheduled tasks share a single thread and should not block
+     * @param runnable Runnable to run
+     * @param delay Delay
+     * @param unit Unit of delay
+     * @return ScheduledFuture
+     */
+    public static ScheduledFuture schedule(final Runnable runnable, final long delay, final TimeUnit unit)
+    {
+        return getScheduler().schedule(runnable, delay, unit);
+    }
+
     /**
      * Waits for a thread to finish
      * @param future Future to wait for
@@ -51,10 +220,23 @@ public class ThreadManager
     }
 
     /**
-     * Stops all running threads
+     * Stops all running threads of the default ExecutorService and cancels all scheduled tasks, their ScheduledFutures report being cancelled.
+     * ExecutorServices passed to Clients and Servers are not affected. Tasks scheduled afterwards use a new scheduler
      */
     public static void shutdown()
     {
         service.shutdownNow();
+        synchronized (ThreadManager.class)
+        {
+            if (scheduler != null)
+            {
+                // Tasks which did not run yet report so through their ScheduledFuture
+                for (final Runnable task : scheduler.shutdownNow())
+                {
+                    if (task instanceof Future) ((Future) task).cancel(false);
+                }
+                scheduler = null;
+            }
+        }
     }
 }
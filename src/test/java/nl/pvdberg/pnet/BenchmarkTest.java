@@ -25,20 +25,30 @@
 package nl.pvdberg.pnet;
 
 import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.client.FlushPolicy;
 import nl.pvdberg.pnet.client.util.PlainClient;
 import nl.pvdberg.pnet.event.ReceiveListener;
 import nl.pvdberg.pnet.packet.Packet;
 import nl.pvdberg.pnet.packet.PacketBuilder;
 import nl.pvdberg.pnet.server.Server;
 import nl.pvdberg.pnet.server.util.PlainServer;
+import nl.pvdberg.pnet.threading.ThreadManager;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 public class BenchmarkTest
 {
@@ -124,4 +134,85 @@ public class BenchmarkTest
 
         System.out.println((randomData.length * invMega * amount) / ((end - start) * invNano) + " MB per second");
     }
+
+    @Test(timeout=10000)
+    public void testBatchedEmptyPacketsPerSecond() throws Exception
+    {
+        final int amount = 1000;
+
+        final Packet packet = new PacketBuilder(Packet.PacketType.Request).build();
+        final CountDownLatch latch = new CountDownLatch(amount);
+
+        server.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                latch.countDown();
+            }
+        });
+
+        final Client batchedClient = new PlainClient(FlushPolicy.batched(8192, 5));
+        assertTrue(batchedClient.connect("localhost", port));
+
+        start = System.nanoTime();
+        for (int i = 0; i < amount; i++)
+        {
+            assertTrue(batchedClient.send(packet));
+        }
+        assertTrue(batchedClient.flush());
+        end = System.nanoTime();
+
+        System.out.println(amount / ((end - start) * invNano) + " batched packets per second");
+
+        latch.await();
+        batchedClient.close();
+    }
+
+    @Test(timeout=30000)
+    public void testPlatformThreadConnections() throws Exception
+    {
+        testConnections(Executors.newCachedThreadPool(), "platform");
+    }
+
+    @Test(timeout=30000)
+    public void testVirtualThreadConnections() throws Exception
+    {
+        assumeTrue(ThreadManager.isVirtualThreadsSupported());
+        testConnections(ThreadManager.newVirtualThreadExecutor(), "virtual");
+    }
+
+    protected void testConnections(final ExecutorService executorService, final String name) throws Exception
+    {
+        final int amount = 200;
+        final ExecutorService previous = ThreadManager.setExecutorService(executorService);
+        final List<Client> clients = new ArrayList<Client>();
+
+        try
+        {
+            final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            final int threadsBefore = threadMXBean.getThreadCount();
+            threadMXBean.resetPeakThreadCount();
+
+            start = System.nanoTime();
+            for (int i = 0; i < amount; i++)
+            {
+                final Client c = new PlainClient();
+                assertTrue(c.connect("localhost", port));
+                clients.add(c);
+            }
+            end = System.nanoTime();
+
+            final int threadsAfter = threadMXBean.getPeakThreadCount();
+
+            System.out.println(amount / ((end - start) * invNano) + " connections per second using " + name + " threads, "
+                    + (threadsAfter - threadsBefore) + " platform threads for " + amount + " connections");
+        }
+        finally
+        {
+            for (final Client c : clients) c.close();
+            ThreadManager.setExecutorService(previous);
+            executorService.shutdown();
+        }
+    }
 }
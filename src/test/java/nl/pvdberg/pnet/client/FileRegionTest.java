@@ -0,0 +1,81 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FileRegionTest
+{
+    @Test(timeout=5000)
+    public void transferToSocketChannel() throws Exception
+    {
+        final byte[] content = new byte[4 * 1024 * 1024];
+        new Random().nextBytes(content);
+        final File file = File.createTempFile("pnet", ".bin");
+        file.deleteOnExit();
+        final FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(content);
+        fileOutputStream.close();
+
+        final int offset = 1000;
+        final int length = content.length - 2 * offset;
+
+        final ServerSocketChannel server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress("localhost", 0));
+        final SocketChannel sender = SocketChannel.open(server.socket().getLocalSocketAddress());
+        final SocketChannel receiver = server.accept();
+        server.close();
+
+        // Non blocking, like a NioClient: the socket buffer can not hold the whole region
+        sender.configureBlocking(false);
+        final FileRegion fileRegion = FileRegion.open(file, offset, length);
+        final ByteBuffer received = ByteBuffer.allocate(length);
+        int partialTransfers = 0;
+        while (!fileRegion.transferTo(sender))
+        {
+            partialTransfers++;
+            receiver.read(received);
+        }
+        fileRegion.close();
+        sender.close();
+
+        while (received.hasRemaining() && receiver.read(received) != -1);
+        receiver.close();
+
+        assertTrue(partialTransfers > 0);
+        assertArrayEquals(Arrays.copyOfRange(content, offset, offset + length), received.array());
+    }
+}
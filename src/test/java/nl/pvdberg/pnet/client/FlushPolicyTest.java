@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client;
+
+import nl.pvdberg.pnet.client.util.PlainClient;
+import nl.pvdberg.pnet.event.ReceiveListener;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketBuilder;
+import nl.pvdberg.pnet.server.Server;
+import nl.pvdberg.pnet.server.util.PlainServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FlushPolicyTest
+{
+    protected static final int port = 42366;
+
+    protected Server server;
+    protected CountDownLatch latch;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = new PlainServer();
+        assertTrue(server.start(port));
+        server.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                latch.countDown();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        server.stop();
+    }
+
+    @Test(timeout=2000)
+    public void manual() throws Exception
+    {
+        latch = new CountDownLatch(10);
+        final Client client = new PlainClient(FlushPolicy.MANUAL);
+        assertTrue(client.connect("localhost", port));
+
+        final Packet packet = new PacketBuilder(Packet.PacketType.Request).withInt(1).build();
+        for (int i = 0; i < 10; i++) assertTrue(client.send(packet));
+
+        // Nothing is written before flushing
+        assertFalse(latch.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(10, latch.getCount());
+
+        assertTrue(client.flush());
+        latch.await();
+        client.close();
+    }
+
+    @Test(timeout=2000)
+    public void maxBufferedBytes() throws Exception
+    {
+        latch = new CountDownLatch(4);
+        final Client client = new PlainClient(FlushPolicy.batched(4 * (Packet.HEADER_SIZE + 4), 0));
+        assertTrue(client.connect("localhost", port));
+
+        final Packet packet = new PacketBuilder(Packet.PacketType.Request).withInt(1).build();
+        for (int i = 0; i < 4; i++) assertTrue(client.send(packet));
+
+        latch.await();
+        client.close();
+    }
+
+    @Test(timeout=2000)
+    public void maxDelay() throws Exception
+    {
+        latch = new CountDownLatch(3);
+        final Client client = new PlainClient(FlushPolicy.batched(64 * 1024, 10));
+        assertTrue(client.connect("localhost", port));
+
+        final Packet packet = new PacketBuilder(Packet.PacketType.Request).withInt(1).build();
+        for (int i = 0; i < 3; i++) assertTrue(client.send(packet));
+
+        latch.await();
+        client.close();
+    }
+
+    @Test(timeout=2000)
+    public void maxDelayFlushesOnClientExecutor() throws Exception
+    {
+        latch = new CountDownLatch(1);
+        final AtomicInteger completedTasks = new AtomicInteger();
+        final ExecutorService executorService = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>())
+        {
+            @Override
+            protected void afterExecute(final Runnable runnable, final Throwable throwable)
+            {
+                completedTasks.incrementAndGet();
+            }
+        };
+        final Client client = new PlainClient(FlushPolicy.batched(64 * 1024, 10), executorService);
+        assertTrue(client.connect("localhost", port));
+
+        assertTrue(client.send(new PacketBuilder(Packet.PacketType.Request).withInt(1).build()));
+
+        // The listener thread keeps running, so the only completed task is the delayed flush
+        latch.await();
+        while (completedTasks.get() == 0) Thread.sleep(1);
+        assertEquals(1, completedTasks.get());
+        client.close();
+        executorService.shutdownNow();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPolicy() throws Exception
+    {
+        FlushPolicy.batched(0, 10);
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client;
+
+import nl.pvdberg.pnet.client.util.PlainClientTest;
+import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.event.ReceiveListener;
+import nl.pvdberg.pnet.packet.BufferPool;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketBuilder;
+import nl.pvdberg.pnet.server.NioServer;
+import nl.pvdberg.pnet.server.util.PlainServer;
+import nl.pvdberg.pnet.threading.EventLoopGroup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class NioClientTest extends PlainClientTest
+{
+    @Before
+    @Override
+    public void setUp() throws Exception
+    {
+        server = new NioServer(1);
+        assertTrue(server.start(port));
+        client = new NioClient();
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception
+    {
+        super.tearDown();
+    }
+
+    @Test
+    @Override
+    public void connect() throws Exception
+    {
+        super.connect();
+    }
+
+    @Test
+    @Override
+    public void nonConnectedSend() throws Exception
+    {
+        super.nonConnectedSend();
+    }
+
+    @Test
+    @Override
+    public void send() throws Exception
+    {
+        super.send();
+    }
+
+    @Test
+    @Override
+    public void clientType() throws Exception
+    {
+        client.setClientListener(new PNetListener()
+        {
+            @Override
+            public void onConnect(final Client c)
+            {
+                assertTrue(c instanceof NioClient);
+            }
+
+            @Override
+            public void onDisconnect(final Client c)
+            {
+
+            }
+
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+
+            }
+        });
+
+        assertTrue(client.connect("localhost", port));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    @Override
+    public void streamCompression() throws Exception
+    {
+        client.setStreamCompression(true);
+    }
+
+    @Test(timeout=5000)
+    @Override
+    public void streamCompressionDeclined() throws Exception
+    {
+        // NioServer does not support stream compression, so offer it from a PlainServer
+        server.stop();
+        server = new PlainServer();
+        assertTrue(server.start(port));
+        super.streamCompressionDeclined();
+    }
+
+    @Test(timeout=10000)
+    public void sharedEventLoops() throws Exception
+    {
+        final int amount = 200;
+        final EventLoopGroup eventLoopGroup = new EventLoopGroup(2);
+        final CountDownLatch latch = new CountDownLatch(amount);
+
+        server.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                c.send(new Packet(Packet.PacketType.Reply, p.getPacketID(), p.getData()));
+            }
+        });
+
+        final List<Client> clients = new ArrayList<Client>();
+        for (int i = 0; i < amount; i++)
+        {
+            final Client c = new NioClient(eventLoopGroup);
+            c.setClientListener(new ReceiveListener()
+            {
+                @Override
+                public void onReceive(final Packet p, final Client c) throws IOException
+                {
+                    latch.countDown();
+                }
+            });
+            assertTrue(c.connect("localhost", port));
+            clients.add(c);
+        }
+
+        final Packet packet = new PacketBuilder(Packet.PacketType.Request).withInt(1).build();
+        for (final Client c : clients) assertTrue(c.send(packet));
+
+        latch.await();
+
+        for (final Client c : clients) c.close();
+        eventLoopGroup.shutdown();
+    }
+
+    @Test(timeout=10000)
+    public void pooledBuffers() throws Exception
+    {
+        final int amount = 100;
+        final byte[] data = new byte[100000];
+        new Random().nextBytes(data);
+
+        final BufferPool serverPool = new BufferPool(false, 128 * 1024, 4);
+        final BufferPool clientPool = new BufferPool(true, 128 * 1024, 4);
+        final CountDownLatch latch = new CountDownLatch(amount);
+
+        ((NioServer) server).setBufferPool(serverPool);
+        server.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                // Reuse received buffer
+                final Packet reply = new Packet(Packet.PacketType.Reply, p.getPacketID(), p.getBuffer().retain());
+                c.send(reply);
+                reply.release();
+            }
+        });
+
+        final NioClient nioClient = (NioClient) client;
+        nioClient.setBufferPool(clientPool);
+        nioClient.setClientListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                assertTrue(p.getBuffer().getBuffer().isDirect());
+                assertArrayEquals(data, p.getData());
+                latch.countDown();
+            }
+        });
+        assertTrue(client.connect("localhost", port));
+
+        for (int i = 0; i < amount; i++)
+        {
+            assertTrue(client.send(new Packet(Packet.PacketType.Request, (short) i, data)));
+        }
+
+        latch.await();
+        assertTrue(serverPool.getFreeBuffers() > 0);
+        assertTrue(clientPool.getFreeBuffers() > 0);
+    }
+
+    @Test(timeout=5000)
+    public void partialPacketReleased() throws Exception
+    {
+        final BufferPool serverPool = new BufferPool(false, 128 * 1024, 4);
+        ((NioServer) server).setBufferPool(serverPool);
+
+        // Disconnect halfway a large Packet
+        final Socket socket = new Socket("localhost", port);
+        final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeByte(Packet.PacketType.Request.ordinal());
+        out.writeShort(1);
+        out.writeInt(100000);
+        out.write(new byte[1000]);
+        out.flush();
+        Thread.sleep(100);
+        socket.close();
+
+        while (serverPool.getFreeBuffers() == 0) Thread.sleep(10);
+    }
+
+    @Test(timeout=10000)
+    public void gatheringWrites() throws Exception
+    {
+        final int amount = 1000;
+        final Random random = new Random();
+        final byte[][] data = new byte[amount][];
+        for (int i = 0; i < amount; i++)
+        {
+            // Mix copied and gathered payloads
+            data[i] = new byte[i % 2 == 0 ? random.nextInt(NioClient.COPY_THRESHOLD) : 10000 + random.nextInt(10000)];
+            random.nextBytes(data[i]);
+        }
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger received = new AtomicInteger();
+
+        server.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                final int index = received.getAndIncrement();
+                assertEquals(index, p.getPacketID());
+                assertArrayEquals(data[index], p.getData());
+                if (index == amount - 1) latch.countDown();
+            }
+        });
+
+        assertTrue(client.connect("localhost", port));
+        for (int i = 0; i < amount; i++)
+        {
+            assertTrue(client.send(new Packet(Packet.PacketType.Request, (short) i, data[i])));
+        }
+
+        latch.await();
+        assertEquals(amount, received.get());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+public class SyncFlushDeflaterOutputStreamTest
+{
+    @Test
+    public void flushedDataIsReadable() throws Exception
+    {
+        final byte[] message = "{\"type\":\"position\",\"entity\":12,\"x\":3,\"y\":4}".getBytes("UTF-8");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SyncFlushDeflaterOutputStream deflaterOutputStream = new SyncFlushDeflaterOutputStream(out, Deflater.DEFAULT_COMPRESSION);
+
+        deflaterOutputStream.write(message);
+        deflaterOutputStream.flush();
+        final int firstLength = out.size();
+
+        deflaterOutputStream.write(message);
+        deflaterOutputStream.flush();
+        final int secondLength = out.size() - firstLength;
+
+        // The second message refers to the first one
+        assertTrue(secondLength < firstLength / 2);
+
+        // The stream is not finished, yet both messages can be read
+        final DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(out.toByteArray()), new Inflater(true)));
+        final byte[] read = new byte[message.length];
+        for (int i = 0; i < 2; i++)
+        {
+            in.readFully(read);
+            assertArrayEquals(message, read);
+        }
+        deflaterOutputStream.close();
+    }
+
+    @Test
+    public void largeWrite() throws Exception
+    {
+        final byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i * i);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SyncFlushDeflaterOutputStream deflaterOutputStream = new SyncFlushDeflaterOutputStream(out, Deflater.BEST_SPEED);
+        deflaterOutputStream.write(data);
+        deflaterOutputStream.flush();
+
+        final DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(out.toByteArray()), new Inflater(true)));
+        final byte[] read = new byte[data.length];
+        in.readFully(read);
+        assertTrue(Arrays.equals(data, read));
+        deflaterOutputStream.close();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client.util;
+
+import nl.pvdberg.pnet.packet.DeflateCompressor;
+import nl.pvdberg.pnet.packet.Packet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompressionClientTest
+{
+    private final Random random = new Random();
+
+    // Not connected : only the compression decisions are tested
+    private CompressionClient client;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        client = new CompressionClient(new PlainClient(), new DeflateCompressor());
+        client.setMinSamples(4);
+    }
+
+    private byte[] randomData(final int length)
+    {
+        final byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private static byte[] repetitiveData(final int length)
+    {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i % 10);
+        return data;
+    }
+
+    private void send(final short packetID, final byte[] data, final int amount)
+    {
+        for (int i = 0; i < amount; i++) client.send(new Packet(Packet.PacketType.Request, packetID, data));
+    }
+
+    @Test
+    public void minLength() throws Exception
+    {
+        send((short) 1, repetitiveData(CompressionClient.DEFAULT_MIN_LENGTH - 1), 10);
+        assertNull(client.getStats((short) 1));
+
+        send((short) 1, repetitiveData(CompressionClient.DEFAULT_MIN_LENGTH), 10);
+        final CompressionStats stats = client.getStats((short) 1);
+        assertEquals(10, stats.getPacketsSent());
+        assertEquals(10, stats.getPacketsCompressed());
+        assertTrue(stats.getCompressedBytes() < stats.getUncompressedBytes());
+        assertTrue(stats.getRatio() < 0.5);
+        assertTrue(stats.isCompressionEnabled());
+    }
+
+    @Test
+    public void disableIncompressible() throws Exception
+    {
+        send((short) 1, randomData(1000), 10);
+        send((short) 2, repetitiveData(1000), 10);
+
+        final CompressionStats incompressible = client.getStats((short) 1);
+        assertFalse(incompressible.isCompressionEnabled());
+        assertEquals(10, incompressible.getPacketsSent());
+        assertEquals(0, incompressible.getPacketsCompressed());
+        assertTrue(incompressible.getRatio() > CompressionClient.DEFAULT_MAX_RATIO);
+
+        assertTrue(client.getStats((short) 2).isCompressionEnabled());
+        assertEquals(2, client.getStats().size());
+    }
+
+    @Test
+    public void probe() throws Exception
+    {
+        client.setProbeInterval(5);
+
+        send((short) 1, randomData(1000), 4);
+        assertFalse(client.getStats((short) 1).isCompressionEnabled());
+
+        // The fifth Packet after disabling is a probe
+        send((short) 1, repetitiveData(1000), 4);
+        assertFalse(client.getStats((short) 1).isCompressionEnabled());
+        send((short) 1, repetitiveData(1000), 1);
+        assertTrue(client.getStats((short) 1).isCompressionEnabled());
+        assertEquals(1, client.getStats((short) 1).getPacketsCompressed());
+    }
+}
@@ -25,18 +25,48 @@
 package nl.pvdberg.pnet.client.util;
 
 import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.event.AsyncListener;
+import nl.pvdberg.pnet.event.DistributerListener;
 import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.event.PacketDistributer;
+import nl.pvdberg.pnet.event.PacketHandler;
+import nl.pvdberg.pnet.event.ReplyListener;
+import nl.pvdberg.pnet.event.RequestHandler;
 import nl.pvdberg.pnet.event.ReceiveListener;
+import nl.pvdberg.pnet.packet.Codecs;
+import nl.pvdberg.pnet.packet.DeflateCompressor;
+import nl.pvdberg.pnet.packet.DictionaryCompressor;
+import nl.pvdberg.pnet.packet.FileBufferPool;
+import nl.pvdberg.pnet.packet.LZ4Compressor;
 import nl.pvdberg.pnet.packet.Packet;
 import nl.pvdberg.pnet.packet.PacketBuilder;
+import nl.pvdberg.pnet.packet.PacketFraming;
+import nl.pvdberg.pnet.packet.PacketReader;
 import nl.pvdberg.pnet.server.Server;
 import nl.pvdberg.pnet.server.util.PlainServer;
+import nl.pvdberg.pnet.threading.ThreadManager;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
 
@@ -124,4 +154,600 @@ public class PlainClientTest
 
         assertTrue(client.connect("localhost", port));
     }
-}
\ No newline at end of file
+
+    @Test(timeout=5000)
+    public void compactFraming() throws Exception
+    {
+        final short[] ids = {0, 1, 63, 64, Short.MAX_VALUE, Short.MIN_VALUE, -1};
+        final int[] lengths = {0, 1, 127, 128, 70000};
+        final Random random = new Random();
+        final Packet[] packets = new Packet[ids.length * lengths.length];
+        for (int i = 0; i < packets.length; i++)
+        {
+            final byte[] data = new byte[lengths[i % lengths.length]];
+            random.nextBytes(data);
+            packets[i] = new Packet(i % 2 == 0 ? Packet.PacketType.Request : Packet.PacketType.Reply, ids[i / lengths.length], data);
+        }
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger received = new AtomicInteger();
+
+        // Packets sent while the framing is negotiated are written in legacy framing, the rest in compact framing
+        server.setPacketFraming(PacketFraming.Compact);
+        server.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                final Packet expected = packets[received.getAndIncrement()];
+                assertEquals(expected.getPacketType(), p.getPacketType());
+                assertEquals(expected.getPacketID(), p.getPacketID());
+                assertArrayEquals(expected.getData(), p.getData());
+                if (received.get() == packets.length) latch.countDown();
+            }
+        });
+
+        client.setPacketFraming(PacketFraming.Compact);
+        assertTrue(client.connect("localhost", port));
+        for (final Packet packet : packets)
+        {
+            assertTrue(client.send(packet));
+        }
+
+        latch.await();
+    }
+
+    @Test(timeout=5000)
+    public void framingNegotiation() throws Exception
+    {
+        final AtomicInteger unexpected = new AtomicInteger();
+        server.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                if (p.getPacketID() != 1) unexpected.incrementAndGet();
+                c.send(new Packet(Packet.PacketType.Reply, p.getPacketID(), p.getData()));
+            }
+        });
+
+        // A side which only speaks legacy framing is not sent compact headers
+        final PacketFraming[][] framings = {
+                { PacketFraming.Legacy, PacketFraming.Compact },
+                { PacketFraming.Compact, PacketFraming.Legacy }
+        };
+        for (final PacketFraming[] framing : framings)
+        {
+            server.setPacketFraming(framing[0]);
+            client.setPacketFraming(framing[1]);
+
+            final int amount = 100;
+            final CountDownLatch latch = new CountDownLatch(amount);
+            client.setClientListener(new ReceiveListener()
+            {
+                @Override
+                public void onReceive(final Packet p, final Client c) throws IOException
+                {
+                    if (p.getPacketID() != 1 || p.getDataLength() != 10) unexpected.incrementAndGet();
+                    latch.countDown();
+                }
+            });
+
+            assertTrue(client.connect("localhost", port));
+            for (int i = 0; i < amount; i++)
+            {
+                assertTrue(client.send(new Packet(Packet.PacketType.Request, (short) 1, new byte[10])));
+            }
+            client.flush();
+
+            latch.await();
+            client.close();
+        }
+        assertEquals(0, unexpected.get());
+    }
+
+    @Test(timeout=5000)
+    public void sendFile() throws Exception
+    {
+        final byte[] content = new byte[300000];
+        new Random().nextBytes(content);
+        final File file = File.createTempFile("pnet", ".bin");
+        file.deleteOnExit();
+        final FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(content);
+        fileOutputStream.close();
+
+        final int offset = 1000;
+        final int length = 200000;
+        final byte[] expected = Arrays.copyOfRange(content, offset, offset + length);
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        final AtomicInteger received = new AtomicInteger();
+
+        server.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                // The file is followed by a normal Packet
+                if (received.getAndIncrement() == 0)
+                {
+                    assertEquals(5, p.getPacketID());
+                    assertArrayEquals(expected, p.getData());
+                }
+                else
+                {
+                    assertEquals(6, p.getPacketID());
+                }
+                latch.countDown();
+            }
+        });
+
+        assertTrue(client.connect("localhost", port));
+        assertFalse(client.sendFile((short) 5, file, offset, content.length));
+        assertTrue(client.sendFile((short) 5, file, offset, length));
+        assertTrue(client.send(new Packet(Packet.PacketType.Request, (short) 6, new byte[10])));
+        assertTrue(client.flush());
+
+        latch.await();
+        assertEquals(2, received.get());
+    }
+
+    @Test(timeout=5000)
+    public void receiveToFile() throws Exception
+    {
+        final byte[] data = new byte[100000];
+        new Random().nextBytes(data);
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        final AtomicReference<File> smallFile = new AtomicReference<File>();
+        final AtomicReference<File> largeFile = new AtomicReference<File>();
+        final AtomicReference<byte[]> largeData = new AtomicReference<byte[]>();
+
+        server.setBufferPool(new FileBufferPool(null, 1024));
+        server.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                if (p.getPacketID() == 1)
+                {
+                    smallFile.set(p.getFile());
+                }
+                else
+                {
+                    largeFile.set(p.getFile());
+                    largeData.set(p.getData());
+                }
+                latch.countDown();
+            }
+        });
+
+        assertTrue(client.connect("localhost", port));
+        assertTrue(client.send(new Packet(Packet.PacketType.Request, (short) 1, new byte[10])));
+        assertTrue(client.send(new Packet(Packet.PacketType.Request, (short) 2, data)));
+        assertTrue(client.flush());
+
+        latch.await();
+        assertNull(smallFile.get());
+        assertNotNull(largeFile.get());
+        assertArrayEquals(data, largeData.get());
+    }
+
+    @Test(timeout=5000)
+    public void compression() throws Exception
+    {
+        final byte[] text = "{\"id\":12345,\"name\":\"player\",\"position\":[1.0,2.0,3.0]}".getBytes("UTF-8");
+        final byte[] data = new byte[50000];
+        for (int i = 0; i < data.length; i++) data[i] = text[i % text.length];
+
+        final CountDownLatch latch = new CountDownLatch(3);
+        final AtomicInteger failures = new AtomicInteger();
+
+        server.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                if (p.getCodecID() != 0 || !Arrays.equals(data, p.getData())) failures.incrementAndGet();
+                latch.countDown();
+            }
+        });
+
+        final CompressionClient compressionClient = new CompressionClient(client, new DeflateCompressor());
+        compressionClient.setCodec((short) 2, new LZ4Compressor());
+        compressionClient.setCodec((short) 3, null);
+        assertTrue(compressionClient.getCodec((short) 1) instanceof DeflateCompressor);
+        assertEquals(Codecs.LZ4, compressionClient.getCodec((short) 2).getCodecID());
+        assertNull(compressionClient.getCodec((short) 3));
+
+        assertTrue(compressionClient.connect("localhost", port));
+        for (short id = 1; id <= 3; id++)
+        {
+            assertTrue(compressionClient.send(new Packet(Packet.PacketType.Request, id, data)));
+        }
+
+        latch.await();
+        assertEquals(0, failures.get());
+    }
+
+    @Test(timeout=5000)
+    public void dictionaryCompression() throws Exception
+    {
+        final byte[] data = "{\"type\":\"position\",\"entity\":12,\"x\":3,\"y\":4}".getBytes("UTF-8");
+        final Map<Short, byte[]> dictionaries = new HashMap<Short, byte[]>();
+        dictionaries.put((short) 1, "{\"type\":\"position\",\"entity\":0,\"x\":0,\"y\":0}".getBytes("UTF-8"));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Packet> received = new AtomicReference<Packet>();
+
+        final PacketDistributer packetDistributer = new PacketDistributer();
+        packetDistributer.setDefaultHandler(new PacketHandler()
+        {
+            @Override
+            public void handlePacket(final Packet p, final Client c) throws IOException
+            {
+                received.set(p);
+                latch.countDown();
+            }
+        });
+        final DictionaryNegotiator dictionaryNegotiator = new DictionaryNegotiator(
+                new DictionaryCompressor(dictionaries),
+                new DistributerListener(packetDistributer)
+        );
+        server.setListener(dictionaryNegotiator);
+
+        // Other dictionaries in the same process do not interfere
+        final Map<Short, byte[]> otherDictionaries = new HashMap<Short, byte[]>();
+        otherDictionaries.put((short) 1, "other dictionary".getBytes("UTF-8"));
+        final CompressionClient otherClient = new CompressionClient(new PlainClient());
+        otherClient.setDictionaryCompressor(new DictionaryCompressor(otherDictionaries));
+
+        final CompressionClient compressionClient = new CompressionClient(client);
+        compressionClient.setDictionaryCompressor(new DictionaryCompressor(dictionaries));
+
+        assertTrue(otherClient.connect("localhost", port));
+        assertTrue(compressionClient.connect("localhost", port));
+        while (!compressionClient.isDictionaryNegotiated()) Thread.sleep(10);
+        assertTrue(compressionClient.send(new Packet(Packet.PacketType.Request, (short) 1, data)));
+
+        latch.await();
+        assertArrayEquals(data, received.get().getData());
+        assertEquals(0, received.get().getCodecID());
+        assertEquals(1, compressionClient.getStats((short) 1).getPacketsCompressed());
+        assertFalse(otherClient.isDictionaryNegotiated());
+        otherClient.close();
+    }
+
+    @Test(timeout=5000)
+    public void streamCompression() throws Exception
+    {
+        final byte[] content = new byte[100000];
+        new Random().nextBytes(content);
+        final File file = File.createTempFile("pnet", ".bin");
+        file.deleteOnExit();
+        final FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(content);
+        fileOutputStream.close();
+
+        final int amount = 100;
+        final CountDownLatch latch = new CountDownLatch(amount);
+        final AtomicInteger failures = new AtomicInteger();
+
+        server.setStreamCompression(true);
+        server.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                // Echo everything, so both directions are compressed
+                if (p.isRequest()) c.send(new Packet(Packet.PacketType.Reply, p.getPacketID(), p.getData()));
+            }
+        });
+
+        client.setStreamCompression(true);
+        client.setClientListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                final byte[] expected = p.getPacketID() == 0 ? content : new PacketBuilder(Packet.PacketType.Request).withString("message " + p.getPacketID()).getBytes();
+                if (!Arrays.equals(expected, p.getData())) failures.incrementAndGet();
+                latch.countDown();
+            }
+        });
+
+        assertTrue(client.connect("localhost", port));
+        assertTrue(client.sendFile((short) 0, file, 0, content.length));
+        for (short id = 1; id < amount; id++)
+        {
+            assertTrue(client.send(new PacketBuilder(Packet.PacketType.Request).withID(id).withString("message " + id).build()));
+        }
+        assertTrue(client.flush());
+
+        latch.await();
+        assertEquals(0, failures.get());
+    }
+
+    @Test(timeout=5000)
+    public void streamCompressionDeclined() throws Exception
+    {
+        final int amount = 100;
+        final CountDownLatch latch = new CountDownLatch(amount);
+        final AtomicInteger failures = new AtomicInteger();
+
+        // Only the server offers stream compression, so both directions stay uncompressed
+        server.setStreamCompression(true);
+        server.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                if (p.isRequest()) c.send(new Packet(Packet.PacketType.Reply, p.getPacketID(), p.getData()));
+            }
+        });
+
+        client.setClientListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                final byte[] expected = new PacketBuilder(Packet.PacketType.Request).withString("message " + p.getPacketID()).getBytes();
+                if (!Arrays.equals(expected, p.getData())) failures.incrementAndGet();
+                latch.countDown();
+            }
+        });
+
+        assertTrue(client.connect("localhost", port));
+        for (short id = 0; id < amount; id++)
+        {
+            assertTrue(client.send(new PacketBuilder(Packet.PacketType.Request).withID(id).withString("message " + id).build()));
+        }
+        assertTrue(client.flush());
+
+        latch.await();
+        assertEquals(0, failures.get());
+    }
+
+    @Test(timeout=10000)
+    public void rpc() throws Exception
+    {
+        final PacketDistributer packetDistributer = new PacketDistributer();
+        packetDistributer.addHandler(RPCClient.RPC_ID, new RPCHandler(new RequestHandler()
+        {
+            @Override
+            public Packet handleRequest(final Packet request, final Client c) throws IOException
+            {
+                final int value = new PacketReader(request).readInt();
+                return new PacketBuilder(Packet.PacketType.Reply).withID(request.getPacketID()).withInt(value * 2).build();
+            }
+        }));
+        server.setListener(new DistributerListener(packetDistributer));
+
+        final RPCClient rpcClient = new RPCClient(client);
+        assertTrue(rpcClient.connect("localhost", port));
+
+        // All requests share a Packet ID and are in flight at once
+        final int amount = 1000;
+        final List<RPCFuture> futures = new ArrayList<RPCFuture>();
+        for (int i = 0; i < amount; i++)
+        {
+            futures.add(rpcClient.request(new PacketBuilder(Packet.PacketType.Request).withID((short) 7).withInt(i).build()));
+        }
+
+        for (int i = 0; i < amount; i++)
+        {
+            final Packet reply = futures.get(i).get();
+            assertEquals(7, reply.getPacketID());
+            assertEquals(i * 2, new PacketReader(reply).readInt());
+        }
+        assertEquals(0, rpcClient.getPendingRequests());
+    }
+
+    @Test(timeout=5000)
+    public void rpcTimeout() throws Exception
+    {
+        // Requests are not answered
+        final RPCClient rpcClient = new RPCClient(client);
+        assertTrue(rpcClient.connect("localhost", port));
+
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final RPCFuture future = rpcClient.request(new Packet(Packet.PacketType.Request, (short) 1, new byte[0]), 100, TimeUnit.MILLISECONDS);
+        future.addListener(new ReplyListener()
+        {
+            @Override
+            public void onReply(final Packet reply)
+            {
+            }
+
+            @Override
+            public void onFailure(final Exception e)
+            {
+                failure.set(e);
+                latch.countDown();
+            }
+        });
+
+        try
+        {
+            future.get();
+            fail("Request did not time out");
+        }
+        catch (final ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        latch.await();
+        assertTrue(failure.get() instanceof TimeoutException);
+        assertEquals(0, rpcClient.getPendingRequests());
+    }
+
+    @Test(timeout=5000)
+    public void rpcTimeoutAfterSchedulerShutdown() throws Exception
+    {
+        // Requests are not answered
+        final RPCClient rpcClient = new RPCClient(client);
+        assertTrue(rpcClient.connect("localhost", port));
+        final RPCFuture future = rpcClient.request(new Packet(Packet.PacketType.Request, (short) 1, new byte[0]), 100, TimeUnit.MILLISECONDS);
+
+        // Shut down a throwaway ExecutorService, so the listener thread keeps running
+        final ExecutorService previous = ThreadManager.setExecutorService(Executors.newCachedThreadPool());
+        try
+        {
+            ThreadManager.shutdown();
+        }
+        finally
+        {
+            ThreadManager.setExecutorService(previous);
+        }
+
+        try
+        {
+            future.get();
+            fail("Request did not time out");
+        }
+        catch (final ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(0, rpcClient.getPendingRequests());
+    }
+
+    @Test(timeout=5000)
+    public void asyncSenderRejected() throws Exception
+    {
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        executorService.shutdown();
+        final AsyncClient asyncClient = new AsyncClient(client, executorService);
+
+        final AtomicInteger failures = new AtomicInteger();
+        final AsyncListener asyncListener = new AsyncListener()
+        {
+            @Override
+            public void onCompletion(final boolean success)
+            {
+                if (!success) failures.incrementAndGet();
+            }
+        };
+
+        // Every attempt fails, instead of queueing behind a sender thread which never started
+        for (int i = 0; i < 2; i++)
+        {
+            assertFalse(asyncClient.sendAsync(new Packet(Packet.PacketType.Request, (short) 1, new byte[1]), asyncListener));
+        }
+        assertEquals(2, failures.get());
+        assertEquals(0, asyncClient.getQueueDepth(AsyncClient.PRIORITY_NORMAL));
+    }
+
+    @Test(timeout=10000)
+    public void multiplexing() throws Exception
+    {
+        final byte[] bulk = new byte[1000000];
+        new Random().nextBytes(bulk);
+        final int amount = 10;
+
+        final CountDownLatch latch = new CountDownLatch(amount + 1);
+        final List<Short> order = Collections.synchronizedList(new ArrayList<Short>());
+        final AtomicInteger failures = new AtomicInteger();
+
+        server.setListener(new DemultiplexListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                if (p.getPacketID() == 1 && !Arrays.equals(bulk, p.getData())) failures.incrementAndGet();
+                if (p.getPacketID() == 2 && p.getDataLength() != 10) failures.incrementAndGet();
+                order.add(p.getPacketID());
+                latch.countDown();
+            }
+        }));
+
+        // The writer thread is held back until all Packets are queued
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        final CountDownLatch queued = new CountDownLatch(1);
+        executorService.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    queued.await();
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        final MultiplexClient multiplexClient = new MultiplexClient(client, 1024, executorService);
+        assertTrue(multiplexClient.connect("localhost", port));
+
+        // The small Packets do not wait for the bulk Packet, which is queued first
+        assertTrue(multiplexClient.send(1, new Packet(Packet.PacketType.Request, (short) 1, bulk)));
+        for (int i = 0; i < amount; i++)
+        {
+            assertTrue(multiplexClient.send(2, new Packet(Packet.PacketType.Request, (short) 2, new byte[10])));
+        }
+        queued.countDown();
+
+        latch.await();
+        executorService.shutdown();
+        assertEquals(0, failures.get());
+        assertEquals(1, (short) order.get(amount));
+    }
+
+    @Test(timeout=5000)
+    public void multiplexWriterRejected() throws Exception
+    {
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        executorService.shutdown();
+        final MultiplexClient multiplexClient = new MultiplexClient(client, 1024, executorService);
+        assertTrue(multiplexClient.connect("localhost", port));
+
+        // Every attempt fails, instead of queueing behind a writer thread which never started
+        for (int i = 0; i < 2; i++)
+        {
+            assertFalse(multiplexClient.send(1, new Packet(Packet.PacketType.Request, (short) 1, new byte[1])));
+        }
+        assertEquals(0, multiplexClient.getQueuedPackets(1));
+    }
+
+    @Test(timeout=5000)
+    public void multiplexQueueBound() throws Exception
+    {
+        // The writer thread is held back, so Packets stay queued
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        final CountDownLatch queued = new CountDownLatch(1);
+        executorService.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    queued.await();
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        final MultiplexClient multiplexClient = new MultiplexClient(client, 1024, executorService, 2);
+        assertTrue(multiplexClient.connect("localhost", port));
+
+        final Packet packet = new Packet(Packet.PacketType.Request, (short) 1, new byte[1]);
+        assertTrue(multiplexClient.send(1, packet));
+        assertTrue(multiplexClient.send(1, packet));
+        assertFalse(multiplexClient.send(1, packet));
+        assertTrue(multiplexClient.send(2, packet));
+        assertEquals(2, multiplexClient.getQueuedPackets(1));
+
+        queued.countDown();
+        executorService.shutdown();
+    }
+}
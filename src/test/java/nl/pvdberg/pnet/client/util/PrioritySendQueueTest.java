@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.client.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrioritySendQueueTest
+{
+    private static final int MAX = Integer.MAX_VALUE;
+
+    @Test
+    public void highPriorityFirst() throws Exception
+    {
+        final PrioritySendQueue<String> queue = new PrioritySendQueue<String>(new int[] { 4, 1 }, new int[] { MAX, MAX });
+        assertTrue(queue.offer("bulk", 1, 100));
+        assertTrue(queue.offer("control", 0, 10));
+
+        assertEquals("control", queue.poll());
+        assertEquals("bulk", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void weightedShares() throws Exception
+    {
+        final PrioritySendQueue<Integer> queue = new PrioritySendQueue<Integer>(new int[] { 3, 1 }, new int[] { MAX, MAX });
+        for (int i = 0; i < 400; i++)
+        {
+            queue.offer(0, 0, PrioritySendQueue.QUANTUM);
+            queue.offer(1, 1, PrioritySendQueue.QUANTUM);
+        }
+
+        // While both levels are busy, the first level sends 3 times as much
+        final int[] sent = new int[2];
+        for (int i = 0; i < 400; i++)
+        {
+            sent[queue.poll()]++;
+        }
+        assertEquals(300, sent[0]);
+        assertEquals(100, sent[1]);
+    }
+
+    @Test
+    public void noStarvation() throws Exception
+    {
+        final PrioritySendQueue<Integer> queue = new PrioritySendQueue<Integer>(new int[] { 16, 1 }, new int[] { MAX, MAX });
+        queue.offer(1, 1, 1000000);
+
+        // Large Packets gather credit over multiple turns
+        boolean lowSent = false;
+        for (int i = 0; i < 10000 && !lowSent; i++)
+        {
+            queue.offer(0, 0, 100);
+            lowSent = queue.poll() == 1;
+        }
+        assertTrue(lowSent);
+    }
+
+    @Test
+    public void bounds() throws Exception
+    {
+        final PrioritySendQueue<String> queue = new PrioritySendQueue<String>(new int[] { 1, 1 }, new int[] { 2, MAX });
+        assertTrue(queue.offer("a", 0, 1));
+        assertTrue(queue.offer("b", 0, 1));
+        assertFalse(queue.offer("c", 0, 1));
+        assertTrue(queue.offer("d", 1, 1));
+
+        assertEquals(2, queue.getDepth(0));
+        assertEquals(1, queue.getRejected(0));
+        assertEquals(0, queue.getRejected(1));
+
+        queue.poll();
+        assertEquals(1, queue.getDepth(0));
+        assertEquals(2, queue.getPeakDepth(0));
+
+        assertEquals(2, queue.clear().size());
+        assertEquals(0, queue.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPriority() throws Exception
+    {
+        new PrioritySendQueue<String>(new int[] { 1 }, new int[] { 1 }).offer("a", 1, 1);
+    }
+}
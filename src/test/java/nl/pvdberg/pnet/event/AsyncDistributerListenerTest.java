@@ -0,0 +1,198 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.event;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.client.util.PlainClient;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketBuffer;
+import nl.pvdberg.pnet.packet.PacketBuilder;
+import nl.pvdberg.pnet.packet.PacketReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+public class AsyncDistributerListenerTest
+{
+    protected PacketDistributer packetDistributer;
+    protected ExecutorService executorService;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        packetDistributer = new PacketDistributer();
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        executorService.shutdownNow();
+    }
+
+    @Test(timeout=5000)
+    public void perClientOrdering() throws Exception
+    {
+        final int amount = 1000;
+        final Client client1 = new PlainClient();
+        final Client client2 = new PlainClient();
+        final List<Short> received1 = Collections.synchronizedList(new ArrayList<Short>());
+        final List<Short> received2 = Collections.synchronizedList(new ArrayList<Short>());
+        final CountDownLatch latch = new CountDownLatch(amount * 2);
+
+        packetDistributer.setDefaultHandler(new PacketHandler()
+        {
+            @Override
+            public void handlePacket(final Packet p, final Client c) throws IOException
+            {
+                if (c == client1) received1.add(p.getPacketID());
+                else received2.add(p.getPacketID());
+                latch.countDown();
+            }
+        });
+
+        final AsyncDistributerListener listener = new AsyncDistributerListener(packetDistributer, executorService);
+        for (short i = 0; i < amount; i++)
+        {
+            final Packet packet = new PacketBuilder(Packet.PacketType.Request).withID(i).build();
+            listener.onReceive(packet, client1);
+            listener.onReceive(packet, client2);
+        }
+
+        latch.await();
+
+        for (short i = 0; i < amount; i++)
+        {
+            assertEquals(i, received1.get(i).shortValue());
+            assertEquals(i, received2.get(i).shortValue());
+        }
+    }
+
+    @Test(timeout=5000)
+    public void noHeadOfLineBlocking() throws Exception
+    {
+        final Client slowClient = new PlainClient();
+        final Client fastClient = new PlainClient();
+        final CountDownLatch slowLatch = new CountDownLatch(1);
+        final CountDownLatch fastLatch = new CountDownLatch(1);
+
+        packetDistributer.setDefaultHandler(new PacketHandler()
+        {
+            @Override
+            public void handlePacket(final Packet p, final Client c) throws IOException
+            {
+                if (c == fastClient)
+                {
+                    fastLatch.countDown();
+                    return;
+                }
+
+                try
+                {
+                    // Block until the other Client is handled
+                    fastLatch.await();
+                    slowLatch.countDown();
+                }
+                catch (final InterruptedException e)
+                {
+                    throw new IOException(e);
+                }
+            }
+        });
+
+        final AsyncDistributerListener listener = new AsyncDistributerListener(packetDistributer, executorService);
+        final Packet packet = new PacketBuilder(Packet.PacketType.Request).build();
+        listener.onReceive(packet, slowClient);
+        listener.onReceive(packet, fastClient);
+
+        slowLatch.await();
+    }
+
+    @Test(timeout=5000)
+    public void perPacketIDOrdering() throws Exception
+    {
+        final int amount = 1000;
+        final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(amount);
+
+        packetDistributer.addHandler((short) 1, new PacketHandler()
+        {
+            @Override
+            public void handlePacket(final Packet p, final Client c) throws IOException
+            {
+                received.add(new PacketReader(p).readInt());
+                latch.countDown();
+            }
+        });
+
+        final AsyncDistributerListener listener = new AsyncDistributerListener(
+                packetDistributer,
+                executorService,
+                AsyncDistributerListener.Ordering.PerPacketID
+        );
+
+        // Different Clients, same Packet ID
+        for (int i = 0; i < amount; i++)
+        {
+            final Packet packet = new PacketBuilder(Packet.PacketType.Request).withID((short) 1).withInt(i).build();
+            listener.onReceive(packet, new PlainClient());
+        }
+
+        latch.await();
+
+        for (int i = 0; i < amount; i++) assertEquals(i, received.get(i).intValue());
+    }
+
+    @Test(timeout=5000)
+    public void rejectedPacketReleased() throws Exception
+    {
+        executorService.shutdown();
+        final AsyncDistributerListener listener = new AsyncDistributerListener(packetDistributer, executorService);
+        final PacketBuffer buffer = PacketBuffer.wrap(new byte[10]);
+        final Packet packet = new Packet(Packet.PacketType.Request, (short) 1, buffer);
+
+        try
+        {
+            listener.onReceive(packet, new PlainClient());
+            fail("Packet was not rejected");
+        }
+        catch (final RejectedExecutionException e)
+        {
+            // Only the reference of the caller is left
+            assertEquals(1, buffer.refCount());
+        }
+    }
+}
@@ -129,4 +129,45 @@ public class PacketDistributerTest
         packetDistributer.onReceive(packet2, null);
         assertTrue(receivedPackets.size() == 3);
     }
+
+    @Test
+    public void negativePacketID() throws Exception
+    {
+        final List<Packet> receivedPackets = new ArrayList<Packet>();
+
+        packetDistributer.addHandler((short) -1, new PacketHandler()
+        {
+            @Override
+            public void handlePacket(final Packet p, final Client c) throws IOException
+            {
+                receivedPackets.add(p);
+            }
+        });
+        assertNotNull(packetDistributer.getHandler((short) -1));
+        assertNull(packetDistributer.getHandler(Short.MAX_VALUE));
+
+        packetDistributer.onReceive(new PacketBuilder(Packet.PacketType.Request).withID(Short.MAX_VALUE).build(), null);
+        assertTrue(receivedPackets.isEmpty());
+
+        packetDistributer.onReceive(new PacketBuilder(Packet.PacketType.Request).withID((short) -1).build(), null);
+        assertTrue(receivedPackets.size() == 1);
+
+        packetDistributer.clearHandlers();
+        assertNull(packetDistributer.getHandler((short) -1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateHandler() throws Exception
+    {
+        final PacketHandler packetHandler = new PacketHandler()
+        {
+            @Override
+            public void handlePacket(final Packet p, final Client c) throws IOException
+            {
+
+            }
+        };
+        packetDistributer.addHandler(packet1.getPacketID(), packetHandler);
+        packetDistributer.addHandler(packet1.getPacketID(), packetHandler);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest
+{
+    @Test
+    public void reuse() throws Exception
+    {
+        final BufferPool pool = new BufferPool();
+
+        final PacketBuffer buffer = pool.allocate(100);
+        assertEquals(100, buffer.getLength());
+        assertEquals(128, buffer.getBuffer().capacity());
+        assertTrue(buffer.isPooled());
+        assertTrue(buffer.release());
+        assertEquals(1, pool.getFreeBuffers());
+
+        assertSame(buffer, pool.allocate(128));
+        assertEquals(0, pool.getFreeBuffers());
+    }
+
+    @Test
+    public void unpooled() throws Exception
+    {
+        final BufferPool pool = new BufferPool(false, 1024, 4);
+
+        final PacketBuffer buffer = pool.allocate(1025);
+        assertFalse(buffer.isPooled());
+        assertTrue(buffer.release());
+        assertEquals(0, pool.getFreeBuffers());
+    }
+
+    @Test
+    public void refCount() throws Exception
+    {
+        final BufferPool pool = new BufferPool(true);
+
+        final PacketBuffer buffer = pool.allocate(10);
+        assertEquals(1, buffer.refCount());
+        buffer.retain();
+        assertFalse(buffer.release());
+        assertTrue(buffer.release());
+        assertEquals(0, buffer.refCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void doubleRelease() throws Exception
+    {
+        final PacketBuffer buffer = new BufferPool().allocate(10);
+        buffer.release();
+        buffer.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void retainReleased() throws Exception
+    {
+        final PacketBuffer buffer = new BufferPool().allocate(10);
+        buffer.release();
+        buffer.retain();
+    }
+
+    @Test
+    public void pooledPacket() throws Exception
+    {
+        pooledPacket(new BufferPool(false));
+        pooledPacket(new BufferPool(true));
+    }
+
+    private void pooledPacket(final BufferPool pool) throws Exception
+    {
+        final byte[] data = new byte[10000];
+        new Random().nextBytes(data);
+
+        final ByteArrayOutputStream bout1 = new ByteArrayOutputStream();
+        new Packet(Packet.PacketType.Reply, (short) 5, data).write(new DataOutputStream(bout1));
+
+        final Packet packet = Packet.fromStream(new DataInputStream(new ByteArrayInputStream(bout1.toByteArray())), pool);
+        assertEquals(Packet.PacketType.Reply, packet.getPacketType());
+        assertEquals(5, packet.getPacketID());
+        assertEquals(data.length, packet.getDataLength());
+        assertArrayEquals(data, packet.getData());
+
+        final ByteArrayOutputStream bout2 = new ByteArrayOutputStream();
+        packet.write(new DataOutputStream(bout2));
+        assertArrayEquals(bout1.toByteArray(), bout2.toByteArray());
+
+        packet.release();
+        assertEquals(1, pool.getFreeBuffers());
+    }
+
+    @Test
+    public void build() throws Exception
+    {
+        final BufferPool pool = new BufferPool();
+        final Packet packet = new PacketBuilder(Packet.PacketType.Request)
+                .withInt(42)
+                .withString("pooled")
+                .build(pool);
+
+        final PacketReader reader = new PacketReader(packet);
+        assertEquals(42, reader.readInt());
+        assertEquals("pooled", reader.readString());
+
+        packet.release();
+        assertEquals(1, pool.getFreeBuffers());
+    }
+}
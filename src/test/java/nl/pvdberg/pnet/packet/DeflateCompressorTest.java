@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class DeflateCompressorTest
+{
+    @Test
+    public void compressAndDecompress() throws Exception
+    {
+        final byte[] data = new byte[8096];
+        new Random().nextBytes(data);
+        final Packet packet = new Packet(Packet.PacketType.Reply, (short) 3, data);
+
+        final DeflateCompressor compressor = new DeflateCompressor();
+        final Packet compressed = compressor.compress(packet);
+        final Packet decompressed = compressor.decompress(compressed);
+
+        assertEquals(Packet.PacketType.Reply, decompressed.getPacketType());
+        assertEquals(3, decompressed.getPacketID());
+        assertArrayEquals(data, decompressed.getData());
+    }
+
+    @Test
+    public void reuse() throws Exception
+    {
+        final byte[] data = "aaaaaaaaaabbbbbbbbbbaaaaaaaaaabbbbbbbbbbaaaaaaaaaabbbbbbbbbb".getBytes("UTF-8");
+        final DeflateCompressor compressor = new DeflateCompressor(Deflater.BEST_SPEED);
+
+        for (int i = 0; i < 3; i++)
+        {
+            final Packet compressed = compressor.compress(new Packet(Packet.PacketType.Request, (short) i, data));
+            assertTrue(compressed.getDataLength() < data.length);
+            assertArrayEquals(data, compressor.decompress(compressed).getData());
+        }
+    }
+
+    @Test
+    public void empty() throws Exception
+    {
+        final DeflateCompressor compressor = new DeflateCompressor();
+        final Packet compressed = compressor.compress(new Packet(Packet.PacketType.Request, (short) 1, new byte[0]));
+        assertEquals(0, compressor.decompress(compressed).getDataLength());
+    }
+
+    @Test
+    public void bufferBacked() throws Exception
+    {
+        final byte[] data = new byte[1000];
+        new Random().nextBytes(data);
+        final DeflateCompressor compressor = new DeflateCompressor();
+
+        for (final boolean direct : new boolean[] { false, true })
+        {
+            final PacketBuffer buffer = new BufferPool(direct).allocate(data.length);
+            buffer.getBuffer().put(data);
+            final Packet packet = new Packet(Packet.PacketType.Request, (short) 1, buffer);
+
+            assertArrayEquals(data, compressor.decompress(compressor.compress(packet)).getData());
+            packet.release();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void truncated() throws Exception
+    {
+        final byte[] data = new byte[1000];
+        new Random().nextBytes(data);
+        final DeflateCompressor compressor = new DeflateCompressor();
+
+        final byte[] compressed = compressor.compress(new Packet(Packet.PacketType.Request, (short) 1, data)).getData();
+        compressor.decompress(new Packet(Packet.PacketType.Request, (short) 1, Arrays.copyOf(compressed, compressed.length / 2)));
+    }
+
+    @Test(expected = IOException.class)
+    public void maxDataLength() throws Exception
+    {
+        final DeflateCompressor compressor = new DeflateCompressor();
+        final Packet compressed = compressor.compress(new Packet(Packet.PacketType.Request, (short) 1, new byte[1000]));
+
+        compressor.setMaxDataLength(999);
+        compressor.decompress(compressed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLevel() throws Exception
+    {
+        new DeflateCompressor(10);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DictionaryCompressorTest
+{
+    private static byte[] sample(final Random random) throws IOException
+    {
+        return ("{\"type\":\"position\",\"entity\":" + random.nextInt(1000) +
+                ",\"x\":" + random.nextInt(100) + ",\"y\":" + random.nextInt(100) + ",\"z\":" + random.nextInt(100) +
+                ",\"moving\":" + random.nextBoolean() + "}").getBytes("UTF-8");
+    }
+
+    private static DictionaryCompressor train() throws IOException
+    {
+        final Random random = new Random(1);
+        final DictionaryTrainer trainer = new DictionaryTrainer();
+        for (int i = 0; i < 100; i++)
+        {
+            trainer.addSample((short) 1, sample(random));
+        }
+        return trainer.train(1024);
+    }
+
+    @Test
+    public void compressAndDecompress() throws Exception
+    {
+        final DictionaryCompressor compressor = train();
+        assertTrue(compressor.hasDictionary((short) 1));
+        assertFalse(compressor.hasDictionary((short) 2));
+
+        final byte[] data = sample(new Random(2));
+        for (short id = 1; id <= 2; id++)
+        {
+            final Packet compressed = compressor.compress(new Packet(Packet.PacketType.Request, id, data));
+            assertEquals(Codecs.DICTIONARY, compressed.getCodecID());
+
+            final Packet decompressed = compressor.decompress(compressed);
+            assertEquals(id, decompressed.getPacketID());
+            assertArrayEquals(data, decompressed.getData());
+        }
+    }
+
+    @Test
+    public void smallerThanDeflate() throws Exception
+    {
+        final DictionaryCompressor compressor = train();
+        final DeflateCompressor deflateCompressor = new DeflateCompressor();
+
+        final Packet packet = new Packet(Packet.PacketType.Request, (short) 1, sample(new Random(2)));
+        final int dictionaryLength = compressor.compress(packet).getDataLength();
+        assertTrue(dictionaryLength < deflateCompressor.compress(packet).getDataLength());
+        assertTrue(dictionaryLength < packet.getDataLength() / 2);
+    }
+
+    @Test(expected = IOException.class)
+    public void differentDictionary() throws Exception
+    {
+        final Map<Short, byte[]> dictionaries = new HashMap<Short, byte[]>();
+        dictionaries.put((short) 1, "{\"type\":\"something else\"}".getBytes("UTF-8"));
+
+        final Packet compressed = train().compress(new Packet(Packet.PacketType.Request, (short) 1, sample(new Random(2))));
+        new DictionaryCompressor(dictionaries).decompress(compressed);
+    }
+
+    @Test
+    public void writeAndRead() throws Exception
+    {
+        final DictionaryCompressor compressor = train();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compressor.write(new DataOutputStream(out));
+        final DictionaryCompressor read = DictionaryCompressor.read(new DataInputStream(new ByteArrayInputStream(out.toByteArray())));
+
+        assertEquals(compressor.getChecksum(), read.getChecksum());
+        assertArrayEquals(compressor.getDictionaries().get((short) 1), read.getDictionaries().get((short) 1));
+    }
+
+    @Test
+    public void checksum() throws Exception
+    {
+        final Map<Short, byte[]> dictionaries = new HashMap<Short, byte[]>();
+        dictionaries.put((short) 1, new byte[] { 1, 2, 3 });
+        final long checksum = new DictionaryCompressor(dictionaries).getChecksum();
+
+        dictionaries.put((short) 1, new byte[] { 1, 2, 4 });
+        assertTrue(checksum != new DictionaryCompressor(dictionaries).getChecksum());
+
+        dictionaries.remove((short) 1);
+        dictionaries.put((short) 2, new byte[] { 1, 2, 3 });
+        assertTrue(checksum != new DictionaryCompressor(dictionaries).getChecksum());
+    }
+
+    @Test
+    public void trainer() throws Exception
+    {
+        final DictionaryTrainer trainer = new DictionaryTrainer();
+        final Random random = new Random();
+        for (int i = 0; i < 10; i++)
+        {
+            final byte[] noise = new byte[100];
+            random.nextBytes(noise);
+            trainer.addSample((short) 1, noise);
+            trainer.addSample((short) 2, sample(random));
+        }
+        assertEquals(10, trainer.getSampleCount((short) 1));
+
+        // Random samples do not share content
+        assertNull(trainer.train((short) 1, 1024));
+        assertNull(trainer.train((short) 3, 1024));
+
+        final byte[] dictionary = trainer.train((short) 2, 64);
+        assertEquals(64, dictionary.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notRegistrable() throws Exception
+    {
+        Codecs.register(new DictionaryCompressor(new HashMap<Short, byte[]>()));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FileBufferPoolTest
+{
+    @Test
+    public void belowThreshold() throws Exception
+    {
+        final FileBufferPool pool = new FileBufferPool(null, 1024);
+
+        final PacketBuffer buffer = pool.allocate(1023);
+        assertNull(buffer.getFile());
+        assertTrue(buffer.isPooled());
+        assertTrue(buffer.release());
+    }
+
+    @Test
+    public void aboveThreshold() throws Exception
+    {
+        final FileBufferPool pool = new FileBufferPool(null, 1024);
+
+        final PacketBuffer buffer = pool.allocate(100000);
+        final File file = buffer.getFile();
+        assertNotNull(file);
+        assertTrue(file.exists());
+        assertEquals(100000, file.length());
+        assertFalse(buffer.isPooled());
+        assertTrue(buffer.getBuffer().isDirect());
+
+        final byte[] data = new byte[100000];
+        new Random().nextBytes(data);
+        buffer.getBuffer().put(data);
+        buffer.getBuffer().flip();
+
+        final Packet packet = new Packet(Packet.PacketType.Request, (short) 1, buffer);
+        assertSame(file, packet.getFile());
+        assertArrayEquals(data, packet.getData());
+
+        final PacketBuffer duplicate = buffer.duplicate();
+        assertSame(file, duplicate.getFile());
+        assertTrue(duplicate.release());
+        assertTrue(file.exists());
+
+        packet.release();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void keepFile() throws Exception
+    {
+        final FileBufferPool pool = new FileBufferPool(null, 10);
+
+        final PacketBuffer buffer = pool.allocate(10);
+        final File target = new File(buffer.getFile().getPath() + ".kept");
+        target.deleteOnExit();
+        assertTrue(buffer.getFile().renameTo(target));
+
+        assertTrue(buffer.release());
+        assertTrue(target.exists());
+        assertTrue(target.delete());
+    }
+}
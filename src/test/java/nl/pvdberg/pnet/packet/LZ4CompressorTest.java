@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LZ4CompressorTest
+{
+    private static void assertRoundTrip(final LZ4Compressor compressor, final byte[] data) throws IOException
+    {
+        final Packet compressed = compressor.compress(new Packet(Packet.PacketType.Reply, (short) 7, data));
+        assertEquals(Codecs.LZ4, compressed.getCodecID());
+
+        final Packet decompressed = compressor.decompress(compressed);
+        assertEquals(0, decompressed.getCodecID());
+        assertEquals(7, decompressed.getPacketID());
+        assertArrayEquals(data, decompressed.getData());
+    }
+
+    @Test
+    public void compressAndDecompress() throws Exception
+    {
+        final LZ4Compressor compressor = new LZ4Compressor();
+        final Random random = new Random();
+
+        for (final int length : new int[] {0, 1, 12, 13, 100, 65536, 200000})
+        {
+            final byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertRoundTrip(compressor, data);
+        }
+    }
+
+    @Test
+    public void repetitive() throws Exception
+    {
+        final LZ4Compressor compressor = new LZ4Compressor();
+
+        final byte[] text = "{\"id\":12345,\"name\":\"player\",\"position\":[1.0,2.0,3.0]}".getBytes("UTF-8");
+        final byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) data[i] = text[i % text.length];
+        assertRoundTrip(compressor, data);
+        assertTrue(compressor.compress(new Packet(Packet.PacketType.Request, (short) 1, data)).getDataLength() < data.length / 10);
+
+        // Long runs produce overlapping matches and long lengths
+        final byte[] zeros = new byte[70000];
+        assertRoundTrip(compressor, zeros);
+        assertTrue(compressor.compress(new Packet(Packet.PacketType.Request, (short) 1, zeros)).getDataLength() < 400);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncated() throws Exception
+    {
+        final byte[] data = new byte[1000];
+        Arrays.fill(data, 0, 500, (byte) 1);
+        final LZ4Compressor compressor = new LZ4Compressor();
+
+        final byte[] compressed = compressor.compress(new Packet(Packet.PacketType.Request, (short) 1, data)).getData();
+        compressor.decompress(new Packet(Packet.PacketType.Request, (short) 1, Codecs.LZ4, Arrays.copyOf(compressed, compressed.length - 1)));
+    }
+
+    @Test(expected = IOException.class)
+    public void maxDataLength() throws Exception
+    {
+        final LZ4Compressor compressor = new LZ4Compressor();
+        final Packet compressed = compressor.compress(new Packet(Packet.PacketType.Request, (short) 1, new byte[1000]));
+        compressor.decompress(compressed, 999);
+    }
+
+    @Test
+    public void codecs() throws Exception
+    {
+        assertTrue(Codecs.get(Codecs.LZ4) instanceof LZ4Compressor);
+        assertTrue(Codecs.get(Codecs.DEFLATE) instanceof DeflateCompressor);
+        assertNull(Codecs.get(Packet.MAX_CODEC_ID));
+
+        final byte[] data = new byte[1000];
+        final Packet compressed = new DeflateCompressor().compress(new Packet(Packet.PacketType.Request, (short) 1, data));
+        assertArrayEquals(data, Codecs.decompress(compressed, Integer.MAX_VALUE).getData());
+    }
+}
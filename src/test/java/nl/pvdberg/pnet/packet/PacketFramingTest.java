@@ -0,0 +1,151 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class PacketFramingTest
+{
+    private static byte[] write(final Packet packet, final PacketFraming packetFraming) throws IOException
+    {
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        packet.write(new DataOutputStream(byteArrayOutputStream), packetFraming);
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    @Test
+    public void headerSize() throws Exception
+    {
+        final Packet small = new Packet(Packet.PacketType.Reply, (short) 63, new byte[127]);
+        assertEquals(Packet.HEADER_SIZE, PacketFraming.Legacy.getHeaderSize(small));
+        assertEquals(2, PacketFraming.Compact.getHeaderSize(small));
+        assertEquals(2 + 127, write(small, PacketFraming.Compact).length);
+
+        final Packet large = new Packet(Packet.PacketType.Reply, (short) -1, new byte[Short.MAX_VALUE]);
+        assertEquals(3 + 3, PacketFraming.Compact.getHeaderSize(large));
+        assertTrue(PacketFraming.Compact.getHeaderSize(large) <= PacketFraming.MAX_HEADER_SIZE);
+    }
+
+    @Test
+    public void legacyLayout() throws Exception
+    {
+        final Packet packet = new Packet(Packet.PacketType.Request, (short) 5, new byte[] {1, 2, 3});
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        packet.write(new DataOutputStream(byteArrayOutputStream));
+        assertArrayEquals(byteArrayOutputStream.toByteArray(), write(packet, PacketFraming.Legacy));
+    }
+
+    @Test
+    public void roundTrip() throws Exception
+    {
+        final short[] ids = {0, 1, 64, Short.MAX_VALUE, Short.MIN_VALUE, -1};
+        for (final PacketFraming packetFraming : PacketFraming.values())
+        {
+            for (final short id : ids)
+            {
+                for (final Packet.PacketType packetType : Packet.PacketType.values())
+                {
+                    final Packet packet = new Packet(packetType, id, new byte[] {1, 2, 3});
+                    final byte[] encoded = write(packet, packetFraming);
+
+                    final Packet read = Packet.fromStream(new DataInputStream(new ByteArrayInputStream(encoded)), null, packetFraming);
+                    assertEquals(packetType, read.getPacketType());
+                    assertEquals(id, read.getPacketID());
+                    assertArrayEquals(packet.getData(), read.getData());
+
+                    final ByteBuffer buffer = ByteBuffer.wrap(encoded);
+                    final int headerSize = packetFraming.getHeaderSize(packet);
+                    assertEquals(-1, packetFraming.getHeaderLength(buffer, 0, headerSize - 1));
+                    assertEquals(headerSize, packetFraming.getHeaderLength(buffer, 0, encoded.length));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void codecID() throws Exception
+    {
+        for (final PacketFraming packetFraming : PacketFraming.values())
+        {
+            for (final int codecID : new int[] {0, 1, Packet.MAX_CODEC_ID})
+            {
+                final Packet packet = new Packet(Packet.PacketType.Reply, (short) -1, codecID, new byte[] {1, 2, 3});
+                final byte[] encoded = write(packet, packetFraming);
+                assertEquals(packetFraming.getHeaderSize(packet) + 3, encoded.length);
+                assertTrue(packetFraming.getHeaderSize(packet) <= PacketFraming.MAX_HEADER_SIZE);
+
+                final Packet read = Packet.fromStream(new DataInputStream(new ByteArrayInputStream(encoded)), null, packetFraming);
+                assertEquals(Packet.PacketType.Reply, read.getPacketType());
+                assertEquals(-1, read.getPacketID());
+                assertEquals(codecID, read.getCodecID());
+                assertEquals(packetFraming.getHeaderSize(packet), packetFraming.getHeaderLength(ByteBuffer.wrap(encoded), 0, encoded.length));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedHeader() throws Exception
+    {
+        final ByteBuffer buffer = ByteBuffer.wrap(new byte[] {(byte) 0x80, (byte) 0x80, (byte) 0x80, 0});
+        PacketFraming.Compact.getHeaderLength(buffer, 0, 4);
+    }
+
+    @Test
+    public void negotiationPacket() throws Exception
+    {
+        final Packet offer = PacketFraming.Compact.createNegotiationPacket(Packet.PacketType.Request);
+        assertEquals(PacketFraming.NEGOTIATION_ID, offer.getPacketID());
+        assertTrue(offer.isRequest());
+        assertEquals(PacketFraming.Compact, PacketFraming.readNegotiationPacket(offer));
+    }
+
+    @Test
+    public void negotiate() throws Exception
+    {
+        final Packet offer = PacketFraming.Compact.createNegotiationPacket(Packet.PacketType.Request);
+        assertEquals(PacketFraming.Compact, PacketFraming.negotiate(offer, PacketFraming.Compact));
+        assertNull(PacketFraming.negotiate(offer, PacketFraming.Legacy));
+        assertNull(PacketFraming.negotiate(PacketFraming.Legacy.createNegotiationPacket(Packet.PacketType.Request), PacketFraming.Legacy));
+
+        // Accepted framings are always read
+        final Packet reply = PacketFraming.Compact.createNegotiationPacket(Packet.PacketType.Reply);
+        assertEquals(PacketFraming.Compact, PacketFraming.negotiate(reply, PacketFraming.Legacy));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownNegotiatedFraming() throws Exception
+    {
+        PacketFraming.readNegotiationPacket(new Packet(Packet.PacketType.Request, PacketFraming.NEGOTIATION_ID, new byte[] { 100 }));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReusablePacketBuilderTest
+{
+    private static final Packet.PacketType TYPE = Packet.PacketType.Reply;
+    private static final short ID = 123;
+    private static final String UNICODE_STRING = "H\u00E9llo \u20AC \uD83D\uDE00 \uD800!";
+
+    @Test
+    public void sameLayout() throws Exception
+    {
+        final byte[] expected = new PacketBuilder(TYPE)
+                .withBoolean(true)
+                .withByte((byte) 1)
+                .withBytes(new byte[] {1, 2})
+                .withDouble(0.123d)
+                .withFloat(0.321f)
+                .withInt(Integer.MAX_VALUE)
+                .withLong(Long.MIN_VALUE)
+                .withShort(Short.MIN_VALUE)
+                .withString(UNICODE_STRING)
+                .getBytes();
+
+        final Packet packet = new ReusablePacketBuilder(TYPE)
+                .withID(ID)
+                .withBoolean(true)
+                .withByte((byte) 1)
+                .withBytes(new byte[] {1, 2})
+                .withDouble(0.123d)
+                .withFloat(0.321f)
+                .withInt(Integer.MAX_VALUE)
+                .withLong(Long.MIN_VALUE)
+                .withShort(Short.MIN_VALUE)
+                .withString(UNICODE_STRING)
+                .build();
+
+        assertEquals(TYPE, packet.getPacketType());
+        assertEquals(ID, packet.getPacketID());
+        assertArrayEquals(expected, packet.getData());
+    }
+
+    @Test
+    public void reuse() throws Exception
+    {
+        final ReusablePacketBuilder builder = new ReusablePacketBuilder(TYPE);
+
+        final Packet first = builder.withID(ID).withInt(1).build();
+        final Packet second = builder.reset(Packet.PacketType.Request).withInt(2).build();
+
+        assertEquals(ID, first.getPacketID());
+        assertEquals(1, new PacketReader(first).readInt());
+
+        assertEquals(0, second.getPacketID());
+        assertEquals(Packet.PacketType.Request, second.getPacketType());
+        assertEquals(4, second.getDataLength());
+        assertEquals(2, new PacketReader(second).readInt());
+    }
+
+    @Test
+    public void growPooled() throws Exception
+    {
+        final BufferPool pool = new BufferPool(true);
+        final ReusablePacketBuilder builder = new ReusablePacketBuilder(TYPE, pool);
+
+        for (int i = 0; i < 1000; i++) builder.withInt(i);
+        assertEquals(4000, builder.size());
+        assertTrue(pool.getFreeBuffers() > 0);
+
+        final Packet packet = builder.build(pool);
+        final PacketReader reader = new PacketReader(packet);
+        for (int i = 0; i < 1000; i++) assertEquals(i, reader.readInt());
+        packet.release();
+
+        final int freeBuffers = pool.getFreeBuffers();
+        builder.release();
+        assertEquals(freeBuffers + 1, pool.getFreeBuffers());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void released() throws Exception
+    {
+        final ReusablePacketBuilder builder = new ReusablePacketBuilder(TYPE, 16, false);
+        builder.release();
+        builder.withInt(0);
+    }
+}
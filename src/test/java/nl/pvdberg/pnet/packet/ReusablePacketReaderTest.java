@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class ReusablePacketReaderTest
+{
+    private static final String STRING = "H\u00E9llo \u20AC \uD83D\uDE00";
+
+    private static ReusablePacketBuilder fill(final ReusablePacketBuilder builder)
+    {
+        return builder
+                .withID((short) 123)
+                .withBoolean(true)
+                .withByte((byte) -1)
+                .withBytes(new byte[] {1, 2})
+                .withDouble(0.123d)
+                .withFloat(0.321f)
+                .withInt(Integer.MIN_VALUE)
+                .withLong(Long.MIN_VALUE + 1)
+                .withShort(Short.MIN_VALUE)
+                .withString(STRING);
+    }
+
+    private static void check(final ReusablePacketReader reader) throws IOException
+    {
+        assertEquals(123, reader.getPacketID());
+        assertTrue(reader.readBoolean());
+        assertEquals(-1, reader.readByte());
+        assertArrayEquals(new byte[] {1, 2}, reader.readBytes());
+        assertEquals(0.123d, reader.readDouble(), 0d);
+        assertEquals(0.321f, reader.readFloat(), 0f);
+        assertEquals(Integer.MIN_VALUE, reader.readInt());
+        assertEquals(Long.MIN_VALUE + 1, reader.readLong());
+        assertEquals(Short.MIN_VALUE, reader.readShort());
+        assertEquals(STRING, reader.readString());
+        assertEquals(0, reader.remaining());
+    }
+
+    @Test
+    public void readArray() throws Exception
+    {
+        check(new ReusablePacketReader(fill(new ReusablePacketBuilder(Packet.PacketType.Request)).build()));
+    }
+
+    @Test
+    public void readDirect() throws Exception
+    {
+        final BufferPool pool = new BufferPool(true);
+        final Packet packet = fill(new ReusablePacketBuilder(Packet.PacketType.Request)).build(pool);
+        assertFalse(packet.getBuffer().hasArray());
+
+        check(new ReusablePacketReader(packet));
+        packet.release();
+    }
+
+    @Test
+    public void reuse() throws Exception
+    {
+        final ReusablePacketReader reader = new ReusablePacketReader();
+        final ReusablePacketBuilder builder = new ReusablePacketBuilder(Packet.PacketType.Request);
+
+        for (int i = 0; i < 10; i++)
+        {
+            reader.reset(builder.reset().withInt(i).build());
+            assertEquals(i, reader.readInt());
+        }
+    }
+
+    @Test
+    public void cursor() throws Exception
+    {
+        final Packet packet = new ReusablePacketBuilder(Packet.PacketType.Request)
+                .withInt(1)
+                .withBytes(new byte[] {3, 4, 5})
+                .withShort((short) 6)
+                .build();
+        final ReusablePacketReader reader = new ReusablePacketReader(packet);
+
+        reader.skip(4);
+        assertEquals(4, reader.position());
+
+        final ByteBuffer view = reader.readBytesView();
+        assertEquals(3, view.remaining());
+        assertEquals(3, view.get(0));
+        assertEquals(5, view.get(2));
+        assertTrue(view.isReadOnly());
+
+        assertEquals(6, reader.readShort());
+
+        reader.position(0);
+        assertEquals(1, reader.readInt());
+
+        final byte[] target = new byte[8];
+        assertEquals(3, reader.readBytes(target));
+        assertEquals(4, target[1]);
+    }
+
+    @Test(expected = IOException.class)
+    public void notEnoughData() throws Exception
+    {
+        final ReusablePacketReader reader = new ReusablePacketReader(new Packet(Packet.PacketType.Request, (short) 0, new byte[3]));
+        reader.readInt();
+    }
+}
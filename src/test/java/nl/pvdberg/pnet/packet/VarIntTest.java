@@ -0,0 +1,144 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.packet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class VarIntTest
+{
+    private static final int[] INTS = {0, 1, -1, 63, -64, 64, 127, 128, 16383, 16384, Integer.MAX_VALUE, Integer.MIN_VALUE};
+    private static final long[] LONGS = {0L, 1L, -1L, 300L, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+    private static final String STRING = "H\u00E9llo \u20AC \uD83D\uDE00";
+
+    @Test
+    public void size() throws Exception
+    {
+        assertEquals(1, VarInt.size(0));
+        assertEquals(1, VarInt.size(127));
+        assertEquals(2, VarInt.size(128));
+        assertEquals(5, VarInt.size(-1));
+        assertEquals(1, VarInt.size(0L));
+        assertEquals(10, VarInt.size(-1L));
+
+        // Small negative values stay small
+        assertEquals(1, VarInt.size(VarInt.encodeZigZag(-64)));
+        assertEquals(1, VarInt.size(VarInt.encodeZigZag(-64L)));
+    }
+
+    @Test
+    public void zigZag() throws Exception
+    {
+        assertEquals(0, VarInt.encodeZigZag(0));
+        assertEquals(1, VarInt.encodeZigZag(-1));
+        assertEquals(2, VarInt.encodeZigZag(1));
+        for (final int i : INTS) assertEquals(i, VarInt.decodeZigZag(VarInt.encodeZigZag(i)));
+        for (final long l : LONGS) assertEquals(l, VarInt.decodeZigZag(VarInt.encodeZigZag(l)));
+    }
+
+    @Test
+    public void packetBuilder() throws Exception
+    {
+        final PacketBuilder builder = new PacketBuilder(Packet.PacketType.Request);
+        for (final int i : INTS) builder.withVarInt(i).withSignedVarInt(i);
+        for (final long l : LONGS) builder.withVarLong(l).withSignedVarLong(l);
+        builder.withCompactBytes(new byte[] {1, 2, 3}).withCompactString(STRING);
+        final Packet packet = builder.build();
+
+        // Both readers decode the same data
+        final PacketReader packetReader = new PacketReader(packet);
+        for (final int i : INTS)
+        {
+            assertEquals(i, packetReader.readVarInt());
+            assertEquals(i, packetReader.readSignedVarInt());
+        }
+        for (final long l : LONGS)
+        {
+            assertEquals(l, packetReader.readVarLong());
+            assertEquals(l, packetReader.readSignedVarLong());
+        }
+        assertArrayEquals(new byte[] {1, 2, 3}, packetReader.readCompactBytes());
+        assertEquals(STRING, packetReader.readCompactString());
+
+        final ReusablePacketReader reusablePacketReader = new ReusablePacketReader(packet);
+        for (final int i : INTS)
+        {
+            assertEquals(i, reusablePacketReader.readVarInt());
+            assertEquals(i, reusablePacketReader.readSignedVarInt());
+        }
+        for (final long l : LONGS)
+        {
+            assertEquals(l, reusablePacketReader.readVarLong());
+            assertEquals(l, reusablePacketReader.readSignedVarLong());
+        }
+        assertArrayEquals(new byte[] {1, 2, 3}, reusablePacketReader.readCompactBytes());
+        assertEquals(STRING, reusablePacketReader.readCompactString());
+        assertEquals(0, reusablePacketReader.remaining());
+    }
+
+    @Test
+    public void reusablePacketBuilder() throws Exception
+    {
+        final PacketBuilder builder = new PacketBuilder(Packet.PacketType.Request);
+        final ReusablePacketBuilder reusableBuilder = new ReusablePacketBuilder(Packet.PacketType.Request, 1, false);
+        for (final int i : INTS)
+        {
+            builder.withVarInt(i).withSignedVarInt(i);
+            reusableBuilder.withVarInt(i).withSignedVarInt(i);
+        }
+        for (final long l : LONGS)
+        {
+            builder.withVarLong(l).withSignedVarLong(l);
+            reusableBuilder.withVarLong(l).withSignedVarLong(l);
+        }
+        builder.withCompactBytes(new byte[] {1, 2, 3}).withCompactString(STRING);
+        reusableBuilder.withCompactBytes(new byte[] {1, 2, 3}).withCompactString(STRING);
+
+        assertArrayEquals(builder.getBytes(), reusableBuilder.getBytes());
+    }
+
+    @Test
+    public void compact() throws Exception
+    {
+        final Packet packet = new ReusablePacketBuilder(Packet.PacketType.Request)
+                .withVarInt(100)
+                .withSignedVarLong(-100L)
+                .withCompactString("abc")
+                .build();
+        assertEquals(1 + 2 + 1 + 3, packet.getDataLength());
+    }
+
+    @Test(expected = IOException.class)
+    public void malformed() throws Exception
+    {
+        final byte[] data = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0};
+        VarInt.readVarInt(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+}
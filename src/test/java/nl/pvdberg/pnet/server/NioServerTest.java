@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.server;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.client.util.PlainClient;
+import nl.pvdberg.pnet.event.ReceiveListener;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketBuilder;
+import nl.pvdberg.pnet.packet.PacketReader;
+import nl.pvdberg.pnet.threading.EventLoopGroup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class NioServerTest
+{
+    protected static final int port1 = 42365;
+    protected static final int port2 = 42366;
+
+    protected Server server1;
+    protected Server server2;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server1 = new NioServer(2);
+        assertTrue(server1.start(port1));
+        server2 = new NioServer(2);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        server1.stop();
+        server2.stop();
+    }
+
+    @Test
+    public void illegalStart() throws Exception
+    {
+        assertFalse(server2.start(port1));
+    }
+
+    @Test
+    public void start() throws Exception
+    {
+        assertTrue(server2.start(port2));
+    }
+
+    @Test
+    public void restart() throws Exception
+    {
+        server1.stop();
+        assertTrue(server1.start(port1));
+    }
+
+    @Test
+    public void restartLoop() throws Exception
+    {
+        for (int i = 0; i < 20; i++)
+        {
+            server1.stop();
+            assertTrue(server1.start(port1));
+        }
+    }
+
+    @Test
+    public void restartSharedEventLoopGroup() throws Exception
+    {
+        final EventLoopGroup eventLoopGroup = new EventLoopGroup(1);
+        try
+        {
+            final Server server = new NioServer(eventLoopGroup);
+            for (int i = 0; i < 20; i++)
+            {
+                assertTrue(server.start(port2));
+                server.stop();
+            }
+        }
+        finally
+        {
+            eventLoopGroup.shutdown();
+        }
+    }
+
+    @Test(timeout=5000)
+    public void echo() throws Exception
+    {
+        final int amount = 100;
+        final byte[] data = new byte[100000];
+        new Random().nextBytes(data);
+
+        server1.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                c.send(new Packet(Packet.PacketType.Reply, p.getPacketID(), p.getData()));
+            }
+        });
+
+        final CountDownLatch latch = new CountDownLatch(amount);
+        final AtomicInteger nextID = new AtomicInteger();
+
+        final Client client = new PlainClient();
+        client.setClientListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                assertTrue(p.isReply());
+                assertEquals(nextID.getAndIncrement(), p.getPacketID());
+                assertArrayEquals(data, new PacketReader(p).readBytes());
+                latch.countDown();
+            }
+        });
+        assertTrue(client.connect("localhost", port1));
+
+        for (short i = 0; i < amount; i++)
+        {
+            assertTrue(client.send(new PacketBuilder(Packet.PacketType.Request)
+                    .withID(i)
+                    .withBytes(data)
+                    .build()));
+        }
+
+        latch.await();
+        assertEquals(amount, nextID.get());
+        client.close();
+    }
+}
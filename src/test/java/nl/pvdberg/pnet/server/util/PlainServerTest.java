@@ -24,13 +24,23 @@
 
 package nl.pvdberg.pnet.server.util;
 
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.client.util.PlainClient;
+import nl.pvdberg.pnet.event.ReceiveListener;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.packet.PacketBuilder;
 import nl.pvdberg.pnet.server.Server;
+import nl.pvdberg.pnet.threading.NamedThreadFactory;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
-import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
 
 public class PlainServerTest
 {
@@ -66,4 +76,35 @@ public class PlainServerTest
     {
         assertTrue(server2.start(port2));
     }
-}
\ No newline at end of file
+
+    @Test(timeout=2000)
+    public void executorService() throws Exception
+    {
+        final ExecutorService executorService = Executors.newFixedThreadPool(4, new NamedThreadFactory("test-server", true, Thread.MAX_PRIORITY));
+        final CountDownLatch latch = new CountDownLatch(1);
+        final String[] threadName = new String[1];
+
+        server2 = new PlainServer(executorService);
+        server2.setListener(new ReceiveListener()
+        {
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+                threadName[0] = Thread.currentThread().getName();
+                latch.countDown();
+            }
+        });
+        assertTrue(server2.start(port2));
+
+        final Client client = new PlainClient();
+        assertTrue(client.connect("localhost", port2));
+        assertTrue(client.send(new PacketBuilder(Packet.PacketType.Request).build()));
+
+        latch.await();
+        assertTrue(threadName[0].startsWith("test-server-"));
+
+        client.close();
+        server2.stop();
+        executorService.shutdownNow();
+    }
+}
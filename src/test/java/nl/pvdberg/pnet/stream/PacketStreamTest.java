@@ -0,0 +1,249 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.stream;
+
+import nl.pvdberg.pnet.client.Client;
+import nl.pvdberg.pnet.client.util.PlainClient;
+import nl.pvdberg.pnet.event.DistributerListener;
+import nl.pvdberg.pnet.event.PNetListener;
+import nl.pvdberg.pnet.event.PacketDistributer;
+import nl.pvdberg.pnet.event.PacketHandler;
+import nl.pvdberg.pnet.packet.Packet;
+import nl.pvdberg.pnet.server.NioServer;
+import nl.pvdberg.pnet.server.Server;
+import nl.pvdberg.pnet.server.util.PlainServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class PacketStreamTest
+{
+    protected static final int port = 42365;
+    protected static final short STREAM_ID = 7;
+    protected static final int FRAGMENT_SIZE = 16 * 1024;
+
+    protected Server server;
+    protected Client client;
+    protected PacketDistributer packetDistributer;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        packetDistributer = new PacketDistributer();
+        server = new PlainServer();
+        // Fragments fit, the whole message does not
+        server.setMaxDataLength(FRAGMENT_SIZE + 16);
+        client = new PlainClient();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        client.close();
+        server.stop();
+    }
+
+    @Test(timeout=10000)
+    public void largeMessage() throws Exception
+    {
+        final byte[] chunk = new byte[100000];
+        new Random().nextBytes(chunk);
+        final int chunks = 80;
+
+        final CRC32 expected = new CRC32();
+        for (int i = 0; i < chunks; i++) expected.update(chunk);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong checksum = new AtomicLong();
+
+        packetDistributer.addHandler(STREAM_ID, new StreamReceiver(new StreamListener()
+        {
+            @Override
+            public void onStream(final PacketInputStream in, final Client c) throws IOException
+            {
+                final CRC32 crc = new CRC32();
+                final byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1)
+                {
+                    crc.update(buffer, 0, read);
+                    received.addAndGet(read);
+                }
+                checksum.set(crc.getValue());
+                latch.countDown();
+            }
+        }));
+        server.setListener(new DistributerListener(packetDistributer));
+        assertTrue(server.start(port));
+
+        assertTrue(client.connect("localhost", port));
+        final PacketOutputStream out = new PacketOutputStream(client, STREAM_ID, FRAGMENT_SIZE);
+        for (int i = 0; i < chunks; i++) out.write(chunk);
+        out.close();
+
+        latch.await();
+        assertEquals((long) chunk.length * chunks, received.get());
+        assertEquals(expected.getValue(), checksum.get());
+    }
+
+    @Test(timeout=5000)
+    public void abort() throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<IOException> exception = new AtomicReference<IOException>();
+
+        final StreamReceiver streamReceiver = new StreamReceiver(new StreamListener()
+        {
+            @Override
+            public void onStream(final PacketInputStream in, final Client c) throws IOException
+            {
+                try
+                {
+                    while (in.read() != -1);
+                }
+                catch (final IOException e)
+                {
+                    exception.set(e);
+                }
+                latch.countDown();
+            }
+        });
+        packetDistributer.addHandler(STREAM_ID, streamReceiver);
+        server.setListener(new DistributerListener(packetDistributer)
+        {
+            @Override
+            public void onDisconnect(final Client c)
+            {
+                streamReceiver.abortStreams(c);
+            }
+        });
+        assertTrue(server.start(port));
+
+        assertTrue(client.connect("localhost", port));
+        final PacketOutputStream out = new PacketOutputStream(client, STREAM_ID, FRAGMENT_SIZE);
+        out.write(new byte[100]);
+        out.flush();
+        client.close();
+
+        latch.await();
+        assertNotNull(exception.get());
+    }
+
+    @Test(timeout=5000)
+    public void slowReaderOnEventLoop() throws Exception
+    {
+        server = new NioServer(1);
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<IOException> exception = new AtomicReference<IOException>();
+
+        packetDistributer.addHandler(STREAM_ID, new StreamReceiver(new StreamListener()
+        {
+            @Override
+            public void onStream(final PacketInputStream in, final Client c) throws IOException
+            {
+                try
+                {
+                    reading.await();
+                    while (in.read() != -1);
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                catch (final IOException e)
+                {
+                    exception.set(e);
+                }
+                latch.countDown();
+            }
+        }));
+        packetDistributer.addHandler((short) (STREAM_ID + 1), new PacketHandler()
+        {
+            @Override
+            public void handlePacket(final Packet p, final Client c) throws IOException
+            {
+                received.countDown();
+            }
+        });
+        server.setListener(new DistributerListener(packetDistributer));
+        assertTrue(server.start(port));
+
+        assertTrue(client.connect("localhost", port));
+        final PacketOutputStream out = new PacketOutputStream(client, STREAM_ID, FRAGMENT_SIZE);
+        out.write(new byte[FRAGMENT_SIZE * (StreamReceiver.DEFAULT_MAX_FRAGMENTS + 4)]);
+        out.close();
+        assertTrue(client.send(new Packet(Packet.PacketType.Request, (short) (STREAM_ID + 1), new byte[0])));
+
+        // The EventLoop does not wait for the reader
+        received.await();
+        reading.countDown();
+        latch.await();
+        assertNotNull(exception.get());
+    }
+
+    @Test(timeout=5000)
+    public void maxDataLength() throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        assertTrue(server.start(port));
+
+        client.setClientListener(new PNetListener()
+        {
+            @Override
+            public void onConnect(final Client c)
+            {
+            }
+
+            @Override
+            public void onDisconnect(final Client c)
+            {
+                latch.countDown();
+            }
+
+            @Override
+            public void onReceive(final Packet p, final Client c) throws IOException
+            {
+            }
+        });
+
+        assertTrue(client.connect("localhost", port));
+        assertTrue(client.send(new Packet(Packet.PacketType.Request, (short) 0, new byte[FRAGMENT_SIZE + 17])));
+
+        // Server closes the connection
+        latch.await();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.threading;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SerialExecutorTest
+{
+    protected ExecutorService executorService;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        executorService.shutdownNow();
+    }
+
+    @Test(timeout=5000)
+    public void ordering() throws Exception
+    {
+        final int executors = 8;
+        final int amount = 10000;
+        final CountDownLatch latch = new CountDownLatch(executors * amount);
+        final List<List<Integer>> results = new ArrayList<List<Integer>>();
+        final AtomicInteger concurrent = new AtomicInteger();
+
+        for (int e = 0; e < executors; e++)
+        {
+            final SerialExecutor serialExecutor = new SerialExecutor(executorService);
+            final List<Integer> result = new ArrayList<Integer>();
+            final AtomicInteger running = new AtomicInteger();
+            results.add(result);
+
+            for (int i = 0; i < amount; i++)
+            {
+                final int value = i;
+                serialExecutor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (running.incrementAndGet() != 1) concurrent.incrementAndGet();
+                        result.add(value);
+                        running.decrementAndGet();
+                        latch.countDown();
+                    }
+                });
+            }
+        }
+
+        latch.await();
+
+        assertEquals(0, concurrent.get());
+        for (final List<Integer> result : results)
+        {
+            assertEquals(amount, result.size());
+            for (int i = 0; i < amount; i++) assertEquals(i, result.get(i).intValue());
+        }
+    }
+
+    @Test(timeout=5000)
+    public void exceptionDoesNotStop() throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final SerialExecutor serialExecutor = new SerialExecutor(executorService);
+
+        serialExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                throw new RuntimeException("Test exception");
+            }
+        });
+        serialExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                latch.countDown();
+            }
+        });
+
+        latch.await();
+    }
+}
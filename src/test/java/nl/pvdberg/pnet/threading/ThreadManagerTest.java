@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Pim van den Berg
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package nl.pvdberg.pnet.threading;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ThreadManagerTest
+{
+    @Test(timeout=5000)
+    public void scheduleAfterShutdown() throws Exception
+    {
+        // Shut down a throwaway ExecutorService, so other tests keep the default one
+        final ExecutorService previous = ThreadManager.setExecutorService(Executors.newCachedThreadPool());
+        try
+        {
+            ThreadManager.shutdown();
+        }
+        finally
+        {
+            ThreadManager.setExecutorService(previous);
+        }
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        ThreadManager.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                latch.countDown();
+            }
+        }, 1, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void virtualThreadsSupported() throws Exception
+    {
+        // Supported exactly when an executor can be created
+        final ExecutorService virtualThreadExecutor = ThreadManager.newVirtualThreadExecutor();
+        assertEquals(ThreadManager.isVirtualThreadsSupported(), virtualThreadExecutor != null);
+        if (virtualThreadExecutor != null) virtualThreadExecutor.shutdown();
+    }
+}